@@ -0,0 +1,67 @@
+package com.theroboz.dummy_tile;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks entry point: same command line than the JMH launcher, with the GC profiler always enabled.<br>
+ * All benchmarks process <code>size</code> x <code>size</code> tiles per operation so once done a summary gives the
+ * throughput in tiles/s and the allocation in bytes per tile (<code>gc.alloc.rate.norm</code> / tiles).
+ */
+public class BenchmarkMain
+{
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException
+    {
+        final CommandLineOptions cmdLine = new CommandLineOptions(args);
+
+        // -h / -l / -lp ... are handled by the JMH launcher
+        if (cmdLine.shouldHelp() || cmdLine.shouldList() || cmdLine.shouldListWithParams() || cmdLine.shouldListProfilers()
+                || cmdLine.shouldListResultFormats())
+        {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        final Collection<RunResult> results = new Runner(new OptionsBuilder().parent(cmdLine).addProfiler(GCProfiler.class).build()).run();
+
+        System.out.println();
+        System.out.println(String.format("%-60s %15s %15s", "Benchmark (params)", "tiles/s", "bytes/tile"));
+
+        for (RunResult result : results)
+        {
+            final String size = result.getParams().getParam("size");
+            if (size == null)
+                continue;
+
+            final long numTile = Long.parseLong(size) * Long.parseLong(size);
+            final double opsPerSecond = result.getPrimaryResult().getScore();
+            final double bytesPerOp = getAllocPerOp(result.getSecondaryResults());
+
+            final StringBuilder name = new StringBuilder(result.getParams().getBenchmark().replaceFirst("^.*\\.(\\w+\\.\\w+)$", "$1"));
+            for (String key : result.getParams().getParamsKeys())
+                name.append(' ').append(key).append('=').append(result.getParams().getParam(key));
+
+            System.out.println(String.format("%-60s %15.0f %15s", name, opsPerSecond * numTile,
+                    Double.isNaN(bytesPerOp) ? "-" : String.format("%.1f", bytesPerOp / numTile)));
+        }
+    }
+
+    private static double getAllocPerOp(Map<String, Result> secondaryResults)
+    {
+        for (Map.Entry<String, Result> entry : secondaryResults.entrySet())
+            if (entry.getKey().endsWith("gc.alloc.rate.norm"))
+                return entry.getValue().getScore();
+
+        return Double.NaN;
+    }
+}
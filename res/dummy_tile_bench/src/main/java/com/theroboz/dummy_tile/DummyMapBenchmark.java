@@ -0,0 +1,67 @@
+package com.theroboz.dummy_tile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sgdk.rescomp.type.Basics.Compression;
+import sgdk.rescomp.type.Basics.TileOptimization;
+import sgdk.rescomp.type.Basics.TileOrdering;
+
+/**
+ * Map construction (tile lookups, metatiles, blocks and block rows) of a <code>size</code> x <code>size</code> tiles map
+ * using the tileset of its tile pool.<br>
+ * The 4096 x 4096 tiles map needs a 1 GB image, hence the large heap. The persistent block cache is disabled so each
+ * call really resolves the map tiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Ddummy_tile.cache=false"})
+public class DummyMapBenchmark
+{
+    // map size in tile
+    @Param({"64", "256", "1024", "4096"})
+    public int size;
+
+    @Param({"64", "1024"})
+    public int uniqueMetatiles;
+
+    @Param({"16", "256"})
+    public int uniqueBlocks;
+
+    private SyntheticMap map;
+    private DummyTileset tileset;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        map = new SyntheticMap(size, 1024, uniqueMetatiles, uniqueBlocks, 1234);
+        tileset = new DummyTileset("bench_tileset", map.tilesImage8bpp, 128, map.getTilesImageHeight(), 0, 0, 16, map.getTilesImageHeight() / 8,
+                TileOptimization.ALL, Compression.NONE, false, true, TileOrdering.ROW);
+    }
+
+    @Benchmark
+    public DummyMap build()
+    {
+        final List<DummyTileset> tilesets = new ArrayList<>();
+        tilesets.add(tileset);
+
+        return new DummyMap("bench_map", map.image8bpp, size * 8, size * 8, 0, 2, tilesets, Compression.NONE, false);
+    }
+}
@@ -0,0 +1,57 @@
+package com.theroboz.dummy_tile;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sgdk.rescomp.type.Basics.Compression;
+import sgdk.rescomp.type.Basics.TileOptimization;
+import sgdk.rescomp.type.Basics.TileOrdering;
+
+/**
+ * Tileset extraction from a <code>size</code> x <code>size</code> tiles image for each tile ordering and optimization.<br>
+ * Tilesets are built as temporary ones so the compiler resource list doesn't change between calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class DummyTilesetBenchmark
+{
+    // map size in tile
+    @Param({"64", "256", "1024"})
+    public int size;
+
+    @Param({"ROW", "COLUMN"})
+    public TileOrdering order;
+
+    @Param({"NONE", "DUPLICATE", "ALL"})
+    public TileOptimization opt;
+
+    private SyntheticMap map;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        map = new SyntheticMap(size, 1024, 1024, 256, 1234);
+    }
+
+    @Benchmark
+    public DummyTileset build()
+    {
+        return new DummyTileset("bench_tileset", map.image8bpp, size * 8, size * 8, 0, 0, size, size, opt, Compression.NONE, false, true, order);
+    }
+}
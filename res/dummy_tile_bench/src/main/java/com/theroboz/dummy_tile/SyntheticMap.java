@@ -0,0 +1,104 @@
+package com.theroboz.dummy_tile;
+
+import java.util.Random;
+
+/**
+ * Synthetic tile map used by the benchmarks (8bpp image of <code>size</code> x <code>size</code> tiles).<br>
+ * Repetition is controlled at each level: the map is made of 16x16 tiles blocks picked from a pool of
+ * <code>uniqueBlocks</code> blocks, blocks are made of 2x2 metatiles picked from a pool of
+ * <code>uniqueMetatiles</code> metatiles, and metatiles are made of tiles picked from a pool of <code>uniqueTiles</code>
+ * tiles, each one randomly flipped (so flip matching is exercised).<br>
+ * The tile pool is also given as a tileset image (16 tiles wide).
+ */
+public class SyntheticMap
+{
+    // flip bits of a tile reference
+    private static final int HFLIP = 1 << 16;
+    private static final int VFLIP = 1 << 17;
+
+    public final int size;
+    public final int uniqueTiles;
+    public final byte[] image8bpp;
+    public final byte[] tilesImage8bpp;
+
+    private final byte[][] tilePixels;
+
+    public SyntheticMap(int size, int uniqueTiles, int uniqueMetatiles, int uniqueBlocks, long seed)
+    {
+        this.size = size;
+        this.uniqueTiles = uniqueTiles;
+
+        final Random rnd = new Random(seed);
+
+        // tile pool (4bpp pixels, palette 0)
+        tilePixels = new byte[uniqueTiles][64];
+        for (byte[] pixels : tilePixels)
+            for (int i = 0; i < pixels.length; i++)
+                pixels[i] = (byte) rnd.nextInt(16);
+
+        // metatile pool (2x2 tile references)
+        final int[][] metatiles = new int[uniqueMetatiles][4];
+        for (int[] mt : metatiles)
+            for (int i = 0; i < mt.length; i++)
+                mt[i] = rnd.nextInt(uniqueTiles) | (rnd.nextBoolean() ? HFLIP : 0) | (rnd.nextBoolean() ? VFLIP : 0);
+
+        // block pool (8x8 metatile references)
+        final int[][] blocks = new int[uniqueBlocks][64];
+        for (int[] block : blocks)
+            for (int i = 0; i < block.length; i++)
+                block[i] = rnd.nextInt(uniqueMetatiles);
+
+        final int w = size * 8;
+        image8bpp = new byte[w * w];
+
+        final int sb = (size + 15) / 16;
+        for (int bj = 0; bj < sb; bj++)
+        {
+            for (int bi = 0; bi < sb; bi++)
+            {
+                final int[] block = blocks[rnd.nextInt(uniqueBlocks)];
+
+                for (int m = 0; m < 64; m++)
+                {
+                    final int[] mt = metatiles[block[m]];
+
+                    for (int t = 0; t < 4; t++)
+                    {
+                        final int tx = (bi * 16) + ((m & 7) * 2) + (t & 1);
+                        final int ty = (bj * 16) + ((m >> 3) * 2) + (t >> 1);
+
+                        if ((tx < size) && (ty < size))
+                            drawTile(image8bpp, w, tx, ty, mt[t]);
+                    }
+                }
+            }
+        }
+
+        // tileset image of the tile pool
+        final int rows = (uniqueTiles + 15) / 16;
+        tilesImage8bpp = new byte[128 * rows * 8];
+        for (int t = 0; t < uniqueTiles; t++)
+            drawTile(tilesImage8bpp, 128, t & 15, t >> 4, t);
+    }
+
+    private void drawTile(byte[] dest, int w, int tx, int ty, int ref)
+    {
+        final byte[] pixels = tilePixels[ref & 0xFFFF];
+        final boolean hflip = (ref & HFLIP) != 0;
+        final boolean vflip = (ref & VFLIP) != 0;
+
+        for (int y = 0; y < 8; y++)
+        {
+            final int sy = vflip ? 7 - y : y;
+            int off = (((ty * 8) + y) * w) + (tx * 8);
+
+            for (int x = 0; x < 8; x++)
+                dest[off++] = pixels[(sy * 8) + (hflip ? 7 - x : x)];
+        }
+    }
+
+    public int getTilesImageHeight()
+    {
+        return tilesImage8bpp.length / 128;
+    }
+}
@@ -0,0 +1,73 @@
+package com.theroboz.dummy_tile;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sgdk.rescomp.type.Basics.Compression;
+import sgdk.rescomp.type.Basics.TileOptimization;
+import sgdk.rescomp.type.Basics.TileOrdering;
+import sgdk.rescomp.type.Tile;
+
+/**
+ * <code>getTileIndex</code> lookups of all the tiles of a <code>size</code> x <code>size</code> tiles map in the tileset
+ * of its tile pool.<br>
+ * Map tiles are randomly flipped: ALL finds them through flip matching, DUPLICATE only finds the unflipped ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class TileIndexBenchmark
+{
+    // map size in tile
+    @Param({"64", "256", "1024"})
+    public int size;
+
+    @Param({"256", "2048"})
+    public int uniqueTiles;
+
+    @Param({"DUPLICATE", "ALL"})
+    public TileOptimization opt;
+
+    private DummyTileset tileset;
+    private Tile[] tiles;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        final SyntheticMap map = new SyntheticMap(size, uniqueTiles, 1024, 256, 1234);
+
+        tileset = new DummyTileset("bench_tileset", map.tilesImage8bpp, 128, map.getTilesImageHeight(), 0, 0, 16, map.getTilesImageHeight() / 8,
+                TileOptimization.ALL, Compression.NONE, false, true, TileOrdering.ROW);
+
+        tiles = new Tile[size * size];
+        for (int j = 0; j < size; j++)
+            for (int i = 0; i < size; i++)
+                tiles[(j * size) + i] = Tile.getTile(map.image8bpp, size * 8, size * 8, i * 8, j * 8, 8);
+    }
+
+    @Benchmark
+    public int getTileIndex()
+    {
+        int result = 0;
+
+        for (Tile tile : tiles)
+            result += tileset.getTileIndex(tile, opt);
+
+        return result;
+    }
+}
@@ -1,9 +1,16 @@
 package com.theroboz.dummy_tile;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.theroboz.rescomp_common.DecodedImageCache;
 
 import sgdk.rescomp.Resource;
 import sgdk.rescomp.resource.Bin;
@@ -21,8 +28,10 @@ public class DummyMap extends Resource
 {
     public static DummyMap getMap(String id, String imgFile, int mapBase, int metatileSize, List<DummyTileset> tilesets, Compression compression, boolean addTileset) throws Exception
     {
+        // decoded image (shared with other resources using the same file)
+        final DecodedImageCache.Entry decoded = DummyTileSettings.getImageCache().get(imgFile);
         // get 8bpp pixels and also check image dimension is aligned to tile
-        final byte[] image = ImageUtil.getImageAs8bpp(imgFile, true, true);
+        final byte[] image = decoded.get8bpp();
 
         // happen when we couldn't retrieve palette data from RGB image
         if (image == null)
@@ -40,7 +49,7 @@ public class DummyMap extends Resource
         }
 
         // retrieve basic infos about the image
-        final BasicImageInfo imgInfo = ImageUtil.getBasicInfo(imgFile);
+        final BasicImageInfo imgInfo = decoded.getBasicInfo();
         final int w = imgInfo.w;
         // we determine 'h' from data length and 'w' as we can crop image vertically to remove palette data
         final int h = image.length / w;
@@ -65,8 +74,25 @@ public class DummyMap extends Resource
     public final Bin mapBlockIndexesBin;
     public final Bin mapBlockRowOffsetsBin;
 
+    // internals (metatile / block content --> first index)
+    final private LongIntHashMap metatileIndexes;
+    final private ShortArrayIndex mapBlockIndexMap;
+
     public DummyMap(String id, byte[] image8bpp, int imageWidth, int imageHeight, int mapBase, int metatileSize, List<DummyTileset> tilesets, Compression compression,
             boolean addTileset) throws IllegalArgumentException
+    {
+        this(id, image8bpp, imageWidth, imageHeight, mapBase, metatileSize, tilesets, compression, addTileset,
+                DummyTileSettings.BLOCK_CACHE ? DummyTileSettings.getCacheDir() : null, DummyTileSettings.PARALLEL ? DummyTileSettings.getExecutor() : null);
+    }
+
+    /**
+     * @param blockCacheDir
+     *        directory of the persistent block cache, <code>null</code> to disable it
+     * @param executor
+     *        worker threads used to resolve block rows, <code>null</code> to resolve them sequentially
+     */
+    DummyMap(String id, byte[] image8bpp, int imageWidth, int imageHeight, int mapBase, int metatileSize, List<DummyTileset> tilesets, Compression compression,
+            boolean addTileset, File blockCacheDir, ExecutorService executor) throws IllegalArgumentException
     {
         super(id);
 
@@ -74,12 +100,8 @@ public class DummyMap extends Resource
         final int wt = imageWidth / 8;
         final int ht = imageHeight / 8;
 
-        // base prio, pal attributes and base tile index offset
-        final boolean mapBasePrio = (mapBase & Tile.TILE_PRIORITY_MASK) != 0;
-        final int mapBasePal = (mapBase & Tile.TILE_PALETTE_MASK) >> Tile.TILE_PALETTE_SFT;
-        final int mapBaseTileInd = mapBase & Tile.TILE_INDEX_MASK;
         // store base tile index usage
-        final boolean hasBaseTileIndex = mapBaseTileInd != 0;
+        final boolean hasBaseTileIndex = (mapBase & Tile.TILE_INDEX_MASK) != 0;
 
         // store tileset
         this.tilesets = tilesets;
@@ -104,8 +126,8 @@ public class DummyMap extends Resource
         wb = (wt + 15) / 16;
         hb = (ht + 15) / 16;
 
-        // build global TILESET
-        final DummyTileset tileset = new DummyTileset(tilesets);
+        // get global TILESET (shared by maps using the same tilesets)
+        final MergedTileset tileset = MergedTileset.get(tilesets);
         // build METATILES
         metatiles = new ArrayList<>();
         // build MAPBLOCKS
@@ -117,133 +139,109 @@ public class DummyMap extends Resource
         // set to -1 to mark that it's not yet set (we shouldn't never meet an offset of 65535 realistically)
         Arrays.fill(mapBlockRowOffsets, (short) -1);
 
-        for (int j = 0; j < hb; j++)
-        {
-            int mbrii = 0;
-            final short[] mbRowIndexes = new short[wb];
+        // hash indexes to find duplicated metatiles, blocks and block rows
+        metatileIndexes = new LongIntHashMap();
+        mapBlockIndexMap = new ShortArrayIndex();
+        final ShortArrayIndex mapBlockRowIndexMap = new ShortArrayIndex();
 
-            for (int i = 0; i < wb; i++)
-            {
-                final MapBlock mb = new MapBlock();
-                int mbi = 0;
+        // resolved blocks of previous builds
+        final MapBlockCache blockCache = (blockCacheDir != null) ? MapBlockCache.open(blockCacheDir, id, tileset, mapBase, metatileSize) : null;
 
-                for (int bj = 0; bj < 8; bj++)
-                {
-                    for (int bi = 0; bi < 8; bi++)
-                    {
-                        final Metatile mt = new Metatile();
-                        int mtsi = 0;
+        // resolve tile attributes of each block row (on worker threads in parallel mode)
+        final BlockRowResolver resolver = new BlockRowResolver(image8bpp, wt, ht, wb, metatileSize, tileset, mapBase, blockCache);
+        final List<Future<long[][]>> parallelRows = ((executor != null) && (hb > 1)) ? resolver.submitAll(hb, executor) : null;
+        final TilePixelMap tileAttributes = (parallelRows == null) ? new TilePixelMap() : null;
 
-                        for (int mj = 0; mj < metatileSize; mj++)
-                        {
-                            for (int mi = 0; mi < metatileSize; mi++)
-                            {
-                                // tile position
-                                final int ti = ((i * 16) + (bi * 2) + (mi * 1));
-                                final int tj = ((j * 16) + (bj * 2) + (mj * 1));
-                                final Tile tile;
-                                final TileEquality eq;
-                                int index;
-
-                                // outside image ?
-                                if ((ti >= wt) || (tj >= ht))
-                                {
-                                    // use dummy tile
-                                    tile = new Tile(new byte[64], 8, 0, false, 0);
-                                    eq = TileEquality.NONE;
-                                    index = 0;
-                                }
-                                else
-                                {
-                                    tile = Tile.getTile(image8bpp, wt * 8, ht * 8, ti * 8, tj * 8, 8);
-
-                                    // we can use system tiles when we have a base tile offset
-                                    if (hasBaseTileIndex && tile.isPlain())
-                                    {
-                                        index = tile.getPlainValue();
-                                        eq = TileEquality.NONE;
-                                    }
-                                    else
-                                    {
-                                        // otherwise we try to get tile index in the tileset
-                                        index = tileset.getTileIndex(tile, TileOptimization.ALL);
-                                        // not found ? (should never happen)
-                                        if (index == -1)
-                                            throw new RuntimeException("Can't find tile [" + ti + "," + tj + "] in tileset, something wrong happened...");
-                                        // index > 2047 ? --> not allowed
-                                        if (index > 2047)
-                                            throw new RuntimeException("Can't have more than 2048 different tiles, try to reduce number of unique tile...");
-
-                                        // get equality info
-                                        eq = tile.getEquality(tileset.get(index));
-                                        // can add base index now
-                                        index += mapBaseTileInd;
-                                    }
-                                }
-
-                                // set metatile attributes
-                                mt.set(mtsi++, (short) Tile.TILE_ATTR_FULL(mapBasePal + tile.pal, mapBasePrio | tile.prio, eq.vflip, eq.hflip, index));
-                            }
-                        }
+        // scratch buffers (objects are only allocated for new metatiles, blocks and block rows)
+        final long[] rowScratch = (parallelRows == null) ? new long[wb * 8 * 8] : null;
+        final short[] mbIndexes = new short[8 * 8];
+        final short[] mbRowIndexes = new short[wb];
 
-                        // update internals (hash code)
-                        mt.updateInternals();
+        try
+        {
+            for (int j = 0; j < hb; j++)
+            {
+                // packed metatile attributes of the block row (computed ahead in parallel mode)
+                final long[] rowKeys = (parallelRows != null) ? resolver.getResolved(parallelRows, j) : resolver.resolve(j, tileAttributes, rowScratch);
+                int mbrii = 0;
+                int off = 0;
 
+                for (int i = 0; i < wb; i++)
+                {
+                    for (int mbi = 0; mbi < (8 * 8); mbi++)
+                    {
                         // get index of metatile
-                        int mtIndex = getMetaTileIndex(mt);
+                        final long mtKey = rowKeys[off++];
+                        int mtIndex = metatileIndexes.get(mtKey, -1);
                         // not yet present ?
                         if (mtIndex == -1)
                         {
+                            final Metatile mt = new Metatile();
+                            for (int k = 0; k < (metatileSize * metatileSize); k++)
+                                mt.set(k, (short) (mtKey >>> (48 - (k * 16))));
+                            // update internals (hash code)
+                            mt.updateInternals();
+
                             // get index
                             mtIndex = metatiles.size();
                             // add to MetaTiles list
                             metatiles.add(mt);
+                            metatileIndexes.put(mtKey, mtIndex);
                         }
 
                         // set block attributes (metatile index only here)
-                        mb.set(mbi++, (short) mtIndex);
+                        mbIndexes[mbi] = (short) mtIndex;
                     }
-                }
 
-                // update hash code
-                mb.computeHashCode();
+                    // get index of block
+                    int mbIndex = mapBlockIndexMap.get(mbIndexes);
+                    // not yet present ?
+                    if (mbIndex == -1)
+                    {
+                        final MapBlock mb = new MapBlock();
+                        for (int k = 0; k < mbIndexes.length; k++)
+                            mb.set(k, mbIndexes[k]);
+                        // update hash code
+                        mb.computeHashCode();
+
+                        // get index
+                        mbIndex = mapBlocks.size();
+                        // add to MapBlock list
+                        mapBlocks.add(mb);
+                        mapBlockIndexMap.add(mb.data, mbIndex);
+                    }
 
-                // get index of block
-                int mbIndex = getBlockIndex(mb);
-                // not yet present ?
-                if (mbIndex == -1)
-                {
-                    // get index
-                    mbIndex = mapBlocks.size();
-                    // add to MapBlock list
-                    mapBlocks.add(mb);
+                    // store MapBlock index (we can't have more than 65536 blocks)
+                    mbRowIndexes[mbrii++] = (short) mbIndex;
                 }
 
-                // store MapBlock index (we can't have more than 65536 blocks)
-                mbRowIndexes[mbrii++] = (short) mbIndex;
-            }
-
-            // check if we have a duplicated map block row
-            for (int i = 0; i < mapBlockIndexes.size(); i++)
-            {
-                // duplicated ?
-                if (Arrays.equals(mbRowIndexes, mapBlockIndexes.get(i)))
+                // check if we have a duplicated map block row
+                final int dupRow = mapBlockRowIndexMap.get(mbRowIndexes);
+                // duplicated ? --> store offset for this map block row
+                if (dupRow != -1)
+                    mapBlockRowOffsets[j] = (short) (dupRow * wb);
+                else
                 {
-                    // store offset for this map block row
-                    mapBlockRowOffsets[j] = (short) (i * wb);
-                    break;
+                    // set offset to current row
+                    mapBlockRowOffsets[j] = (short) (mapBlockIndexes.size() * wb);
+                    // and add map block row indexes to list
+                    final short[] rowIndexes = mbRowIndexes.clone();
+                    mapBlockRowIndexMap.add(rowIndexes, mapBlockIndexes.size());
+                    mapBlockIndexes.add(rowIndexes);
                 }
             }
-
-            // not yet set ?
-            if (mapBlockRowOffsets[j] == -1)
-            {
-                // set offset to current row
-                mapBlockRowOffsets[j] = (short) (mapBlockIndexes.size() * wb);
-                // and add map block row indexes to list
-                mapBlockIndexes.add(mbRowIndexes);
-            }
         }
+        finally
+        {
+            // failed ? --> don't leave pending row jobs
+            if (parallelRows != null)
+                for (Future<long[][]> f : parallelRows)
+                    f.cancel(false);
+        }
+
+        // store resolved blocks for next build
+        if (blockCache != null)
+            blockCache.save();
 
         // convert metatiles to array
         short[] mtData = new short[metatiles.size() * (metatileSize * metatileSize)];
@@ -251,8 +249,9 @@ public class DummyMap extends Resource
         for (Metatile mt : metatiles)
         {
             // we can't use packed metatile representation when we have a base tile index
-            for (short attr : mt.data)
-                mtData[offset++] = attr;
+            // (only first attributes are used for 1x1 metatile)
+            for (int k = 0; k < (metatileSize * metatileSize); k++)
+                mtData[offset++] = mt.data[k];
         }
 
         // build BIN (metatiles data)
@@ -346,24 +345,239 @@ public class DummyMap extends Resource
         hc = tileset.hashCode() ^ metatilesBin.hashCode() ^ mapBlocksBin.hashCode() ^ mapBlockIndexesBin.hashCode() ^ mapBlockRowOffsetsBin.hashCode();
     }
 
-    public int getMetaTileIndex(Metatile metatile)
+    /**
+     * Resolves the tile attributes of the map, one block row at a time: result is the packed attributes (see
+     * {@link DummyMap#getMetaTileKey(short[])}) of the 8x8 metatiles of each block of the row.<br>
+     * It only reads the image and the tileset so block rows can be resolved concurrently, metatiles and blocks are
+     * then deduplicated in row order by the map constructor.
+     */
+    private static class BlockRowResolver
     {
-        for (int ind = 0; ind < metatiles.size(); ind++)
+        final byte[] image8bpp;
+        final int wt, ht, wb;
+        final int metatileSize;
+        final MergedTileset tileset;
+        final boolean mapBasePrio;
+        final int mapBasePal;
+        final int mapBaseTileInd;
+        final boolean hasBaseTileIndex;
+        // attribute of the dummy tile used outside image
+        final short blankAttr;
+        // resolved blocks cache (null if disabled)
+        final MapBlockCache blockCache;
+        // block rows per job in parallel mode
+        int rowsPerChunk;
+
+        BlockRowResolver(byte[] image8bpp, int wt, int ht, int wb, int metatileSize, MergedTileset tileset, int mapBase, MapBlockCache blockCache)
+        {
+            this.image8bpp = image8bpp;
+            this.wt = wt;
+            this.ht = ht;
+            this.wb = wb;
+            this.metatileSize = metatileSize;
+            this.tileset = tileset;
+            this.blockCache = blockCache;
+
+            // base prio, pal attributes and base tile index offset
+            mapBasePrio = (mapBase & Tile.TILE_PRIORITY_MASK) != 0;
+            mapBasePal = (mapBase & Tile.TILE_PALETTE_MASK) >> Tile.TILE_PALETTE_SFT;
+            mapBaseTileInd = mapBase & Tile.TILE_INDEX_MASK;
+            // store base tile index usage
+            hasBaseTileIndex = mapBaseTileInd != 0;
+
+            final Tile blankTile = new Tile(new byte[64], 8, 0, false, 0);
+            blankAttr = (short) Tile.TILE_ATTR_FULL(mapBasePal + blankTile.pal, mapBasePrio | blankTile.prio, false, false, 0);
+        }
+
+        /**
+         * Resolves block row <code>j</code> into <code>dest</code> (wb * 64 entries)
+         *
+         * @param tileAttributes
+         *        tile attributes memo (not thread safe, one per thread)
+         */
+        long[] resolve(int j, TilePixelMap tileAttributes, long[] dest)
         {
-            final Metatile mt = metatiles.get(ind);
+            final MessageDigest md = (blockCache != null) ? MapBlockCache.getDigest() : null;
+
+            for (int i = 0; i < wb; i++)
+            {
+                final int off = i * MapBlockCache.BLOCK_SIZE;
 
-            // we found a matching metatile --> return its index
-            if (mt.equals(metatile))
-                return ind;
+                // block unchanged since previous build ? --> use cached result
+                if (blockCache != null)
+                {
+                    final int x = i * 16 * 8;
+                    final int y = j * 16 * 8;
+                    final MapBlockCache.Key key = MapBlockCache.computeKey(md, image8bpp, wt * 8, x, y, Math.min(16 * 8, (wt * 8) - x),
+                            Math.min(16 * 8, (ht * 8) - y));
+                    final long[] cached = blockCache.get(key);
+
+                    if (cached != null)
+                        System.arraycopy(cached, 0, dest, off, MapBlockCache.BLOCK_SIZE);
+                    else
+                    {
+                        resolveBlock(i, j, tileAttributes, dest, off);
+                        blockCache.put(key, dest, off);
+                    }
+                }
+                else
+                    resolveBlock(i, j, tileAttributes, dest, off);
+            }
+
+            return dest;
         }
 
-        // not found
-        return -1;
+        // resolves block (i, j) into dest (64 entries from off)
+        private void resolveBlock(int i, int j, TilePixelMap tileAttributes, long[] dest, int off)
+        {
+            for (int bj = 0; bj < 8; bj++)
+            {
+                for (int bi = 0; bi < 8; bi++)
+                {
+                    long key = 0;
+
+                    for (int mj = 0; mj < metatileSize; mj++)
+                    {
+                        for (int mi = 0; mi < metatileSize; mi++)
+                        {
+                            // tile position
+                            final int ti = ((i * 16) + (bi * 2) + (mi * 1));
+                            final int tj = ((j * 16) + (bj * 2) + (mj * 1));
+
+                            key = (key << 16) | (getAttribute(ti, tj, tileAttributes) & 0xFFFF);
+                        }
+                    }
+
+                    // unused metatile entries are 0
+                    dest[off++] = key << (16 * (4 - (metatileSize * metatileSize)));
+                }
+            }
+        }
+
+        private short getAttribute(int ti, int tj, TilePixelMap tileAttributes)
+        {
+            // outside image ? --> use dummy tile
+            if ((ti >= wt) || (tj >= ht))
+                return blankAttr;
+
+            final int memo = tileAttributes.get(image8bpp, wt * 8, ti * 8, tj * 8);
+            // same tile already met ? --> same attribute
+            if (memo != -1)
+                return (short) memo;
+
+            final Tile tile = Tile.getTile(image8bpp, wt * 8, ht * 8, ti * 8, tj * 8, 8);
+            final TileEquality eq;
+            int index;
+
+            // we can use system tiles when we have a base tile offset
+            if (hasBaseTileIndex && tile.isPlain())
+            {
+                index = tile.getPlainValue();
+                eq = TileEquality.NONE;
+            }
+            else
+            {
+                // otherwise we try to get tile index (and equality info) in the tileset
+                final int match = tileset.findTile(tile, TileOptimization.ALL);
+                index = TileDictionary.getIndex(match);
+                // not found ? (should never happen)
+                if (index == -1)
+                    throw new RuntimeException("Can't find tile [" + ti + "," + tj + "] in tileset, something wrong happened...");
+                // index > 2047 ? --> not allowed
+                if (index > 2047)
+                    throw new RuntimeException("Can't have more than 2048 different tiles, try to reduce number of unique tile...");
+
+                // get equality info
+                eq = TileDictionary.getEquality(match);
+                // can add base index now
+                index += mapBaseTileInd;
+            }
+
+            final short result = (short) Tile.TILE_ATTR_FULL(mapBasePal + tile.pal, mapBasePrio | tile.prio, eq.vflip, eq.hflip, index);
+            tileAttributes.put(result & 0xFFFF);
+
+            return result;
+        }
+
+        /**
+         * Submits resolution of all <code>hb</code> block rows to <code>executor</code> by chunks of consecutive rows
+         * (one tile attributes memo per chunk), returns the chunk results in row order
+         */
+        List<Future<long[][]>> submitAll(int hb, ExecutorService executor)
+        {
+            // a few jobs per thread for load balancing
+            rowsPerChunk = Math.max(1, (hb + (DummyTileSettings.THREADS * 4) - 1) / (DummyTileSettings.THREADS * 4));
+            final List<Future<long[][]>> result = new ArrayList<>();
+
+            for (int start = 0; start < hb; start += rowsPerChunk)
+            {
+                final int first = start;
+                final int num = Math.min(rowsPerChunk, hb - start);
+
+                result.add(executor.submit(() ->
+                {
+                    final TilePixelMap tileAttributes = new TilePixelMap();
+                    final long[][] rows = new long[num][];
+
+                    for (int r = 0; r < num; r++)
+                        rows[r] = resolve(first + r, tileAttributes, new long[wb * 8 * 8]);
+
+                    return rows;
+                }));
+            }
+
+            return result;
+        }
+
+        /**
+         * Returns resolved block row <code>j</code> from the jobs submitted by {@link #submitAll(int, ExecutorService)} (waits for it if
+         * needed)
+         */
+        long[] getResolved(List<Future<long[][]>> chunks, int j)
+        {
+            final long[][] chunk;
+
+            try
+            {
+                chunk = chunks.get(j / rowsPerChunk).get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Map block rows resolution interrupted", e);
+            }
+            catch (ExecutionException e)
+            {
+                // re-throw original exception so we fail as the sequential build does
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+
+                throw new RuntimeException(e.getCause());
+            }
+
+            final long[] result = chunk[j % rowsPerChunk];
+            // merged only once --> release it
+            chunk[j % rowsPerChunk] = null;
+
+            return result;
+        }
+    }
+
+    // metatile attributes (2x2 16 bit attributes) packed in a single long
+    private static long getMetaTileKey(short[] attrs)
+    {
+        long result = 0;
+
+        for (int i = 0; i < attrs.length; i++)
+            result = (result << 16) | (attrs[i] & 0xFFFF);
+
+        return result;
     }
 
-    private int getBlockIndex(MapBlock mapBlock)
+    public int getMetaTileIndex(Metatile metatile)
     {
-        return mapBlocks.indexOf(mapBlock);
+        // first metatile with same attributes (-1 if not found)
+        return metatileIndexes.get(getMetaTileKey(metatile.data), -1);
     }
 
     /**
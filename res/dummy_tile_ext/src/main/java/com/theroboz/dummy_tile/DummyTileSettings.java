@@ -0,0 +1,85 @@
+package com.theroboz.dummy_tile;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.theroboz.rescomp_common.DecodedImageCache;
+import com.theroboz.rescomp_common.Settings;
+import com.theroboz.rescomp_common.SideOutputWriter;
+
+/**
+ * Build wide settings of the DUMMY_TILESET / DUMMY_MAP processors.<br>
+ * They are read once from JVM system properties (-Dname=value) so they can be given through JAVA_TOOL_OPTIONS without
+ * changing the .res files.<br>
+ * Also holds the build wide helpers of the extension (decoded images cache, side output writer, worker threads pool).
+ */
+public final class DummyTileSettings
+{
+    // persistent map block cache (enabled by default)
+    public static final boolean BLOCK_CACHE = Settings.getBoolean("dummy_tile.cache", true);
+    // persistent caches directory (default is '.rescomp_cache' in the resource directory)
+    public static final String CACHE_DIR = System.getProperty("dummy_tile.cache.dir");
+    // extract tileset tiles and build map block rows in parallel (disabled by default)
+    public static final boolean PARALLEL = Settings.getBoolean("dummy_tile.parallel", false);
+    // number of worker threads for parallel processing (default is number of available processors)
+    public static final int THREADS = Math.max(1, Settings.getInt("dummy_tile.threads", Runtime.getRuntime().availableProcessors()));
+
+    private static SideOutputWriter sideOutputWriter = null;
+    private static ExecutorService executor = null;
+
+    private DummyTileSettings()
+    {
+    }
+
+    /**
+     * Returns the directory used to store persistent caches (may not exist yet)
+     */
+    public static File getCacheDir()
+    {
+        return Settings.getCacheDir(CACHE_DIR);
+    }
+
+    /**
+     * Returns the decoded images cache of DUMMY_TILESET / DUMMY_MAP resources (build wide cache shared with the other
+     * extensions)
+     */
+    public static DecodedImageCache getImageCache()
+    {
+        return DecodedImageCache.getShared();
+    }
+
+    /**
+     * Returns the background writer of DUMMY_TILESET / DUMMY_MAP side outputs
+     */
+    public static synchronized SideOutputWriter getSideOutputWriter()
+    {
+        if (sideOutputWriter == null)
+            sideOutputWriter = SideOutputWriter.create("DUMMY_TILESET / DUMMY_MAP");
+
+        return sideOutputWriter;
+    }
+
+    /**
+     * Returns the worker threads pool ({@link #THREADS} daemon threads) used for parallel tiles extraction and map block
+     * rows resolution
+     */
+    public static synchronized ExecutorService getExecutor()
+    {
+        if (executor == null)
+        {
+            final AtomicInteger threadIndex = new AtomicInteger();
+
+            executor = Executors.newFixedThreadPool(THREADS, r ->
+            {
+                final Thread t = new Thread(r, "dummy-tile-worker-" + threadIndex.incrementAndGet());
+                // don't prevent the compiler to exit
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        return executor;
+    }
+}
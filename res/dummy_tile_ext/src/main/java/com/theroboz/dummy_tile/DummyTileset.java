@@ -6,15 +6,19 @@ import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.theroboz.rescomp_common.DecodedImageCache;
 
 import sgdk.rescomp.Resource;
 import sgdk.rescomp.resource.Bin;
 import sgdk.rescomp.type.Basics.Compression;
-import sgdk.rescomp.type.Basics.TileEquality;
 import sgdk.rescomp.type.Basics.TileOptimization;
 import sgdk.rescomp.type.Basics.TileOrdering;
 import sgdk.rescomp.type.Tile;
@@ -28,8 +32,10 @@ public class DummyTileset extends Resource
     public static DummyTileset getTileset(String id, String imgFile, Compression compression, TileOptimization tileOpt, boolean addBlank, boolean temp,
             TileOrdering order, boolean export) throws Exception
     {
+        // decoded image (shared with other resources using the same file)
+        final DecodedImageCache.Entry decoded = DummyTileSettings.getImageCache().get(imgFile);
         // get 8bpp pixels and also check image dimension is aligned to tile
-        final byte[] image = ImageUtil.getImageAs8bpp(imgFile, true, true);
+        final byte[] image = decoded.get8bpp();
 
         // happen when we couldn't retrieve palette data from RGB image
         if (image == null)
@@ -37,38 +43,45 @@ public class DummyTileset extends Resource
                     "RGB image '" + imgFile + "' does not contains palette data (see 'Important note about image format' in the rescomp.txt file");
 
         // retrieve basic infos about the image
-        final BasicImageInfo imgInfo = ImageUtil.getBasicInfo(imgFile);
+        final BasicImageInfo imgInfo = decoded.getBasicInfo();
         final int w = imgInfo.w;
         // we determine 'h' from data length and 'w' as we can crop image vertically to remove palette data
         final int h = image.length / w;
 
         final DummyTileset result = new DummyTileset(id, image, w, h, 0, 0, w / 8, h / 8, tileOpt, compression, addBlank, temp, order);
 
-        // export tileset to PNG ?
+        // export tileset to PNG ? (written in background, not needed by the build)
         if (export)
         {
-            // get the tileset image (8bpp format)
-            final byte[] tilesetImage = result.getTilesetImage();
-
-            // get the palette
-            int[] palette = (imgInfo.bpp > 8) ? ImageUtil.getRGBA8888PaletteFromTiles(imgFile) : ImageUtil.getRGBA8888PaletteFromIndColImage(imgFile);
-            // need to convert back to ABGR format
-            palette = ImageUtil.ARGBtoABGR(palette);
-            // create the IndexColorModel
-            final IndexColorModel cm = new IndexColorModel(8, 16, palette, 0, false, 0, DataBuffer.TYPE_BYTE);
-
-            // width is fixed to 16*8 (128) pixels, easy to get the height
-            final int imgH = tilesetImage.length / (16 * 8);
-            // create the BufferedImage
-            final BufferedImage exportImage = ImageUtil.createIndexedImage(16 * 8, imgH, cm, tilesetImage);
-
-            // save it
-            ImageUtil.save(exportImage, "png", FileUtil.setExtension(imgFile, "-tileset-export.png"));
+            final String outFile = FileUtil.setExtension(imgFile, "-tileset-export.png");
+            // snapshot of tiles (tileset can't change after that but better to be safe)
+            final List<Tile> tiles = new ArrayList<>(result.tiles);
+
+            DummyTileSettings.getSideOutputWriter().submit(outFile, () -> saveTilesetImage(outFile, decoded.getPalette(), tiles));
         }
 
         return result;
     }
 
+    static void saveTilesetImage(String outFile, int[] imgPalette, List<Tile> tiles)
+    {
+        // get the tileset image (8bpp format)
+        final byte[] tilesetImage = getTilesetImage(tiles);
+
+        // need to convert palette back to ABGR format (don't modify the cached one)
+        final int[] palette = ImageUtil.ARGBtoABGR(imgPalette.clone());
+        // create the IndexColorModel
+        final IndexColorModel cm = new IndexColorModel(8, 16, palette, 0, false, 0, DataBuffer.TYPE_BYTE);
+
+        // width is fixed to 16*8 (128) pixels, easy to get the height
+        final int imgH = tilesetImage.length / (16 * 8);
+        // create the BufferedImage
+        final BufferedImage exportImage = ImageUtil.createIndexedImage(16 * 8, imgH, cm, tilesetImage);
+
+        // save it
+        ImageUtil.save(exportImage, "png", outFile);
+    }
+
     // tiles
     final private List<Tile> tiles;
     final int hc;
@@ -78,40 +91,7 @@ public class DummyTileset extends Resource
 
     // internals
     final boolean isDuplicate;
-    final private java.util.Map<Tile, Integer> tileIndexesMap;
-    final private java.util.Map<Integer, List<Tile>> tileByHashcodeMap;
-
-    // special constructor for TSX (can have several tilesets for a single map)
-    public DummyTileset(List<DummyTileset> tilesets)
-    {
-        super("tilesets");
-
-        tiles = new ArrayList<>();
-        tileIndexesMap = new HashMap<>();
-        tileByHashcodeMap = new HashMap<>();
-        isDuplicate = false;
-
-        // !! don't optimize tilesets (important to preserve tile indexes here) !!
-        for (DummyTileset tileset : tilesets)
-            for (Tile tile : tileset.tiles)
-                add(tile);
-
-        // build the binary bloc
-        final int[] data = new int[tiles.size() * 8];
-
-        int offset = 0;
-        for (Tile t : tiles)
-        {
-            System.arraycopy(t.data, 0, data, offset, 8);
-            offset += 8;
-        }
-
-        // build BIN (tiles data) - not stored as this is a temporary tileset
-        bin = new Bin(id + "_data", data, Compression.NONE);
-
-        // compute hash code
-        hc = bin.hashCode();
-    }
+    final private TileDictionary dictionary;
 
     // special constructor for empty tileset
     public DummyTileset()
@@ -119,8 +99,7 @@ public class DummyTileset extends Resource
         super("empty_tileset");
 
         tiles = new ArrayList<>();
-        tileIndexesMap = new HashMap<>();
-        tileByHashcodeMap = new HashMap<>();
+        dictionary = new TileDictionary(tiles);
         isDuplicate = false;
 
         // dummy bin
@@ -135,8 +114,7 @@ public class DummyTileset extends Resource
         super(id);
 
         tiles = new ArrayList<>();
-        tileIndexesMap = new HashMap<>();
-        tileByHashcodeMap = new HashMap<>();
+        dictionary = new TileDictionary(tiles);
         isDuplicate = false;
 
         final int[] data;
@@ -168,17 +146,33 @@ public class DummyTileset extends Resource
 
     public DummyTileset(String id, byte[] image8bpp, int imageWidth, int imageHeight, int startTileX, int startTileY, int widthTile, int heightTile,
             TileOptimization opt, Compression compression, boolean addBlank, boolean temp, TileOrdering order)
+    {
+        this(id, image8bpp, imageWidth, imageHeight, startTileX, startTileY, widthTile, heightTile, opt, compression, addBlank, temp, order,
+                DummyTileSettings.PARALLEL ? DummyTileSettings.getExecutor() : null);
+    }
+
+    /**
+     * @param executor
+     *        worker threads used to extract tiles, <code>null</code> to extract them sequentially
+     */
+    DummyTileset(String id, byte[] image8bpp, int imageWidth, int imageHeight, int startTileX, int startTileY, int widthTile, int heightTile,
+            TileOptimization opt, Compression compression, boolean addBlank, boolean temp, TileOrdering order, ExecutorService executor)
     {
         super(id);
 
         boolean hasBlank = false;
 
         tiles = new ArrayList<>();
-        tileIndexesMap = new HashMap<>();
-        tileByHashcodeMap = new HashMap<>();
+        dictionary = new TileDictionary(tiles);
 
+        final TileExtractor extractor = new TileExtractor(image8bpp, imageWidth, imageHeight, startTileX, startTileY, widthTile, heightTile, order,
+                executor);
+
+        // extract tiles on worker threads, they are still added in the wanted order so result is the same
+        if ((executor != null) && (extractor.getNumChunks() > 1))
+            hasBlank = addAll(extractor, opt);
         // important to always use the **same loop order** when building Tileset and Tilemap/Map object
-        if (order == TileOrdering.ROW)
+        else if (order == TileOrdering.ROW)
         {
             for (int j = 0; j < heightTile; j++)
             {
@@ -261,8 +255,7 @@ public class DummyTileset extends Resource
         super(id);
 
         tiles = new ArrayList<>();
-        tileIndexesMap = new HashMap<>();
-        tileByHashcodeMap = new HashMap<>();
+        dictionary = new TileDictionary(tiles);
 
         for (Rectangle rect : sprites)
         {
@@ -327,78 +320,85 @@ public class DummyTileset extends Resource
     public void add(Tile tile)
     {
         // need to be called first
-        addInternal(tile);
+        dictionary.add(tile, tiles.size());
         tiles.add(tile);
     }
 
-    private void addInternal(Tile tile)
+    /**
+     * Adds tiles extracted (and fingerprinted) by worker threads, in extraction order and only if not already present.
+     * Returns <code>true</code> if a blank tile was extracted
+     */
+    private boolean addAll(TileExtractor extractor, TileOptimization opt)
     {
-        // better to keep first index if duplicated (should not be really useful)..
-        // if (!tileIndexesMap.containsKey(tile))
-        tileIndexesMap.put(tile, Integer.valueOf(tiles.size()));
+        final int numChunks = extractor.getNumChunks();
+        // limit the number of chunks extracted ahead (memory usage on large images)
+        final int maxPending = DummyTileSettings.THREADS * 2;
+        final ArrayDeque<Future<ExtractedTiles>> pending = new ArrayDeque<>();
+        boolean result = false;
+        int next = 0;
+
+        try
+        {
+            for (int c = 0; c < numChunks; c++)
+            {
+                while ((next < numChunks) && (pending.size() < maxPending))
+                    pending.add(extractor.submit(next++));
 
-        final Integer hashKey = Integer.valueOf(tile.hashCode());
-        List<Tile> hashTiles = tileByHashcodeMap.get(hashKey);
+                final ExtractedTiles chunk = TileExtractor.getExtracted(pending.poll());
+
+                result |= chunk.hasBlank;
+
+                for (int t = 0; t < chunk.tiles.length; t++)
+                {
+                    final Tile tile = chunk.tiles[t];
+                    final long fingerprint = chunk.fingerprints[t];
 
-        if (hashTiles == null)
+                    // not found --> add it
+                    if (dictionary.find(tile, opt, fingerprint) == -1)
+                    {
+                        // need to be called first
+                        dictionary.add(tile, tiles.size(), fingerprint);
+                        tiles.add(tile);
+                    }
+                }
+            }
+        }
+        finally
         {
-            hashTiles = new ArrayList<>();
-            tileByHashcodeMap.put(hashKey, hashTiles);
+            // failed ? --> don't leave pending extraction jobs
+            for (Future<ExtractedTiles> f : pending)
+                f.cancel(false);
         }
 
-        hashTiles.add(tile);
+        return result;
     }
 
-    public int getTileIndex(Tile tile, TileOptimization opt)
+    // tile index of this tileset (shared by merged tilesets)
+    TileDictionary getDictionary()
     {
-        // no optimization allowed --> need to duplicate tile
-        if (opt == TileOptimization.NONE)
-            return -1;
-
-        // fast perfect match test (preferred choice if possible)
-        final Integer key = tileIndexesMap.get(tile);
-        // found ? --> return index
-        if (key != null)
-            return key.intValue();
-
-        // allow flip ?
-        if (opt == TileOptimization.ALL)
-        {
-            // get all tiles with same hash code
-            final List<Tile> hashTiles = tileByHashcodeMap.get(Integer.valueOf(tile.hashCode()));
+        return dictionary;
+    }
 
-            // have some ?
-            if (hashTiles != null)
-            {
-                for (Tile t : hashTiles)
-                {
-                    // flipped version ?
-                    if (t.getFlipEquality(tile) != TileEquality.NONE)
-                        // return index of the original tile
-                        return tileIndexesMap.get(t).intValue();
-                }
-            }
-        }
+    public int getTileIndex(Tile tile, TileOptimization opt)
+    {
+        return TileDictionary.getIndex(dictionary.find(tile, opt));
+    }
 
-        // // always do a first pass for direct matching (preferred choice if possible)
-        // for (int ind = 0; ind < tiles.size(); ind++)
-        // if (tiles.get(ind).equals(tile))
-        // return ind;
-        //
-        // // allow flip ?
-        // if (opt == TileOptimization.ALL)
-        // {
-        // for (int ind = 0; ind < tiles.size(); ind++)
-        // // found a flip equality ?
-        // if (tiles.get(ind).getFlipEquality(tile) != TileEquality.NONE)
-        // return ind;
-        // }
-
-        // not found
-        return -1;
+    /**
+     * Returns the tile matching the given one (index and equality, see {@link TileDictionary#find(Tile, TileOptimization)}),
+     * -1 if not found
+     */
+    public int findTile(Tile tile, TileOptimization opt)
+    {
+        return dictionary.find(tile, opt);
     }
 
     public byte[] getTilesetImage()
+    {
+        return getTilesetImage(tiles);
+    }
+
+    static byte[] getTilesetImage(List<Tile> tiles)
     {
         final int w = 16;
         final int h = (tiles.size() + 15) / w;
@@ -476,4 +476,130 @@ public class DummyTileset extends Resource
         // outS.append("    dc.l    " + bin.id + "\n");
         // outS.append("\n");
     }
+
+    /**
+     * Tiles of a chunk of consecutive cells (in tileset ordering) with their fingerprint (see
+     * {@link TileDictionary#getFingerprint(int[])})
+     */
+    private static class ExtractedTiles
+    {
+        final Tile[] tiles;
+        final long[] fingerprints;
+        boolean hasBlank;
+
+        ExtractedTiles(int size)
+        {
+            tiles = new Tile[size];
+            fingerprints = new long[size];
+            hasBlank = false;
+        }
+    }
+
+    /**
+     * Extracts and fingerprints the tiles of a tileset image by chunks of consecutive cells (in the given ordering).<br>
+     * It only reads the image so chunks can be extracted concurrently, tiles are then added in cell order by the tileset
+     * constructor.
+     */
+    private static class TileExtractor
+    {
+        // number of cells per job
+        static final int CHUNK_SIZE = 1024;
+
+        final byte[] image8bpp;
+        final int imageWidth;
+        final int imageHeight;
+        final int startTileX;
+        final int startTileY;
+        final int widthTile;
+        final int heightTile;
+        final TileOrdering order;
+        final ExecutorService executor;
+
+        TileExtractor(byte[] image8bpp, int imageWidth, int imageHeight, int startTileX, int startTileY, int widthTile, int heightTile, TileOrdering order,
+                ExecutorService executor)
+        {
+            this.image8bpp = image8bpp;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.startTileX = startTileX;
+            this.startTileY = startTileY;
+            this.widthTile = widthTile;
+            this.heightTile = heightTile;
+            this.order = order;
+            this.executor = executor;
+        }
+
+        int getNumChunks()
+        {
+            return ((widthTile * heightTile) + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        }
+
+        // tile of the cell at the given position in tileset ordering
+        Tile getTile(int cell)
+        {
+            final int i;
+            final int j;
+
+            // important to always use the **same loop order** when building Tileset and Tilemap/Map object
+            if (order == TileOrdering.ROW)
+            {
+                i = cell % widthTile;
+                j = cell / widthTile;
+            }
+            else
+            {
+                i = cell / heightTile;
+                j = cell % heightTile;
+            }
+
+            return Tile.getTile(image8bpp, imageWidth, imageHeight, (i + startTileX) * 8, (j + startTileY) * 8, 8);
+        }
+
+        /**
+         * Submits extraction of chunk <code>c</code> to the worker threads
+         */
+        Future<ExtractedTiles> submit(int c)
+        {
+            return executor.submit(() ->
+            {
+                final int first = c * CHUNK_SIZE;
+                final ExtractedTiles result = new ExtractedTiles(Math.min(CHUNK_SIZE, (widthTile * heightTile) - first));
+
+                for (int t = 0; t < result.tiles.length; t++)
+                {
+                    final Tile tile = getTile(first + t);
+
+                    result.tiles[t] = tile;
+                    result.fingerprints[t] = TileDictionary.getFingerprint(tile.data);
+                    result.hasBlank |= tile.isBlank();
+                }
+
+                return result;
+            });
+        }
+
+        /**
+         * Returns the extracted tiles of a submitted chunk (waits for it if needed)
+         */
+        static ExtractedTiles getExtracted(Future<ExtractedTiles> chunk)
+        {
+            try
+            {
+                return chunk.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Tileset tiles extraction interrupted", e);
+            }
+            catch (ExecutionException e)
+            {
+                // re-throw original exception so we fail as the sequential build does
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
 }
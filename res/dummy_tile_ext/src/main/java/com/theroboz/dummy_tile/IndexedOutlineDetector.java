@@ -1,12 +1,13 @@
 package com.theroboz.dummy_tile;
 
-import javax.imageio.ImageIO;
-import java.awt.image.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.theroboz.rescomp_common.DecodedImageCache;
+import com.theroboz.rescomp_common.RunTable;
+
 public final class IndexedOutlineDetector
 {
     public static class Rect
@@ -39,34 +40,56 @@ public final class IndexedOutlineDetector
 
     public static Rect[] detect(File file) throws IOException
     {
-        BufferedImage img = ImageIO.read(file);
-        if (!(img.getColorModel() instanceof IndexColorModel)) throw new IllegalArgumentException("Must be indexed-color PNG");
-        IndexColorModel cm = (IndexColorModel) img.getColorModel();
-        int transparent = cm.getTransparentPixel(); // usually -1
+        // decoded image (shared with other resources using the same file)
+        DecodedImageCache.IndexedImage img = DummyTileSettings.getImageCache().get(file).getIndexed();
+        int transparent = img.transparentIndex; // usually -1
+
+        return detect(img.pixels, img.width, img.height, transparent);
+    }
+
+    /**
+     * Detects rectangles drawn with a 1 pixel border of a single color (16 pixels min) on the given 8bpp image.<br>
+     * Same color run-length tables (computed in a single pass) are used so borders are checked in constant time, and a
+     * bitset for visited border pixels.
+     */
+    static Rect[] detect(byte[] pixels, int w, int h, int transparent)
+    {
+        // same color run length to the right / down of each pixel
+        final RunTable runRight = new RunTable(w, h);
+        final RunTable runDown = new RunTable(w, h);
+
+        for (int y = h - 1; y >= 0; y--)
+        {
+            for (int x = w - 1; x >= 0; x--)
+            {
+                final int i = (y * w) + x;
+
+                runRight.set(i, (((x + 1) < w) && (pixels[i + 1] == pixels[i])) ? runRight.get(i + 1) + 1 : 1);
+                runDown.set(i, (((y + 1) < h) && (pixels[i + w] == pixels[i])) ? runDown.get(i + w) + 1 : 1);
+            }
+        }
 
-        byte[] pixels = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
-        int w = img.getWidth();
-        int h = img.getHeight();
-        boolean[][] visited = new boolean[h][w];
+        final long[] visited = new long[((w * h) + 63) >> 6];
 
-        // Only marks border pixels as visited
         List<Rect> result = new ArrayList<>();
         for (int y = 0; y < h - 8; y++)
         {
             for (int x = 0; x < w;)
             {
-                if (visited[y][x])
+                final int i = (y * w) + x;
+
+                if ((visited[i >> 6] & (1L << i)) != 0)
                 {
                     x++;
                     continue;
                 }
-                int idx = pixels[y * w + x] & 0xFF;
+                int idx = pixels[i] & 0xFF;
                 if (idx == transparent || idx == 0) { x++;
                 continue;
                 }
 
                 // Try to detect rectangle with top border starting at (x,y)
-                Rect r = tryFindRectangle(pixels, w, h, x, y, (byte)idx, visited);
+                Rect r = tryFindRectangle(pixels, w, h, x, y, runRight, runDown, visited);
                 if (r != null)
                 {
                     result.add(r);
@@ -82,21 +105,23 @@ public final class IndexedOutlineDetector
         return result.toArray(new Rect[0]);
     }
 
-    private static Rect tryFindRectangle(byte[] pixels, int imgW, int imgH, int startX, int startY, byte color, boolean[][] visited)
+    private static Rect tryFindRectangle(byte[] pixels, int imgW, int imgH, int startX, int startY, RunTable runRight, RunTable runDown, long[] visited)
     {
+        final byte color = pixels[startY * imgW + startX];
         // 1. Find right end of top horizontal border
-        int rightX = startX;
-
-        while (rightX < imgW - 1 && pixels[startY * imgW + rightX + 1] == color) rightX++;
+        final int width = runRight.get(startY * imgW + startX);
+        final int rightX = startX + width - 1;
 
         int minSize = 16;
-        if (rightX - startX + 1 < minSize) return null;
+        if (width < minSize) return null;
 
         // 2. Find matching bottom border (same length, same color)
         int bottomY = -1;
         for (int y = startY + minSize; y < imgH; y++)
         {
-            if (isFullHorizontal(pixels, imgW, startX, rightX, y, color))
+            final int i = y * imgW + startX;
+
+            if (pixels[i] == color && runRight.get(i) >= width)
             {
                 bottomY = y;
                 break;
@@ -105,49 +130,28 @@ public final class IndexedOutlineDetector
         if (bottomY == -1) return null;
 
         // 3. Verify left and right vertical borders are complete
-        if (!isFullVertical(pixels, imgW, startX, startY, bottomY, color)) return null;
-        if (!isFullVertical(pixels, imgW, rightX, startY, bottomY, color)) return null;
+        final int height = bottomY - startY + 1;
+        if (runDown.get(startY * imgW + startX) < height) return null;
+        if (runDown.get(startY * imgW + rightX) < height) return null;
 
         // Success! Mark all border pixels as visited
-        markBorder(visited, startX, startY, rightX, bottomY);
-        int width = rightX - startX + 1;
-        int height = bottomY - startY + 1;
-        return new Rect(startX, startY, width, height, color & 0xFF);
-    }
-
-    private static boolean isFullHorizontal(byte[] p, int w, int x1, int x2, int y, byte c)
-    {
-        for (int x = x1; x <= x2; x++)
+        for (int x = startX; x <= rightX; x++)
         {
-            if (p[y * w + x] != c) return false;
+            setVisited(visited, startY * imgW + x);
+            setVisited(visited, bottomY * imgW + x);
         }
-        return true;
-    }
-
-    private static boolean isFullVertical(byte[] p, int w, int x, int y1, int y2, byte c)
-    {
-        for (int y = y1; y <= y2; y++)
+        for (int y = startY + 1; y < bottomY; y++)
         {
-            if (p[y * w + x] != c) return false;
+            setVisited(visited, y * imgW + startX);
+            setVisited(visited, y * imgW + rightX);
         }
-        return true;
+
+        return new Rect(startX, startY, width, height, color & 0xFF);
     }
 
-    private static void markBorder(boolean[][] v, int x1, int y1, int x2, int y2)
+    private static void setVisited(long[] visited, int i)
     {
-        // top + bottom
-        for (int x = x1; x <= x2; x++)
-        {
-            v[y1][x] = true;
-            v[y2][x] = true;
-        }
-
-        // left + right (skip corners already marked)
-        for (int y = y1 + 1; y < y2; y++)
-        {
-            v[y][x1] = true;
-            v[y][x2] = true;
-        }
+        visited[i >> 6] |= 1L << i;
     }
 
     // Convenience
@@ -0,0 +1,120 @@
+package com.theroboz.dummy_tile;
+
+import java.util.Arrays;
+
+/**
+ * Minimal open addressing <code>long</code> to <code>int</code> hash map (no boxing, no entry objects).<br>
+ * Values must be positive or zero: a negative value marks an empty slot.
+ */
+public class LongIntHashMap
+{
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public LongIntHashMap()
+    {
+        this(64);
+    }
+
+    public LongIntHashMap(int expectedSize)
+    {
+        // keep load factor <= 0.5
+        int capacity = 16;
+        while (capacity < (expectedSize * 2))
+            capacity <<= 1;
+
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, -1);
+        mask = capacity - 1;
+    }
+
+    private static int hash(long key)
+    {
+        // murmur3 finalizer
+        long h = key;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return (int) (h ^ (h >>> 33));
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the value of the given key, <code>missing</code> if not present
+     */
+    public int get(long key, int missing)
+    {
+        int slot = hash(key) & mask;
+
+        while (values[slot] >= 0)
+        {
+            if (keys[slot] == key)
+                return values[slot];
+
+            slot = (slot + 1) & mask;
+        }
+
+        return missing;
+    }
+
+    /**
+     * Sets the value of the given key (value should be &gt;= 0)
+     */
+    public void put(long key, int value)
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("LongIntHashMap value should be >= 0 (" + value + ")");
+
+        int slot = hash(key) & mask;
+
+        while (values[slot] >= 0)
+        {
+            if (keys[slot] == key)
+            {
+                values[slot] = value;
+                return;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+
+        // above load factor ? --> grow
+        if (++size > (values.length >> 1))
+            rehash();
+    }
+
+    private void rehash()
+    {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+
+        allocate(oldValues.length * 2);
+
+        for (int i = 0; i < oldValues.length; i++)
+        {
+            if (oldValues[i] >= 0)
+            {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] >= 0)
+                    slot = (slot + 1) & mask;
+
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
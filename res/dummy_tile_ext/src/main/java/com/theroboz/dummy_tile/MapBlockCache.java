@@ -0,0 +1,337 @@
+package com.theroboz.dummy_tile;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persistent cache of the resolved blocks of a map, so a map where only a few blocks changed only resolves these blocks
+ * again (metatiles, blocks and block rows are then deduplicated again from the cached data, which is cheap).<br>
+ * A block is keyed by the MD5 of its source pixels (and size) and gives the packed attributes of its 8x8 metatiles.
+ * Each map has its own file ('dummy_map_[id].bin' in the cache directory) which also stores a digest of the resolution
+ * context (tilesets content, map base and metatile size): if it changed the cache is discarded and the whole map is
+ * resolved again.<br>
+ * The file is rewritten at the end of the map build with the blocks of the current map only, delete it to reset the
+ * cache. It's written in a unique temporary file then moved in place (so concurrent builds of the same map never mix
+ * their data) and ends with a checksum of its content: a file which doesn't match it is deleted and the whole map is
+ * resolved again.
+ */
+public class MapBlockCache
+{
+    private static final String FILE_PREFIX = "dummy_map_";
+    private static final int MAGIC = 0x444D4243; // 'DMBC'
+    private static final int VERSION = 2;
+    // packed metatile attributes per block
+    static final int BLOCK_SIZE = 8 * 8;
+
+    // build totals
+    private static final AtomicInteger totalHits = new AtomicInteger();
+    private static final AtomicInteger totalMisses = new AtomicInteger();
+    private static boolean reportAdded = false;
+
+    /**
+     * MD5 of a block
+     */
+    public static class Key
+    {
+        final long hi;
+        final long lo;
+
+        Key(long hi, long lo)
+        {
+            this.hi = hi;
+            this.lo = lo;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(hi ^ lo);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof Key)
+            {
+                final Key key = (Key) obj;
+                return (hi == key.hi) && (lo == key.lo);
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Returns the block cache of the given map stored in the given cache directory
+     */
+    public static MapBlockCache open(File cacheDir, String mapId, MergedTileset tileset, int mapBase, int metatileSize)
+    {
+        // everything (other than block pixels) the resolved blocks depend on
+        final MessageDigest md = getDigest();
+        md.update(tileset.getDigest());
+        md.update(ByteBuffer.allocate(8).putInt(mapBase).putInt(metatileSize).array());
+        final byte[] context = md.digest();
+
+        synchronized (MapBlockCache.class)
+        {
+            if (!reportAdded)
+            {
+                // report statistics at the end of the build
+                Runtime.getRuntime().addShutdownHook(new Thread(MapBlockCache::report, "dummy_tile block cache"));
+                reportAdded = true;
+            }
+        }
+
+        return new MapBlockCache(new File(cacheDir, FILE_PREFIX + mapId + ".bin"), context);
+    }
+
+    // build totals (for tests)
+    static int getTotalHits()
+    {
+        return totalHits.get();
+    }
+
+    static int getTotalMisses()
+    {
+        return totalMisses.get();
+    }
+
+    private static void report()
+    {
+        final int hits = totalHits.get();
+        final int misses = totalMisses.get();
+
+        if ((hits + misses) > 0)
+            System.out.println("DUMMY_MAP block cache: " + hits + " hit(s), " + misses + " miss(es) - " + DummyTileSettings.getCacheDir().getPath());
+    }
+
+    /**
+     * Returns a new MD5 digest (not thread safe, one per thread)
+     */
+    public static MessageDigest getDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // MD5 is always available on Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the key of the block at (<code>x</code>, <code>y</code>) of size <code>w</code> x <code>h</code> (in
+     * pixel) of the 8bpp image
+     */
+    static Key computeKey(MessageDigest md, byte[] image8bpp, int imageWidth, int x, int y, int w, int h)
+    {
+        md.reset();
+        md.update((byte) VERSION);
+        md.update((byte) w);
+        md.update((byte) h);
+        for (int r = 0; r < h; r++)
+            md.update(image8bpp, ((y + r) * imageWidth) + x, w);
+
+        final byte[] digest = md.digest();
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            hi = (hi << 8) | (digest[i] & 0xFF);
+            lo = (lo << 8) | (digest[i + 8] & 0xFF);
+        }
+
+        return new Key(hi, lo);
+    }
+
+    private final File file;
+    private final byte[] context;
+    // blocks of the previous build
+    private final Map<Key, long[]> blocks;
+    // blocks of this build
+    private final Map<Key, long[]> used;
+    private final AtomicInteger misses;
+
+    MapBlockCache(File file, byte[] context)
+    {
+        this.file = file;
+        this.context = context;
+        blocks = new ConcurrentHashMap<>();
+        used = new ConcurrentHashMap<>();
+        misses = new AtomicInteger();
+
+        load();
+    }
+
+    private void load()
+    {
+        if (!file.exists())
+            return;
+
+        final ByteBuffer data;
+
+        try
+        {
+            data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        }
+        catch (IOException e)
+        {
+            // missing blocks are just resolved again
+            System.err.println("Warning: couldn't read DUMMY_MAP block cache '" + file.getPath() + "': " + e.getMessage());
+            return;
+        }
+
+        if ((data.remaining() < (8 + context.length + 4 + 4)) || (data.getInt() != MAGIC) || (data.getInt() != VERSION))
+        {
+            System.out.println("DUMMY_MAP block cache '" + file.getPath() + "' has an unknown format, it will be rebuilt");
+            return;
+        }
+
+        // content doesn't match its checksum (interrupted or corrupted write) ? --> never use it
+        if (data.getInt(data.limit() - 4) != getChecksum(data.array(), 0, data.limit() - 4))
+        {
+            System.out.println("DUMMY_MAP block cache '" + file.getPath() + "' is corrupted, it is removed");
+            file.delete();
+            return;
+        }
+
+        final byte[] fileContext = new byte[context.length];
+        data.get(fileContext);
+
+        // tilesets, map base or metatile size changed ? --> full rebuild
+        if (!Arrays.equals(fileContext, context))
+            return;
+
+        final int num = data.getInt();
+        // checksum ok but wrong block count: shouldn't happen
+        if (num != ((data.remaining() - 4) / ((2 + BLOCK_SIZE) * 8)))
+        {
+            System.out.println("DUMMY_MAP block cache '" + file.getPath() + "' is corrupted, it is removed");
+            file.delete();
+            return;
+        }
+
+        for (int b = 0; b < num; b++)
+        {
+            final Key key = new Key(data.getLong(), data.getLong());
+            final long[] block = new long[BLOCK_SIZE];
+
+            for (int i = 0; i < block.length; i++)
+                block[i] = data.getLong();
+
+            blocks.put(key, block);
+        }
+    }
+
+    // checksum of the file content
+    private static int getChecksum(byte[] data, int from, int to)
+    {
+        final CRC32 crc = new CRC32();
+        crc.update(data, from, to - from);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns the cached packed metatile attributes of the given block or <code>null</code> if not found (returned array
+     * must not be modified)
+     */
+    public long[] get(Key key)
+    {
+        final long[] result = blocks.get(key);
+
+        if (result == null)
+        {
+            misses.incrementAndGet();
+            totalMisses.incrementAndGet();
+            return null;
+        }
+
+        totalHits.incrementAndGet();
+        used.put(key, result);
+
+        return result;
+    }
+
+    /**
+     * Stores the packed metatile attributes of the given block (<code>BLOCK_SIZE</code> values from <code>offset</code>)
+     */
+    public void put(Key key, long[] data, int offset)
+    {
+        used.put(key, Arrays.copyOfRange(data, offset, offset + BLOCK_SIZE));
+    }
+
+    /**
+     * Writes blocks of this build to the cache file (only if something changed)
+     */
+    public void save()
+    {
+        if ((misses.get() == 0) && (used.size() == blocks.size()))
+            return;
+
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.exists())
+            dir.mkdirs();
+
+        File tmp = null;
+
+        try
+        {
+            // write in a temporary file (unique so concurrent builds of the same map never write in the same file) first
+            // so an interrupted build never leaves a partial cache
+            tmp = Files.createTempFile(dir.toPath(), file.getName() + ".", ".tmp").toFile();
+
+            final CRC32 crc = new CRC32();
+
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)), crc)))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.write(context);
+                out.writeInt(used.size());
+
+                for (Map.Entry<Key, long[]> entry : used.entrySet())
+                {
+                    out.writeLong(entry.getKey().hi);
+                    out.writeLong(entry.getKey().lo);
+                    for (long v : entry.getValue())
+                        out.writeLong(v);
+                }
+
+                // checksum of all previous data
+                out.writeInt((int) crc.getValue());
+            }
+
+            try
+            {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Warning: couldn't write DUMMY_MAP block cache '" + file.getPath() + "': " + e.getMessage());
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+}
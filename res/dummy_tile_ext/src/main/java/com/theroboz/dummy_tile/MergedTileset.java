@@ -0,0 +1,182 @@
+package com.theroboz.dummy_tile;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import sgdk.rescomp.type.Basics.TileOptimization;
+import sgdk.rescomp.type.Tile;
+
+/**
+ * Read-only tile lookup over the tiles of several tilesets, as used by maps: tiles are taken in tileset order without
+ * any optimization so tile indexes are preserved (no tile list copy for a single tileset and no tiles Bin).<br>
+ * Merged tilesets are cached for the whole build, keyed by the identity of the referenced tilesets, so maps sharing the
+ * same tilesets share the same index.
+ */
+public class MergedTileset
+{
+    // referenced tilesets (in order), compared by identity
+    private static class Key
+    {
+        final DummyTileset[] tilesets;
+        final int hc;
+
+        Key(List<DummyTileset> tilesets)
+        {
+            this.tilesets = tilesets.toArray(new DummyTileset[tilesets.size()]);
+
+            int h = 0;
+            for (DummyTileset tileset : this.tilesets)
+                h = (h * 31) + System.identityHashCode(tileset);
+            hc = h;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hc;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof Key)
+            {
+                final DummyTileset[] other = ((Key) obj).tilesets;
+
+                if (other.length != tilesets.length)
+                    return false;
+
+                for (int i = 0; i < tilesets.length; i++)
+                    if (other[i] != tilesets[i])
+                        return false;
+
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    private static final HashMap<Key, MergedTileset> cache = new HashMap<>();
+
+    /**
+     * Returns the merged tileset of the given tilesets (cached)
+     */
+    public static synchronized MergedTileset get(List<DummyTileset> tilesets)
+    {
+        final Key key = new Key(tilesets);
+        MergedTileset result = cache.get(key);
+
+        // not yet built or a tileset got new tiles since --> (re)build it
+        if ((result == null) || !result.isValid())
+        {
+            result = new MergedTileset(key.tilesets);
+            cache.put(key, result);
+        }
+
+        return result;
+    }
+
+    final DummyTileset[] tilesets;
+    // number of tile of each tileset when merged
+    final int[] numTiles;
+    final TileDictionary dictionary;
+    // hash code of the merged tiles (combined tileset hash codes)
+    final int hc;
+    // MD5 of the merged tiles (computed on first use)
+    private byte[] digest;
+
+    MergedTileset(DummyTileset[] tilesets)
+    {
+        this.tilesets = tilesets;
+        numTiles = new int[tilesets.length];
+
+        int h = 0;
+        for (int t = 0; t < tilesets.length; t++)
+        {
+            numTiles[t] = tilesets[t].getNumTile();
+            h = (h * 31) + tilesets[t].hashCode();
+        }
+        hc = h;
+
+        // single tileset --> its own index already gives the same result
+        if (tilesets.length == 1)
+            dictionary = tilesets[0].getDictionary();
+        else
+        {
+            final List<Tile> tiles = new ArrayList<>();
+            dictionary = new TileDictionary(tiles);
+
+            // !! don't optimize tilesets (important to preserve tile indexes here) !!
+            for (DummyTileset tileset : tilesets)
+            {
+                for (int i = 0; i < tileset.getNumTile(); i++)
+                {
+                    final Tile tile = tileset.get(i);
+
+                    // need to be called first
+                    dictionary.add(tile, tiles.size());
+                    tiles.add(tile);
+                }
+            }
+        }
+    }
+
+    private boolean isValid()
+    {
+        for (int t = 0; t < tilesets.length; t++)
+            if (tilesets[t].getNumTile() != numTiles[t])
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Returns the MD5 of the merged tiles (data, palette and priority of each tile, in tile index order)
+     */
+    public synchronized byte[] getDigest()
+    {
+        if (digest == null)
+        {
+            final MessageDigest md = MapBlockCache.getDigest();
+            final ByteBuffer buffer = ByteBuffer.allocate((8 * 4) + 2);
+
+            for (int t = 0; t < tilesets.length; t++)
+            {
+                for (int i = 0; i < numTiles[t]; i++)
+                {
+                    final Tile tile = tilesets[t].get(i);
+
+                    buffer.clear();
+                    for (int d : tile.data)
+                        buffer.putInt(d);
+                    buffer.put((byte) tile.pal);
+                    buffer.put((byte) (tile.prio ? 1 : 0));
+                    md.update(buffer.array());
+                }
+            }
+
+            digest = md.digest();
+        }
+
+        return digest;
+    }
+
+    /**
+     * Returns the tile matching the given one (index and equality, see {@link TileDictionary#find(Tile, TileOptimization)}),
+     * -1 if not found
+     */
+    public int findTile(Tile tile, TileOptimization opt)
+    {
+        return dictionary.find(tile, opt);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hc;
+    }
+}
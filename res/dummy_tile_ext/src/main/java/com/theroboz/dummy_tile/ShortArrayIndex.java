@@ -0,0 +1,104 @@
+package com.theroboz.dummy_tile;
+
+import java.util.Arrays;
+
+/**
+ * Content index of <code>short</code> arrays: gives the index of the first registered array having the same content
+ * with a single hash lookup (open addressing, lookups don't allocate so a scratch array can be used as query).<br>
+ * Registered arrays are kept by reference so they must not be modified afterward.
+ */
+public class ShortArrayIndex
+{
+    private short[][] keys;
+    private int[] hashes;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public ShortArrayIndex()
+    {
+        allocate(64);
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new short[capacity][];
+        hashes = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int mix(int hash)
+    {
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the index of the first registered array having the same content, -1 if none
+     */
+    public int get(short[] data)
+    {
+        final int hash = Arrays.hashCode(data);
+        int slot = mix(hash) & mask;
+
+        while (keys[slot] != null)
+        {
+            if ((hashes[slot] == hash) && Arrays.equals(keys[slot], data))
+                return values[slot];
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Registers an array with the given index (does nothing if an array with the same content is already registered so
+     * the first index is kept)
+     */
+    public void add(short[] data, int index)
+    {
+        final int hash = Arrays.hashCode(data);
+        int slot = mix(hash) & mask;
+
+        while (keys[slot] != null)
+        {
+            if ((hashes[slot] == hash) && Arrays.equals(keys[slot], data))
+                return;
+
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = data;
+        hashes[slot] = hash;
+        values[slot] = index;
+
+        // keep load factor <= 0.5
+        if (++size > (keys.length >> 1))
+            rehash();
+    }
+
+    private void rehash()
+    {
+        final short[][] oldKeys = keys;
+        final int[] oldHashes = hashes;
+        final int[] oldValues = values;
+
+        allocate(oldKeys.length * 2);
+
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != null)
+            {
+                int slot = mix(oldHashes[i]) & mask;
+                while (keys[slot] != null)
+                    slot = (slot + 1) & mask;
+
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
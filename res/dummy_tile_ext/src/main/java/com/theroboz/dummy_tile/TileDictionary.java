@@ -0,0 +1,316 @@
+package com.theroboz.dummy_tile;
+
+import java.util.Arrays;
+import java.util.List;
+
+import sgdk.rescomp.type.Basics.TileEquality;
+import sgdk.rescomp.type.Basics.TileOptimization;
+import sgdk.rescomp.type.Tile;
+
+/**
+ * Tile index of a tileset: tiles are keyed by the packed rows (<code>Tile.data</code>) of their canonical orientation,
+ * the smallest of the 4 H/V flip variants, so a tile and all its flipped versions share the same entry.<br>
+ * Each entry keeps the indexes of its tiles (in insertion order) and the flip needed to reach the canonical
+ * orientation, so a lookup is a single probe (open addressing, no boxing, no allocation) followed by a confirming
+ * comparison with the matching tile.<br>
+ * Lookups don't modify anything so they can be done concurrently once all tiles are added. The tile fingerprint
+ * (canonical orientation and hash, see {@link #getFingerprint(int[])}) only depends on the tile data so it can also be
+ * computed ahead, on any thread.
+ */
+public class TileDictionary
+{
+    // flip variants (bit 0 = horizontal flip, bit 1 = vertical flip)
+    private static final TileEquality[] FLIP_EQUALITY = {TileEquality.EQUAL, TileEquality.HFLIP, TileEquality.VFLIP, TileEquality.HVFLIP};
+
+    private final List<Tile> tiles;
+
+    // canonical rows, 8 ints per slot
+    private int[] keys;
+    // first / last tile index of each slot (-1 = empty slot)
+    private int[] heads;
+    private int[] tails;
+    private int mask;
+    private int size;
+
+    // next tile index with same key (-1 = none) and flip from tile to canonical orientation, per tile index
+    private int[] next;
+    private byte[] flips;
+
+    /**
+     * @param tiles
+     *        tiles of the tileset (tile index --> tile), tiles are added to the dictionary with {@link #add(Tile, int)}
+     */
+    public TileDictionary(List<Tile> tiles)
+    {
+        this.tiles = tiles;
+
+        allocate(256);
+        next = new int[256];
+        flips = new byte[256];
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new int[capacity * 8];
+        heads = new int[capacity];
+        tails = new int[capacity];
+        Arrays.fill(heads, -1);
+        mask = capacity - 1;
+    }
+
+    // row r of the given flip variant of the tile
+    private static int getRow(int[] data, int variant, int r)
+    {
+        final int row = data[((variant & 2) != 0) ? 7 - r : r];
+
+        if ((variant & 1) == 0)
+            return row;
+
+        // reverse the 8 pixels (4 bits each) of the row
+        int result = row;
+        result = ((result >>> 4) & 0x0F0F0F0F) | ((result & 0x0F0F0F0F) << 4);
+        result = ((result >>> 8) & 0x00FF00FF) | ((result & 0x00FF00FF) << 8);
+        return (result >>> 16) | (result << 16);
+    }
+
+    private static int compareVariants(int[] data, int va, int vb)
+    {
+        for (int r = 0; r < 8; r++)
+        {
+            final int c = Integer.compareUnsigned(getRow(data, va, r), getRow(data, vb, r));
+            if (c != 0)
+                return c;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns the canonical variant of the tile data, plus 4 if another variant gives the same rows (symmetric tile)
+     */
+    private static int getCanonical(int[] data)
+    {
+        int result = 0;
+        boolean symmetric = false;
+
+        for (int v = 1; v < 4; v++)
+        {
+            final int c = compareVariants(data, v, result);
+
+            if (c < 0)
+            {
+                result = v;
+                symmetric = false;
+            }
+            else if (c == 0)
+                symmetric = true;
+        }
+
+        return symmetric ? result | 4 : result;
+    }
+
+    /**
+     * Returns the fingerprint of the given tile data (<code>Tile.data</code>) to use with
+     * {@link #add(Tile, int, long)} and {@link #find(Tile, TileOptimization, long)}: hash of the canonical rows in the
+     * high 32 bits, canonical variant in the low bits.
+     */
+    public static long getFingerprint(int[] data)
+    {
+        final int canonical = getCanonical(data);
+
+        return ((long) hash(data, canonical & 3) << 32) | canonical;
+    }
+
+    private static int hash(int[] data, int variant)
+    {
+        int h = 0;
+
+        for (int r = 0; r < 8; r++)
+            h = (h ^ getRow(data, variant, r)) * 0x9E3779B9;
+
+        return h ^ (h >>> 16);
+    }
+
+    private boolean keyEquals(int slot, int[] data, int variant)
+    {
+        final int off = slot * 8;
+
+        for (int r = 0; r < 8; r++)
+            if (keys[off + r] != getRow(data, variant, r))
+                return false;
+
+        return true;
+    }
+
+    // slot of the given canonical rows (empty slot if not present)
+    private int getSlot(int[] data, int variant, int hash)
+    {
+        int slot = hash & mask;
+
+        while ((heads[slot] != -1) && !keyEquals(slot, data, variant))
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    /**
+     * Adds a tile (<code>index</code> is its index in the tileset, tiles are added in index order)
+     */
+    public void add(Tile tile, int index)
+    {
+        add(tile, index, getFingerprint(tile.data));
+    }
+
+    /**
+     * Same as {@link #add(Tile, int)} with the tile fingerprint already computed
+     */
+    public void add(Tile tile, int index, long fingerprint)
+    {
+        final int canonical = (int) fingerprint & 3;
+        final int slot = getSlot(tile.data, canonical, (int) (fingerprint >>> 32));
+
+        if (index >= next.length)
+        {
+            next = Arrays.copyOf(next, Math.max(index + 1, next.length * 2));
+            flips = Arrays.copyOf(flips, next.length);
+        }
+        next[index] = -1;
+        flips[index] = (byte) canonical;
+
+        if (heads[slot] == -1)
+        {
+            for (int r = 0; r < 8; r++)
+                keys[(slot * 8) + r] = getRow(tile.data, canonical, r);
+            heads[slot] = index;
+            tails[slot] = index;
+
+            // keep load factor <= 0.5
+            if (++size > (heads.length >> 1))
+                rehash();
+        }
+        else
+        {
+            next[tails[slot]] = index;
+            tails[slot] = index;
+        }
+    }
+
+    private void rehash()
+    {
+        final int[] oldKeys = keys;
+        final int[] oldHeads = heads;
+        final int[] oldTails = tails;
+
+        allocate(oldHeads.length * 2);
+
+        for (int i = 0; i < oldHeads.length; i++)
+        {
+            if (oldHeads[i] != -1)
+            {
+                final int[] rows = Arrays.copyOfRange(oldKeys, i * 8, (i * 8) + 8);
+                final int slot = getSlot(rows, 0, hash(rows, 0));
+
+                System.arraycopy(rows, 0, keys, slot * 8, 8);
+                heads[slot] = oldHeads[i];
+                tails[slot] = oldTails[i];
+            }
+        }
+    }
+
+    // index of the last tile of the entry equal to the given tile (-1 if none)
+    private int getLastEqual(int head, Tile tile)
+    {
+        int result = -1;
+
+        for (int i = head; i != -1; i = next[i])
+            if (tiles.get(i).equals(tile))
+                result = i;
+
+        return result;
+    }
+
+    /**
+     * Returns the tile matching the given one for the given optimization (see {@link #getIndex(int)} and
+     * {@link #getEquality(int)}), -1 if not found.<br>
+     * A perfect match is preferred (last added equal tile). With ALL optimization the first added tile being a flipped
+     * version of the given one is used otherwise (last added tile equal to it).
+     */
+    public int find(Tile tile, TileOptimization opt)
+    {
+        // no optimization allowed --> need to duplicate tile
+        if (opt == TileOptimization.NONE)
+            return -1;
+
+        return find(tile, opt, getFingerprint(tile.data));
+    }
+
+    /**
+     * Same as {@link #find(Tile, TileOptimization)} with the tile fingerprint already computed
+     */
+    public int find(Tile tile, TileOptimization opt, long fingerprint)
+    {
+        // no optimization allowed --> need to duplicate tile
+        if (opt == TileOptimization.NONE)
+            return -1;
+
+        final int canonical = (int) fingerprint & 7;
+        final int head = heads[getSlot(tile.data, canonical & 3, (int) (fingerprint >>> 32))];
+
+        // no tile with same rows in any orientation
+        if (head == -1)
+            return -1;
+
+        // perfect match (preferred choice if possible)
+        final int equal = getLastEqual(head, tile);
+        if (equal != -1)
+            return pack(equal, TileEquality.EQUAL);
+
+        // allow flip ?
+        if (opt == TileOptimization.ALL)
+        {
+            for (int i = head; i != -1; i = next[i])
+            {
+                final Tile t = tiles.get(i);
+
+                // flipped version ?
+                if (t.getFlipEquality(tile) != TileEquality.NONE)
+                {
+                    // index of the original tile
+                    final int index = getLastEqual(i, t);
+                    final int flip = (canonical & 3) ^ flips[index];
+
+                    // flip is unique unless tile is symmetric or only pixels are equal --> let the tile decide then
+                    if (((canonical & 4) != 0) || (flip == 0))
+                        return pack(index, tile.getEquality(tiles.get(index)));
+
+                    return pack(index, FLIP_EQUALITY[flip]);
+                }
+            }
+        }
+
+        // not found
+        return -1;
+    }
+
+    private static int pack(int index, TileEquality eq)
+    {
+        return (index << 3) | eq.ordinal();
+    }
+
+    /**
+     * Returns tile index of a {@link #find(Tile, TileOptimization)} result
+     */
+    public static int getIndex(int match)
+    {
+        return (match == -1) ? -1 : match >>> 3;
+    }
+
+    /**
+     * Returns equality (of the searched tile relatively to the found one) of a {@link #find(Tile, TileOptimization)}
+     * result
+     */
+    public static TileEquality getEquality(int match)
+    {
+        return (match == -1) ? TileEquality.NONE : TileEquality.values()[match & 7];
+    }
+}
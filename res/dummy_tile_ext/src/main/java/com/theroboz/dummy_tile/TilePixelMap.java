@@ -0,0 +1,134 @@
+package com.theroboz.dummy_tile;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Map from 8x8 tile pixels (8bpp) to an <code>int</code> value, used to memoize per tile results.<br>
+ * The 64 pixels are read in place from the image as 8 longs (no tile object, no copy) and compared as such.
+ * {@link #get(byte[], int, int, int)} keeps the key of the last looked up tile so {@link #put(int)} can store its value
+ * without reading pixels again.<br>
+ * Values must be positive or zero: a negative value marks an empty slot.
+ */
+public class TilePixelMap
+{
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // 8 longs per slot
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    // last looked up tile
+    private final long[] key;
+    private int keyHash;
+
+    public TilePixelMap()
+    {
+        allocate(256);
+        key = new long[8];
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity * 8];
+        values = new int[capacity];
+        Arrays.fill(values, -1);
+        mask = capacity - 1;
+    }
+
+    private static int hash(long[] k, int off)
+    {
+        long h = 0;
+
+        for (int i = 0; i < 8; i++)
+        {
+            h = (h ^ k[off + i]) * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 29;
+        }
+
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private boolean keyEquals(int slot)
+    {
+        final int off = slot * 8;
+
+        for (int i = 0; i < 8; i++)
+            if (keys[off + i] != key[i])
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Returns the value of the 8x8 tile at pixel position [x,y] of the image, -1 if not present
+     *
+     * @param stride
+     *        width of the image in pixel
+     */
+    public int get(byte[] image8bpp, int stride, int x, int y)
+    {
+        int off = (y * stride) + x;
+        for (int i = 0; i < 8; i++, off += stride)
+            key[i] = (long) LONG_VIEW.get(image8bpp, off);
+
+        keyHash = hash(key, 0);
+
+        int slot = keyHash & mask;
+        while (values[slot] >= 0)
+        {
+            if (keyEquals(slot))
+                return values[slot];
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Stores the value (should be &gt;= 0) of the last tile passed to {@link #get(byte[], int, int, int)}, which wasn't
+     * present
+     */
+    public void put(int value)
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("TilePixelMap value should be >= 0 (" + value + ")");
+
+        int slot = keyHash & mask;
+        while (values[slot] >= 0)
+            slot = (slot + 1) & mask;
+
+        System.arraycopy(key, 0, keys, slot * 8, 8);
+        values[slot] = value;
+
+        // keep load factor <= 0.5
+        if (++size > (values.length >> 1))
+            rehash();
+    }
+
+    private void rehash()
+    {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+
+        allocate(oldValues.length * 2);
+
+        for (int i = 0; i < oldValues.length; i++)
+        {
+            if (oldValues[i] >= 0)
+            {
+                int slot = hash(oldKeys, i * 8) & mask;
+                while (values[slot] >= 0)
+                    slot = (slot + 1) & mask;
+
+                System.arraycopy(oldKeys, i * 8, keys, slot * 8, 8);
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
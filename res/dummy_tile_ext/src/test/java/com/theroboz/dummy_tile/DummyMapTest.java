@@ -0,0 +1,236 @@
+package com.theroboz.dummy_tile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import sgdk.rescomp.type.Basics.Compression;
+import sgdk.rescomp.type.Basics.TileEquality;
+import sgdk.rescomp.type.Basics.TileOptimization;
+import sgdk.rescomp.type.Basics.TileOrdering;
+import sgdk.rescomp.type.MapBlock;
+import sgdk.rescomp.type.Metatile;
+import sgdk.rescomp.type.Tile;
+
+/**
+ * Checks map construction against the original one (per cell tile lookup and linear search of metatiles, blocks and
+ * block rows, kept below as reference), and maps built with block rows resolved on worker threads against the
+ * sequential build.
+ */
+public class DummyMapTest
+{
+    /**
+     * Original DummyMap construction (metatiles, blocks and block rows first-come indexes)
+     */
+    static class ReferenceMap
+    {
+        final List<Metatile> metatiles = new ArrayList<>();
+        final List<MapBlock> mapBlocks = new ArrayList<>();
+        final List<short[]> mapBlockIndexes = new ArrayList<>();
+        final short[] mapBlockRowOffsets;
+
+        ReferenceMap(byte[] image8bpp, int wt, int ht, int mapBase, int metatileSize, List<DummyTileset> tilesets)
+        {
+            final boolean mapBasePrio = (mapBase & Tile.TILE_PRIORITY_MASK) != 0;
+            final int mapBasePal = (mapBase & Tile.TILE_PALETTE_MASK) >> Tile.TILE_PALETTE_SFT;
+            final int mapBaseTileInd = mapBase & Tile.TILE_INDEX_MASK;
+            final boolean hasBaseTileIndex = mapBaseTileInd != 0;
+            final int wb = (wt + 15) / 16;
+            final int hb = (ht + 15) / 16;
+
+            // global tileset (tiles of all tilesets, not optimized)
+            final TileDictionaryTest.ReferenceIndex tileset = new TileDictionaryTest.ReferenceIndex();
+            for (DummyTileset ts : tilesets)
+                for (int t = 0; t < ts.getNumTile(); t++)
+                    tileset.add(ts.get(t));
+
+            mapBlockRowOffsets = new short[hb];
+            Arrays.fill(mapBlockRowOffsets, (short) -1);
+
+            for (int j = 0; j < hb; j++)
+            {
+                int mbrii = 0;
+                final short[] mbRowIndexes = new short[wb];
+
+                for (int i = 0; i < wb; i++)
+                {
+                    final MapBlock mb = new MapBlock();
+                    int mbi = 0;
+
+                    for (int bj = 0; bj < 8; bj++)
+                    {
+                        for (int bi = 0; bi < 8; bi++)
+                        {
+                            final Metatile mt = new Metatile();
+                            int mtsi = 0;
+
+                            for (int mj = 0; mj < metatileSize; mj++)
+                            {
+                                for (int mi = 0; mi < metatileSize; mi++)
+                                {
+                                    final int ti = ((i * 16) + (bi * 2) + (mi * 1));
+                                    final int tj = ((j * 16) + (bj * 2) + (mj * 1));
+                                    final Tile tile;
+                                    final TileEquality eq;
+                                    int index;
+
+                                    if ((ti >= wt) || (tj >= ht))
+                                    {
+                                        tile = new Tile(new byte[64], 8, 0, false, 0);
+                                        eq = TileEquality.NONE;
+                                        index = 0;
+                                    }
+                                    else
+                                    {
+                                        tile = Tile.getTile(image8bpp, wt * 8, ht * 8, ti * 8, tj * 8, 8);
+
+                                        if (hasBaseTileIndex && tile.isPlain())
+                                        {
+                                            index = tile.getPlainValue();
+                                            eq = TileEquality.NONE;
+                                        }
+                                        else
+                                        {
+                                            index = tileset.getTileIndex(tile, TileOptimization.ALL);
+                                            eq = tile.getEquality(tileset.tiles.get(index));
+                                            index += mapBaseTileInd;
+                                        }
+                                    }
+
+                                    mt.set(mtsi++, (short) Tile.TILE_ATTR_FULL(mapBasePal + tile.pal, mapBasePrio | tile.prio, eq.vflip, eq.hflip, index));
+                                }
+                            }
+
+                            mt.updateInternals();
+
+                            int mtIndex = getMetaTileIndex(mt);
+                            if (mtIndex == -1)
+                            {
+                                mtIndex = metatiles.size();
+                                metatiles.add(mt);
+                            }
+
+                            mb.set(mbi++, (short) mtIndex);
+                        }
+                    }
+
+                    mb.computeHashCode();
+
+                    int mbIndex = mapBlocks.indexOf(mb);
+                    if (mbIndex == -1)
+                    {
+                        mbIndex = mapBlocks.size();
+                        mapBlocks.add(mb);
+                    }
+
+                    mbRowIndexes[mbrii++] = (short) mbIndex;
+                }
+
+                // duplicated map block row ?
+                for (int i = 0; i < mapBlockIndexes.size(); i++)
+                {
+                    if (Arrays.equals(mbRowIndexes, mapBlockIndexes.get(i)))
+                    {
+                        mapBlockRowOffsets[j] = (short) (i * wb);
+                        break;
+                    }
+                }
+
+                if (mapBlockRowOffsets[j] == -1)
+                {
+                    mapBlockRowOffsets[j] = (short) (mapBlockIndexes.size() * wb);
+                    mapBlockIndexes.add(mbRowIndexes);
+                }
+            }
+        }
+
+        int getMetaTileIndex(Metatile metatile)
+        {
+            for (int ind = 0; ind < metatiles.size(); ind++)
+                if (metatiles.get(ind).equals(metatile))
+                    return ind;
+
+            return -1;
+        }
+    }
+
+    private static DummyMap build(byte[] image, int wt, int ht, int mapBase, int metatileSize, List<DummyTileset> tilesets, ExecutorService executor)
+    {
+        return new DummyMap("test_map", image, wt * 8, ht * 8, mapBase, metatileSize, new ArrayList<>(tilesets), Compression.NONE, false, null, executor);
+    }
+
+    @Test
+    public void buildMatchesReference()
+    {
+        final Random random = new Random(1234);
+
+        for (int t = 0; t < 16; t++)
+        {
+            // partial blocks on right and bottom edges
+            final int wt = 4 + random.nextInt(70);
+            final int ht = 4 + random.nextInt(70);
+            final int metatileSize = 1 + (t & 1);
+            // palette / priority only, then with base tile index (plain tiles use system tiles)
+            final int mapBase = ((t & 2) == 0) ? (random.nextInt(4) << 13) | (random.nextBoolean() ? 0x8000 : 0) : 0x2000 + 1 + random.nextInt(64);
+            final byte[] image = MapBlockCacheTest.createMap(random, wt, ht);
+            final List<DummyTileset> tilesets = new ArrayList<>();
+            // first tileset covers the top of the map only, second one the whole map (duplicates first tileset tiles)
+            final int topHt = 1 + random.nextInt(ht);
+            tilesets.add(new DummyTileset("test_tileset0", image, wt * 8, ht * 8, 0, 0, wt, topHt, TileOptimization.ALL, Compression.NONE, false, true,
+                    TileOrdering.ROW));
+            tilesets.addAll(MapBlockCacheTest.getTilesets(image, wt, ht, ((t & 4) == 0) ? TileOrdering.ROW : TileOrdering.COLUMN));
+            final String message = "map " + t + " (" + wt + " x " + ht + " tiles, metatile size " + metatileSize + ", base " + Integer.toHexString(mapBase) + ")";
+
+            final ReferenceMap expected = new ReferenceMap(image, wt, ht, mapBase, metatileSize, tilesets);
+            final DummyMap actual = build(image, wt, ht, mapBase, metatileSize, tilesets, null);
+
+            assertEquals(expected.metatiles.size(), actual.metatiles.size(), message + " - metatiles");
+            for (int i = 0; i < expected.metatiles.size(); i++)
+                assertArrayEquals(expected.metatiles.get(i).data, actual.metatiles.get(i).data, message + " - metatile " + i);
+            assertEquals(expected.mapBlocks.size(), actual.mapBlocks.size(), message + " - map blocks");
+            for (int i = 0; i < expected.mapBlocks.size(); i++)
+                assertArrayEquals(expected.mapBlocks.get(i).data, actual.mapBlocks.get(i).data, message + " - map block " + i);
+            assertEquals(expected.mapBlockIndexes.size(), actual.mapBlockIndexes.size(), message + " - map block rows");
+            for (int i = 0; i < expected.mapBlockIndexes.size(); i++)
+                assertArrayEquals(expected.mapBlockIndexes.get(i), actual.mapBlockIndexes.get(i), message + " - map block row " + i);
+            assertArrayEquals(expected.mapBlockRowOffsets, actual.mapBlockRowOffsets, message + " - map block row offsets");
+        }
+    }
+
+    @Test
+    public void parallelMatchesSequential()
+    {
+        final Random random = new Random(4321);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try
+        {
+            for (int t = 0; t < 12; t++)
+            {
+                // partial blocks on right and bottom edges, at least 2 block rows
+                final int wt = 8 + random.nextInt(80);
+                final int ht = 20 + random.nextInt(80);
+                final int metatileSize = 1 + (t & 1);
+                final int mapBase = (t % 3 == 0) ? 0 : 0x2000 + random.nextInt(64);
+                final byte[] image = MapBlockCacheTest.createMap(random, wt, ht);
+                final List<DummyTileset> tilesets = MapBlockCacheTest.getTilesets(image, wt, ht, TileOrdering.ROW);
+
+                MapBlockCacheTest.assertSameMap(build(image, wt, ht, mapBase, metatileSize, tilesets, null),
+                        build(image, wt, ht, mapBase, metatileSize, tilesets, executor),
+                        "map " + t + " (" + wt + " x " + ht + " tiles, metatile size " + metatileSize + ")");
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.theroboz.dummy_tile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import sgdk.rescomp.type.Basics.Compression;
+import sgdk.rescomp.type.Basics.TileOptimization;
+import sgdk.rescomp.type.Basics.TileOrdering;
+
+/**
+ * Checks tilesets extracted on worker threads against the sequential extraction.
+ */
+public class DummyTilesetTest
+{
+    @Test
+    public void parallelMatchesSequential()
+    {
+        final Random random = new Random(8642);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try
+        {
+            for (int t = 0; t < 6; t++)
+            {
+                // more cells than an extraction chunk (1024) so tiles are extracted by several jobs
+                final int wt = 48 + random.nextInt(40);
+                final int ht = 40 + random.nextInt(40);
+                final byte[] image = MapBlockCacheTest.createMap(random, wt, ht);
+                // tileset region (may not start on first tile)
+                final int sx = random.nextInt(4);
+                final int sy = random.nextInt(4);
+                final int w = wt - (sx + random.nextInt(4));
+                final int h = ht - (sy + random.nextInt(4));
+
+                for (TileOrdering order : new TileOrdering[] {TileOrdering.ROW, TileOrdering.COLUMN})
+                {
+                    for (TileOptimization opt : new TileOptimization[] {TileOptimization.NONE, TileOptimization.DUPLICATE, TileOptimization.ALL})
+                    {
+                        final boolean addBlank = random.nextBoolean();
+                        final String message = "image " + t + " (" + w + " x " + h + " tiles), " + order + ", " + opt;
+                        final DummyTileset expected = new DummyTileset("test_tileset", image, wt * 8, ht * 8, sx, sy, w, h, opt, Compression.NONE, addBlank,
+                                true, order, null);
+                        final DummyTileset actual = new DummyTileset("test_tileset", image, wt * 8, ht * 8, sx, sy, w, h, opt, Compression.NONE, addBlank,
+                                true, order, executor);
+
+                        assertEquals(expected.getNumTile(), actual.getNumTile(), message + " - tiles");
+                        for (int i = 0; i < expected.getNumTile(); i++)
+                            assertArrayEquals(expected.get(i).data, actual.get(i).data, message + " - tile " + i);
+                        assertArrayEquals(expected.bin.data, actual.bin.data, message + " - bin data");
+                    }
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
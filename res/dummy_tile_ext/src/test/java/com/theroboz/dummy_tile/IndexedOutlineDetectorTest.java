@@ -0,0 +1,191 @@
+package com.theroboz.dummy_tile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the run-length based rectangle detection against the original pixel walking detection (kept below as
+ * reference) on random images.
+ */
+public class IndexedOutlineDetectorTest
+{
+    private static final int TRANSPARENT = 0;
+
+    /**
+     * Original detection: borders are walked pixel by pixel, visited border pixels are kept in a boolean matrix
+     */
+    static class ReferenceDetector
+    {
+        static List<IndexedOutlineDetector.Rect> detect(byte[] pixels, int w, int h, int transparent)
+        {
+            boolean[][] visited = new boolean[h][w];
+            List<IndexedOutlineDetector.Rect> result = new ArrayList<>();
+
+            for (int y = 0; y < h - 8; y++)
+            {
+                for (int x = 0; x < w;)
+                {
+                    if (visited[y][x])
+                    {
+                        x++;
+                        continue;
+                    }
+                    int idx = pixels[y * w + x] & 0xFF;
+                    if (idx == transparent || idx == 0)
+                    {
+                        x++;
+                        continue;
+                    }
+
+                    IndexedOutlineDetector.Rect r = tryFindRectangle(pixels, w, h, x, y, (byte) idx, visited);
+                    if (r != null)
+                    {
+                        result.add(r);
+                        x = r.x + r.width;
+                    }
+                    else
+                        x++;
+                }
+            }
+
+            return result;
+        }
+
+        static IndexedOutlineDetector.Rect tryFindRectangle(byte[] pixels, int imgW, int imgH, int startX, int startY, byte color, boolean[][] visited)
+        {
+            int rightX = startX;
+            while (rightX < imgW - 1 && pixels[startY * imgW + rightX + 1] == color) rightX++;
+
+            int minSize = 16;
+            if (rightX - startX + 1 < minSize) return null;
+
+            int bottomY = -1;
+            for (int y = startY + minSize; y < imgH; y++)
+            {
+                if (isFullHorizontal(pixels, imgW, startX, rightX, y, color))
+                {
+                    bottomY = y;
+                    break;
+                }
+            }
+            if (bottomY == -1) return null;
+
+            if (!isFullVertical(pixels, imgW, startX, startY, bottomY, color)) return null;
+            if (!isFullVertical(pixels, imgW, rightX, startY, bottomY, color)) return null;
+
+            for (int x = startX; x <= rightX; x++)
+            {
+                visited[startY][x] = true;
+                visited[bottomY][x] = true;
+            }
+            for (int y = startY + 1; y < bottomY; y++)
+            {
+                visited[y][startX] = true;
+                visited[y][rightX] = true;
+            }
+
+            return new IndexedOutlineDetector.Rect(startX, startY, rightX - startX + 1, bottomY - startY + 1, color & 0xFF);
+        }
+
+        static boolean isFullHorizontal(byte[] p, int w, int x1, int x2, int y, byte c)
+        {
+            for (int x = x1; x <= x2; x++)
+                if (p[y * w + x] != c) return false;
+            return true;
+        }
+
+        static boolean isFullVertical(byte[] p, int w, int x, int y1, int y2, byte c)
+        {
+            for (int y = y1; y <= y2; y++)
+                if (p[y * w + x] != c) return false;
+            return true;
+        }
+    }
+
+    /**
+     * Random image of rectangle borders (some overlapping or touching, some broken) over sparse noise
+     */
+    static byte[] createImage(Random random, int w, int h)
+    {
+        final byte[] pixels = new byte[w * h];
+
+        for (int i = 0; i < pixels.length; i++)
+            if (random.nextInt(40) == 0)
+                pixels[i] = (byte) (1 + random.nextInt(3));
+
+        final int num = 1 + ((w * h) / 2000);
+        for (int n = 0; n < num; n++)
+        {
+            final int rw = 8 + random.nextInt(56);
+            final int rh = 8 + random.nextInt(56);
+            final int rx = random.nextInt(Math.max(1, w - 8));
+            final int ry = random.nextInt(Math.max(1, h - 8));
+            final byte color = (byte) (1 + random.nextInt(3));
+            final boolean broken = random.nextInt(4) == 0;
+
+            for (int y = ry; y < Math.min(h, ry + rh); y++)
+                for (int x = rx; x < Math.min(w, rx + rw); x++)
+                    if ((x == rx) || (y == ry) || (x == (rx + rw - 1)) || (y == (ry + rh - 1)))
+                        pixels[(y * w) + x] = color;
+
+            // remove one border pixel
+            if (broken)
+                pixels[(Math.min(h - 1, ry + random.nextInt(rh)) * w) + rx] = 0;
+        }
+
+        return pixels;
+    }
+
+    private static void assertSameRects(List<IndexedOutlineDetector.Rect> expected, IndexedOutlineDetector.Rect[] actual, String message)
+    {
+        assertEquals(expected.size(), actual.length, message + " - number of rectangles");
+
+        for (int i = 0; i < actual.length; i++)
+            assertEquals(expected.get(i).toString(), actual[i].toString(), message + " - rectangle " + i);
+    }
+
+    @Test
+    public void detectMatchesReference()
+    {
+        final Random random = new Random(1234);
+
+        for (int t = 0; t < 300; t++)
+        {
+            final int w = 16 + random.nextInt(300);
+            final int h = 16 + random.nextInt(300);
+            final byte[] pixels = createImage(random, w, h);
+
+            assertSameRects(ReferenceDetector.detect(pixels, w, h, TRANSPARENT), IndexedOutlineDetector.detect(pixels, w, h, TRANSPARENT),
+                    "image " + t + " (" + w + " x " + h + ")");
+        }
+    }
+
+    @Test
+    public void detectWideImageMatchesReference()
+    {
+        final Random random = new Random(5678);
+        // too wide for char run lengths
+        final int w = Character.MAX_VALUE + 100;
+        final int h = 64;
+        final byte[] pixels = createImage(random, w, h);
+
+        // rectangle as wide as the image
+        for (int x = 0; x < w; x++)
+        {
+            pixels[(4 * w) + x] = 2;
+            pixels[(40 * w) + x] = 2;
+        }
+        for (int y = 4; y <= 40; y++)
+        {
+            pixels[y * w] = 2;
+            pixels[(y * w) + w - 1] = 2;
+        }
+
+        assertSameRects(ReferenceDetector.detect(pixels, w, h, TRANSPARENT), IndexedOutlineDetector.detect(pixels, w, h, TRANSPARENT), "wide image");
+    }
+}
@@ -0,0 +1,260 @@
+package com.theroboz.dummy_tile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import sgdk.rescomp.type.Basics.Compression;
+import sgdk.rescomp.type.Basics.TileOptimization;
+import sgdk.rescomp.type.Basics.TileOrdering;
+
+/**
+ * Checks maps built from the persistent block cache against full builds: unchanged and partially changed maps, changed
+ * map base or tileset, and corrupted cache file.
+ */
+public class MapBlockCacheTest
+{
+    @TempDir
+    Path dir;
+
+    /**
+     * Random 8bpp map image (<code>wt</code> x <code>ht</code> tiles) made of a small pool of tiles (with random palette,
+     * priority and flips) so metatiles and blocks are often duplicated. Some blocks repeat a few block patterns.
+     */
+    static byte[] createMap(Random random, int wt, int ht)
+    {
+        // tile pool: blank tile, plain tile then random tiles using 3 colors
+        final int numTile = 6 + random.nextInt(20);
+        final byte[][] pool = new byte[numTile][64];
+        for (int t = 1; t < numTile; t++)
+        {
+            final int attr = (random.nextInt(4) << 4) | (random.nextBoolean() ? 0x80 : 0);
+            final int plain = 1 + random.nextInt(15);
+
+            for (int i = 0; i < 64; i++)
+            {
+                final int color = (t == 1) ? plain : random.nextInt(3);
+                pool[t][i] = (byte) ((color != 0) ? (attr | color) : 0);
+            }
+        }
+
+        // block patterns (tile index and flips of each block cell)
+        final int[][] patterns = new int[4][16 * 16];
+        for (int[] pattern : patterns)
+            for (int c = 0; c < pattern.length; c++)
+                pattern[c] = random.nextInt(numTile * 4);
+
+        final int w = wt * 8;
+        final byte[] image = new byte[w * ht * 8];
+
+        for (int by = 0; by < ht; by += 16)
+        {
+            for (int bx = 0; bx < wt; bx += 16)
+            {
+                final int[] pattern = random.nextBoolean() ? patterns[random.nextInt(patterns.length)] : null;
+
+                for (int ty = by; ty < Math.min(ht, by + 16); ty++)
+                {
+                    for (int tx = bx; tx < Math.min(wt, bx + 16); tx++)
+                    {
+                        final int cell = (pattern != null) ? pattern[((ty - by) * 16) + (tx - bx)] : random.nextInt(numTile * 4);
+                        final byte[] tile = pool[cell >> 2];
+                        final boolean hflip = (cell & 1) != 0;
+                        final boolean vflip = (cell & 2) != 0;
+
+                        for (int y = 0; y < 8; y++)
+                            for (int x = 0; x < 8; x++)
+                                image[((((ty * 8) + y) * w) + (tx * 8)) + x] = tile[((vflip ? 7 - y : y) * 8) + (hflip ? 7 - x : x)];
+                    }
+                }
+            }
+        }
+
+        return image;
+    }
+
+    static List<DummyTileset> getTilesets(byte[] image, int wt, int ht, TileOrdering order)
+    {
+        final List<DummyTileset> result = new ArrayList<>();
+        result.add(new DummyTileset("test_tileset", image, wt * 8, ht * 8, 0, 0, wt, ht, TileOptimization.ALL, Compression.NONE, false, true, order));
+        return result;
+    }
+
+    static void assertSameMap(DummyMap expected, DummyMap actual, String message)
+    {
+        assertEquals(expected.metatiles.size(), actual.metatiles.size(), message + " - metatiles");
+        for (int i = 0; i < expected.metatiles.size(); i++)
+            assertArrayEquals(expected.metatiles.get(i).data, actual.metatiles.get(i).data, message + " - metatile " + i);
+        assertEquals(expected.mapBlocks.size(), actual.mapBlocks.size(), message + " - map blocks");
+        for (int i = 0; i < expected.mapBlocks.size(); i++)
+            assertArrayEquals(expected.mapBlocks.get(i).data, actual.mapBlocks.get(i).data, message + " - map block " + i);
+        assertEquals(expected.mapBlockIndexes.size(), actual.mapBlockIndexes.size(), message + " - map block rows");
+        for (int i = 0; i < expected.mapBlockIndexes.size(); i++)
+            assertArrayEquals(expected.mapBlockIndexes.get(i), actual.mapBlockIndexes.get(i), message + " - map block row " + i);
+        assertArrayEquals(expected.mapBlockRowOffsets, actual.mapBlockRowOffsets, message + " - map block row offsets");
+        assertArrayEquals(expected.metatilesBin.data, actual.metatilesBin.data, message + " - metatiles data");
+        assertArrayEquals(expected.mapBlocksBin.data, actual.mapBlocksBin.data, message + " - map blocks data");
+        assertArrayEquals(expected.mapBlockIndexesBin.data, actual.mapBlockIndexesBin.data, message + " - map block indexes data");
+        assertArrayEquals(expected.mapBlockRowOffsetsBin.data, actual.mapBlockRowOffsetsBin.data, message + " - map block row offsets data");
+    }
+
+    private static DummyMap build(byte[] image, int wt, int ht, int mapBase, int metatileSize, List<DummyTileset> tilesets, File cacheDir)
+    {
+        return new DummyMap("test_map", image, wt * 8, ht * 8, mapBase, metatileSize, new ArrayList<>(tilesets), Compression.NONE, false, cacheDir, null);
+    }
+
+    // number of 16x16 tiles blocks whose pixels differ
+    private static int getNumChangedBlocks(byte[] a, byte[] b, int wt, int ht)
+    {
+        final int w = wt * 8;
+        int result = 0;
+
+        for (int by = 0; by < ht; by += 16)
+        {
+            for (int bx = 0; bx < wt; bx += 16)
+            {
+                boolean changed = false;
+
+                for (int y = by * 8; (y < Math.min(ht, by + 16) * 8) && !changed; y++)
+                    for (int x = bx * 8; (x < Math.min(wt, bx + 16) * 8) && !changed; x++)
+                        changed = a[(y * w) + x] != b[(y * w) + x];
+
+                if (changed)
+                    result++;
+            }
+        }
+
+        return result;
+    }
+
+    @Test
+    public void cachedBuildMatchesFullBuild()
+    {
+        final Random random = new Random(2468);
+
+        for (int t = 0; t < 12; t++)
+        {
+            // partial blocks on right and bottom edges
+            final int wt = 8 + random.nextInt(60);
+            final int ht = 8 + random.nextInt(60);
+            final int numBlock = ((wt + 15) / 16) * ((ht + 15) / 16);
+            final int metatileSize = 1 + (t & 1);
+            final int mapBase = (t % 3 == 0) ? 0 : 0x2000 + random.nextInt(64);
+            final byte[] image = createMap(random, wt, ht);
+            final List<DummyTileset> tilesets = getTilesets(image, wt, ht, TileOrdering.ROW);
+            final File cacheDir = dir.resolve("cache" + t).toFile();
+            final String message = "map " + t + " (" + wt + " x " + ht + " tiles, metatile size " + metatileSize + ")";
+
+            // first build fills the cache
+            int misses = MapBlockCache.getTotalMisses();
+            assertSameMap(build(image, wt, ht, mapBase, metatileSize, tilesets, null), build(image, wt, ht, mapBase, metatileSize, tilesets, cacheDir), message);
+            assertEquals(numBlock, MapBlockCache.getTotalMisses() - misses, message + " - first build misses");
+
+            // unchanged map --> all blocks from cache
+            int hits = MapBlockCache.getTotalHits();
+            misses = MapBlockCache.getTotalMisses();
+            assertSameMap(build(image, wt, ht, mapBase, metatileSize, tilesets, null), build(image, wt, ht, mapBase, metatileSize, tilesets, cacheDir), message + " unchanged");
+            assertEquals(numBlock, MapBlockCache.getTotalHits() - hits, message + " unchanged - hits");
+            assertEquals(0, MapBlockCache.getTotalMisses() - misses, message + " unchanged - misses");
+
+            // change a few tiles (copied from other map tiles so they are still in the tileset)
+            final byte[] changed = image.clone();
+            final int w = wt * 8;
+            for (int n = 0; n < 3; n++)
+            {
+                final int sx = random.nextInt(wt) * 8;
+                final int sy = random.nextInt(ht) * 8;
+                final int dx = random.nextInt(wt) * 8;
+                final int dy = random.nextInt(ht) * 8;
+
+                for (int y = 0; y < 8; y++)
+                    System.arraycopy(image, ((sy + y) * w) + sx, changed, ((dy + y) * w) + dx, 8);
+            }
+
+            final int numChanged = getNumChangedBlocks(image, changed, wt, ht);
+            hits = MapBlockCache.getTotalHits();
+            misses = MapBlockCache.getTotalMisses();
+            assertSameMap(build(changed, wt, ht, mapBase, metatileSize, tilesets, null), build(changed, wt, ht, mapBase, metatileSize, tilesets, cacheDir),
+                    message + " changed");
+            assertEquals(numBlock - numChanged, MapBlockCache.getTotalHits() - hits, message + " changed - hits");
+            assertEquals(numChanged, MapBlockCache.getTotalMisses() - misses, message + " changed - misses");
+        }
+    }
+
+    @Test
+    public void contextChangeForcesFullRebuild()
+    {
+        final Random random = new Random(1357);
+        final int wt = 50;
+        final int ht = 35;
+        final byte[] image = createMap(random, wt, ht);
+        final List<DummyTileset> tilesets = getTilesets(image, wt, ht, TileOrdering.ROW);
+        final File cacheDir = dir.resolve("cache").toFile();
+
+        build(image, wt, ht, 0, 2, tilesets, cacheDir);
+
+        // map base changed --> nothing from cache
+        int hits = MapBlockCache.getTotalHits();
+        assertSameMap(build(image, wt, ht, 0x4000, 2, tilesets, null), build(image, wt, ht, 0x4000, 2, tilesets, cacheDir), "map base changed");
+        assertEquals(0, MapBlockCache.getTotalHits() - hits, "map base changed - hits");
+
+        // tileset changed (same tiles, different order) --> nothing from cache
+        final List<DummyTileset> columnTilesets = getTilesets(image, wt, ht, TileOrdering.COLUMN);
+        hits = MapBlockCache.getTotalHits();
+        assertSameMap(build(image, wt, ht, 0x4000, 2, columnTilesets, null), build(image, wt, ht, 0x4000, 2, columnTilesets, cacheDir), "tileset changed");
+        assertEquals(0, MapBlockCache.getTotalHits() - hits, "tileset changed - hits");
+
+        // metatile size changed --> nothing from cache
+        hits = MapBlockCache.getTotalHits();
+        assertSameMap(build(image, wt, ht, 0x4000, 1, columnTilesets, null), build(image, wt, ht, 0x4000, 1, columnTilesets, cacheDir), "metatile size changed");
+        assertEquals(0, MapBlockCache.getTotalHits() - hits, "metatile size changed - hits");
+    }
+
+    @Test
+    public void corruptedCacheIsDropped() throws IOException
+    {
+        final Random random = new Random(97531);
+        final int wt = 40;
+        final int ht = 24;
+        final int numBlock = 3 * 2;
+        final byte[] image = createMap(random, wt, ht);
+        final List<DummyTileset> tilesets = getTilesets(image, wt, ht, TileOrdering.ROW);
+        final File cacheDir = dir.resolve("cache").toFile();
+        final File file = new File(cacheDir, "dummy_map_test_map.bin");
+        final DummyMap expected = build(image, wt, ht, 0, 2, tilesets, null);
+
+        build(image, wt, ht, 0, 2, tilesets, cacheDir);
+        assertTrue(file.exists(), "cache file written");
+
+        // change one attribute of a cached block
+        final byte[] data = Files.readAllBytes(file.toPath());
+        data[data.length - 20] ^= 0x01;
+        Files.write(file.toPath(), data);
+
+        int hits = MapBlockCache.getTotalHits();
+        assertSameMap(expected, build(image, wt, ht, 0, 2, tilesets, cacheDir), "corrupted cache");
+        assertEquals(0, MapBlockCache.getTotalHits() - hits, "corrupted cache - hits");
+
+        // cache written again and valid
+        hits = MapBlockCache.getTotalHits();
+        assertSameMap(expected, build(image, wt, ht, 0, 2, tilesets, cacheDir), "rebuilt cache");
+        assertEquals(numBlock, MapBlockCache.getTotalHits() - hits, "rebuilt cache - hits");
+
+        // no temporary file left
+        final String[] files = cacheDir.list();
+        assertEquals(1, files.length, "cache directory content");
+        assertFalse(files[0].endsWith(".tmp"), "temporary file left");
+    }
+}
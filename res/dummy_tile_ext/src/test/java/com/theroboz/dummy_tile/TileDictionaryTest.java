@@ -0,0 +1,185 @@
+package com.theroboz.dummy_tile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import sgdk.rescomp.type.Basics.TileEquality;
+import sgdk.rescomp.type.Basics.TileOptimization;
+import sgdk.rescomp.type.Tile;
+
+/**
+ * Checks {@link TileDictionary} lookups against the original tileset lookup (tile --> index map plus tiles by hash
+ * code, kept below as reference) on random tiles with many duplicated, flipped and symmetric ones.
+ */
+public class TileDictionaryTest
+{
+    /**
+     * Original lookup of DummyTileset (getTileIndex) and tile equality as computed by DummyMap
+     */
+    static class ReferenceIndex
+    {
+        final List<Tile> tiles = new ArrayList<>();
+        final Map<Tile, Integer> tileIndexesMap = new HashMap<>();
+        final Map<Integer, List<Tile>> tileByHashcodeMap = new HashMap<>();
+
+        void add(Tile tile)
+        {
+            tileIndexesMap.put(tile, Integer.valueOf(tiles.size()));
+            tileByHashcodeMap.computeIfAbsent(Integer.valueOf(tile.hashCode()), k -> new ArrayList<>()).add(tile);
+            tiles.add(tile);
+        }
+
+        int getTileIndex(Tile tile, TileOptimization opt)
+        {
+            if (opt == TileOptimization.NONE)
+                return -1;
+
+            final Integer key = tileIndexesMap.get(tile);
+            if (key != null)
+                return key.intValue();
+
+            if (opt == TileOptimization.ALL)
+            {
+                final List<Tile> hashTiles = tileByHashcodeMap.get(Integer.valueOf(tile.hashCode()));
+
+                if (hashTiles != null)
+                {
+                    for (Tile t : hashTiles)
+                        if (t.getFlipEquality(tile) != TileEquality.NONE)
+                            return tileIndexesMap.get(t).intValue();
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    // 8bpp image of 'num' random tiles (in a row) using few colors so duplicated / flipped / symmetric tiles are common
+    private static byte[] createTiles(Random random, int num)
+    {
+        final byte[] image = new byte[num * 64];
+        final int w = num * 8;
+
+        for (int t = 0; t < num; t++)
+        {
+            final int kind = random.nextInt(6);
+            // palette and priority bits
+            final int attr = (random.nextInt(4) == 0) ? ((random.nextInt(4) << 4) | (random.nextBoolean() ? 0x80 : 0)) : 0;
+            final int[] px = new int[64];
+
+            for (int i = 0; i < 64; i++)
+                px[i] = random.nextInt(3);
+
+            // symmetric tile (horizontally, vertically or both)
+            if (kind == 0)
+                for (int y = 0; y < 8; y++)
+                    for (int x = 4; x < 8; x++)
+                        px[(y * 8) + x] = px[(y * 8) + 7 - x];
+            if (kind == 1)
+                for (int y = 4; y < 8; y++)
+                    for (int x = 0; x < 8; x++)
+                        px[(y * 8) + x] = px[((7 - y) * 8) + x];
+            // plain tile
+            if (kind == 2)
+                for (int i = 0; i < 64; i++)
+                    px[i] = px[0];
+
+            for (int y = 0; y < 8; y++)
+                for (int x = 0; x < 8; x++)
+                    image[(y * w) + (t * 8) + x] = (byte) (((px[(y * 8) + x] != 0) ? attr : 0) | px[(y * 8) + x]);
+        }
+
+        return image;
+    }
+
+    private static Tile[] getTiles(byte[] image, int num)
+    {
+        final Tile[] result = new Tile[num];
+
+        for (int t = 0; t < num; t++)
+            result[t] = Tile.getTile(image, num * 8, 8, t * 8, 0, 8);
+
+        return result;
+    }
+
+    // flipped copy of the given tile image region
+    private static Tile flip(byte[] image, int num, int t, boolean h, boolean v)
+    {
+        final byte[] dst = new byte[64];
+
+        for (int y = 0; y < 8; y++)
+            for (int x = 0; x < 8; x++)
+                dst[(y * 8) + x] = image[(((v ? 7 - y : y)) * num * 8) + (t * 8) + (h ? 7 - x : x)];
+
+        return Tile.getTile(dst, 8, 8, 0, 0, 8);
+    }
+
+    @Test
+    public void findMatchesReference()
+    {
+        final Random random = new Random(2024);
+
+        for (int round = 0; round < 20; round++)
+        {
+            // tileset tiles (with duplicates, as added by non optimized tilesets)
+            final int num = 50 + random.nextInt(400);
+            final byte[] image = createTiles(random, num);
+            final Tile[] tiles = getTiles(image, num);
+            final List<Tile> dictionaryTiles = new ArrayList<>();
+            final TileDictionary dictionary = new TileDictionary(dictionaryTiles);
+            final ReferenceIndex reference = new ReferenceIndex();
+
+            for (int i = 0; i < num; i++)
+            {
+                // some tiles are added several times, some as flipped versions of a previous one
+                final Tile tile;
+                if ((i > 0) && (random.nextInt(5) == 0))
+                    tile = tiles[random.nextInt(i)];
+                else if ((i > 0) && (random.nextInt(5) == 0))
+                    tile = flip(image, num, random.nextInt(i), random.nextBoolean(), random.nextBoolean());
+                else
+                    tile = tiles[i];
+
+                dictionary.add(tile, dictionaryTiles.size());
+                dictionaryTiles.add(tile);
+                reference.add(tile);
+            }
+
+            // searched tiles: tileset tiles, their flipped versions and unknown tiles
+            final List<Tile> searched = new ArrayList<>();
+            for (int i = 0; i < num; i++)
+            {
+                searched.add(tiles[i]);
+                searched.add(flip(image, num, i, true, false));
+                searched.add(flip(image, num, i, false, true));
+                searched.add(flip(image, num, i, true, true));
+            }
+            for (Tile tile : getTiles(createTiles(random, 100), 100))
+                searched.add(tile);
+
+            for (TileOptimization opt : TileOptimization.values())
+            {
+                for (int s = 0; s < searched.size(); s++)
+                {
+                    final Tile tile = searched.get(s);
+                    final int expectedIndex = reference.getTileIndex(tile, opt);
+                    final TileEquality expectedEquality = (expectedIndex != -1) ? tile.getEquality(reference.tiles.get(expectedIndex)) : TileEquality.NONE;
+                    final int match = dictionary.find(tile, opt);
+                    final String message = "round " + round + ", " + opt + ", tile " + s;
+
+                    assertEquals(expectedIndex, TileDictionary.getIndex(match), message + " index");
+                    assertEquals(expectedEquality, TileDictionary.getEquality(match), message + " equality");
+                    // precomputed fingerprint gives the same result
+                    assertEquals(match, dictionary.find(tile, opt, TileDictionary.getFingerprint(tile.data)), message + " with fingerprint");
+                }
+            }
+        }
+    }
+}
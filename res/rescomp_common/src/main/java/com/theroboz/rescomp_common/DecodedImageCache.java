@@ -0,0 +1,242 @@
+package com.theroboz.rescomp_common;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import sgdk.tool.ImageUtil;
+import sgdk.tool.ImageUtil.BasicImageInfo;
+
+/**
+ * Build wide cache of decoded images so an image used by several resources (or several times by the same resource) is
+ * decoded only once.<br>
+ * Images are keyed by canonical path, modification time and size (a modified file is decoded again). Each entry lazily
+ * holds the decoded forms asked for: 8bpp pixels, basic infos, RGBA palette and raw indexed pixels.<br>
+ * Entries are evicted in LRU order when the decoded data exceed the memory limit.<br>
+ * Decoded 8bpp pixels and palettes are also kept on disk by the {@link DecodedImageStore} (if any) for next builds.<br>
+ * All extensions share the same build wide instance (see {@link #getShared()}), with a single memory limit and store,
+ * so an image used by resources of different types is decoded only once.<br>
+ * Returned arrays are shared: callers must never modify them.
+ */
+public class DecodedImageCache
+{
+    public static class IndexedImage
+    {
+        public final byte[] pixels;
+        public final int width;
+        public final int height;
+        // transparent color index (-1 if none)
+        public final int transparentIndex;
+
+        public IndexedImage(byte[] pixels, int width, int height, int transparentIndex)
+        {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.transparentIndex = transparentIndex;
+        }
+    }
+
+    public class Entry
+    {
+        public final String path;
+        final String key;
+
+        private boolean loaded8bpp;
+        private byte[] image8bpp;
+        private BasicImageInfo info;
+        private int[] palette;
+        private IndexedImage indexed;
+        long size;
+
+        Entry(String path, String key)
+        {
+            this.path = path;
+            this.key = key;
+        }
+
+        /**
+         * Returns 8bpp pixels (see <code>ImageUtil.getImageAs8bpp(file, true, true)</code>), <code>null</code> if an
+         * RGB image doesn't contain palette data
+         */
+        public synchronized byte[] get8bpp()
+        {
+            if (!loaded8bpp)
+            {
+                // decoded by a previous build ?
+                image8bpp = (store != null) ? store.get8bpp(path) : null;
+                if (image8bpp == null)
+                {
+                    image8bpp = ImageUtil.getImageAs8bpp(path, true, true);
+                    if ((store != null) && (image8bpp != null))
+                        store.put8bpp(path, image8bpp);
+                }
+                loaded8bpp = true;
+                if (image8bpp != null)
+                    charge(this, image8bpp.length);
+            }
+
+            return image8bpp;
+        }
+
+        public synchronized BasicImageInfo getBasicInfo()
+        {
+            if (info == null)
+                info = ImageUtil.getBasicInfo(path);
+
+            return info;
+        }
+
+        /**
+         * Returns the image palette in RGBA8888 format
+         */
+        public synchronized int[] getPalette()
+        {
+            if (palette == null)
+            {
+                // decoded by a previous build ?
+                palette = (store != null) ? store.getPalette(path) : null;
+                if (palette == null)
+                {
+                    palette = (getBasicInfo().bpp > 8) ? ImageUtil.getRGBA8888PaletteFromTiles(path) : ImageUtil.getRGBA8888PaletteFromIndColImage(path);
+                    if ((store != null) && (palette != null))
+                        store.putPalette(path, palette);
+                }
+                if (palette != null)
+                    charge(this, palette.length * 4L);
+            }
+
+            return palette;
+        }
+
+        /**
+         * Returns raw indexed pixels of the image (as read by ImageIO)
+         *
+         * @throws IllegalArgumentException
+         *         if the image isn't an indexed color image
+         */
+        public synchronized IndexedImage getIndexed() throws IOException, IllegalArgumentException
+        {
+            if (indexed == null)
+            {
+                final BufferedImage img = ImageIO.read(new File(path));
+
+                if (img == null)
+                    throw new IOException("Can't read image '" + path + "'");
+                if (!(img.getColorModel() instanceof IndexColorModel))
+                    throw new IllegalArgumentException("Must be indexed-color PNG");
+
+                final IndexColorModel cm = (IndexColorModel) img.getColorModel();
+                final byte[] pixels = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+
+                indexed = new IndexedImage(pixels, img.getWidth(), img.getHeight(), cm.getTransparentPixel());
+                charge(this, pixels.length);
+            }
+
+            return indexed;
+        }
+    }
+
+    // memory limit (in MB) of the shared decoded images cache (default is 256 MB)
+    public static final int SHARED_LIMIT = Math.max(0, Settings.getInt("rescomp_ext.image_cache", 256));
+    // persistent store of decoded images for the shared cache (enabled by default)
+    public static final boolean SHARED_STORE = Settings.getBoolean("rescomp_ext.image_store", true);
+    // directory of the shared cache store (default is '.rescomp_cache' in the resource directory)
+    public static final String SHARED_STORE_DIR = System.getProperty("rescomp_ext.cache.dir");
+
+    private static DecodedImageCache shared = null;
+
+    final long maxSize;
+    // persistent store (null if disabled)
+    final DecodedImageStore store;
+    // access ordered so first entry is the least recently used one
+    final LinkedHashMap<String, Entry> entries;
+    long size;
+
+    /**
+     * @param maxSize
+     *        memory limit of decoded data in bytes
+     * @param store
+     *        persistent store of decoded images, <code>null</code> to disable it
+     */
+    public DecodedImageCache(long maxSize, DecodedImageStore store)
+    {
+        this.maxSize = maxSize;
+        this.store = store;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        size = 0;
+    }
+
+    /**
+     * Returns the build wide decoded images cache shared by all extensions
+     */
+    public static synchronized DecodedImageCache getShared()
+    {
+        if (shared == null)
+            shared = new DecodedImageCache(SHARED_LIMIT * 1024L * 1024L,
+                    SHARED_STORE ? DecodedImageStore.create(Settings.getCacheDir(SHARED_STORE_DIR), "SLICED_SPRITE / DUMMY_TILESET / DUMMY_MAP") : null);
+
+        return shared;
+    }
+
+    /**
+     * Returns the cache entry of the given image file
+     */
+    public Entry get(String file) throws IOException
+    {
+        return get(new File(file));
+    }
+
+    /**
+     * Returns the cache entry of the given image file
+     */
+    public Entry get(File file) throws IOException
+    {
+        final String path = file.getCanonicalPath();
+        final String key = path + "|" + file.lastModified() + "|" + file.length();
+
+        synchronized (this)
+        {
+            Entry entry = entries.get(key);
+
+            if (entry == null)
+            {
+                entry = new Entry(path, key);
+                entries.put(key, entry);
+            }
+
+            return entry;
+        }
+    }
+
+    // account decoded data size of an entry and evict least recently used entries if needed
+    synchronized void charge(Entry entry, long bytes)
+    {
+        // already evicted ? --> don't account it anymore
+        if (entries.get(entry.key) != entry)
+            return;
+
+        entry.size += bytes;
+        size += bytes;
+
+        final Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((size > maxSize) && it.hasNext())
+        {
+            final Entry e = it.next().getValue();
+
+            // keep the entry being used
+            if (e == entry)
+                continue;
+
+            size -= e.size;
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.theroboz.rescomp_common;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Persistent store of decoded images, second level of the {@link DecodedImageCache}: 8bpp pixels and palette of an image
+ * are written to the 'images' folder of the cache directory when decoded, and read back by next builds instead of
+ * decoding the image again (files are read at once and closed, never kept open or mapped, so they can be replaced at
+ * any time).<br>
+ * Stored data are keyed by the image path and validated against the image size and modification time, then against
+ * a SHA-256 of the image content if the modification time changed (so a checkout or a copy of an unchanged image
+ * doesn't invalidate it).<br>
+ * Files are written through a temporary file then moved in place so concurrent builds only see complete files, delete
+ * the folder to reset the store.<br>
+ * At the end of the build, stored data of images which don't exist anymore (and temporary files left by interrupted
+ * builds) are removed, then statistics are reported.
+ */
+public class DecodedImageStore
+{
+    private static final String DIR_NAME = "images";
+    private static final int MAGIC = 0x44494D53; // 'DIMS'
+    private static final int VERSION = 2;
+    private static final int HASH_SIZE = 32;
+    // max image path length (in bytes)
+    private static final int MAX_PATH = 0xFFFF;
+    // age (ms) of a temporary file before it's considered left by an interrupted build
+    private static final long TMP_EXPIRATION = 60L * 60L * 1000L;
+    private static final String KIND_8BPP = "8bpp";
+    private static final String KIND_PALETTE = "pal";
+
+    /**
+     * Returns a new store using the 'images' folder of the given cache directory
+     *
+     * @param name
+     *        resource types using the store (for messages)
+     */
+    public static DecodedImageStore create(File cacheDir, String name)
+    {
+        final DecodedImageStore result = new DecodedImageStore(new File(cacheDir, DIR_NAME), name);
+
+        // clean up and report statistics at the end of the build
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            result.prune();
+            result.report();
+        }, name + " image store"));
+
+        return result;
+    }
+
+    private static MessageDigest getDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // SHA-256 is always available on Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final File dir;
+    private final String name;
+    // image path|modification time|size --> content hash (computed once per build)
+    private final Map<String, byte[]> contentHashes;
+    private int hits;
+    private int misses;
+    private int pruned;
+
+    DecodedImageStore(File dir, String name)
+    {
+        this.dir = dir;
+        this.name = name;
+        contentHashes = new HashMap<>();
+        hits = 0;
+        misses = 0;
+        pruned = 0;
+    }
+
+    /**
+     * Returns the stored 8bpp pixels of the given image or <code>null</code> if not stored (or outdated)
+     */
+    public byte[] get8bpp(String path)
+    {
+        final ByteBuffer data = read(path, KIND_8BPP);
+
+        if (data == null)
+            return null;
+
+        final byte[] result = new byte[data.remaining()];
+        data.get(result);
+
+        return result;
+    }
+
+    /**
+     * Stores the 8bpp pixels of the given image
+     */
+    public void put8bpp(String path, byte[] image8bpp)
+    {
+        write(path, KIND_8BPP, ByteBuffer.wrap(image8bpp));
+    }
+
+    /**
+     * Returns the stored RGBA palette of the given image or <code>null</code> if not stored (or outdated)
+     */
+    public int[] getPalette(String path)
+    {
+        final ByteBuffer data = read(path, KIND_PALETTE);
+
+        if (data == null)
+            return null;
+
+        final int[] result = new int[data.remaining() / 4];
+        data.asIntBuffer().get(result);
+
+        return result;
+    }
+
+    /**
+     * Stores the RGBA palette of the given image
+     */
+    public void putPalette(String path, int[] palette)
+    {
+        final ByteBuffer data = ByteBuffer.allocate(palette.length * 4);
+        data.asIntBuffer().put(palette);
+
+        write(path, KIND_PALETTE, data);
+    }
+
+    // store file of the given image and data kind (named from the image path)
+    private File getFile(String path, String kind)
+    {
+        final byte[] hash = getDigest().digest(path.getBytes(StandardCharsets.UTF_8));
+
+        return new File(dir, HexFormat.of().formatHex(hash, 0, 16) + "." + kind);
+    }
+
+    private byte[] getContentHash(File image) throws IOException
+    {
+        final String key = image.getPath() + "|" + image.lastModified() + "|" + image.length();
+
+        synchronized (this)
+        {
+            final byte[] result = contentHashes.get(key);
+
+            if (result != null)
+                return result;
+        }
+
+        // hash outside the lock so other images can be checked meanwhile (the same image may be hashed twice by
+        // concurrent builds, both get the same result)
+        final MessageDigest md = getDigest();
+        final byte[] buffer = new byte[64 * 1024];
+
+        try (InputStream in = Files.newInputStream(image.toPath()))
+        {
+            int len;
+            while ((len = in.read(buffer)) != -1)
+                md.update(buffer, 0, len);
+        }
+
+        final byte[] result = md.digest();
+
+        synchronized (this)
+        {
+            contentHashes.put(key, result);
+        }
+
+        return result;
+    }
+
+    // returns stored data (payload only) of the given kind if still valid for the image
+    private ByteBuffer read(String path, String kind)
+    {
+        final File image = new File(path);
+        final File file = getFile(path, kind);
+        ByteBuffer result = null;
+
+        if (file.exists())
+        {
+            try
+            {
+                // read it at once in heap (file is closed right after so a concurrent build can replace it)
+                final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+
+                if ((data.getInt() == MAGIC) && (data.getInt() == VERSION))
+                {
+                    final String storedPath = getPath(data);
+                    final long length = data.getLong();
+                    final long lastModified = data.getLong();
+                    final byte[] hash = new byte[HASH_SIZE];
+                    data.get(hash);
+                    final int size = data.getInt();
+
+                    // same image ? (content is only checked if modification time changed)
+                    if (storedPath.equals(path) && (length == image.length()) && (size == data.remaining())
+                            && ((lastModified == image.lastModified()) || Arrays.equals(hash, getContentHash(image))))
+                        result = data.slice();
+                }
+            }
+            catch (IOException | BufferUnderflowException e)
+            {
+                // corrupted or concurrently replaced --> just decode the image again
+                System.err.println("Warning: couldn't read " + name + " image store '" + file.getPath() + "': " + e.getMessage());
+            }
+        }
+
+        synchronized (this)
+        {
+            if (result != null)
+                hits++;
+            else
+                misses++;
+        }
+
+        return result;
+    }
+
+    private void write(String path, String kind, ByteBuffer payload)
+    {
+        final File image = new File(path);
+        final File file = getFile(path, kind);
+        File tmp = null;
+
+        try
+        {
+            if (!dir.exists())
+                dir.mkdirs();
+
+            final byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+
+            // can't be stored (should never happen)
+            if (pathBytes.length > MAX_PATH)
+                return;
+
+            final ByteBuffer header = ByteBuffer.allocate(4 + 4 + 2 + pathBytes.length + 8 + 8 + HASH_SIZE + 4);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putShort((short) pathBytes.length);
+            header.put(pathBytes);
+            header.putLong(image.length());
+            header.putLong(image.lastModified());
+            header.put(getContentHash(image));
+            header.putInt(payload.remaining());
+            header.flip();
+
+            tmp = File.createTempFile(file.getName(), ".tmp", dir);
+
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE))
+            {
+                while (header.hasRemaining())
+                    channel.write(header);
+                while (payload.hasRemaining())
+                    channel.write(payload);
+            }
+
+            try
+            {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Warning: couldn't write " + name + " image store '" + file.getPath() + "': " + e.getMessage());
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
+    // image path stored in the header
+    private static String getPath(ByteBuffer data)
+    {
+        final byte[] bytes = new byte[data.getShort() & 0xFFFF];
+        data.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Removes stored data of images which don't exist anymore, stored data of unknown format (previous versions) and
+     * temporary files left by interrupted builds
+     */
+    void prune()
+    {
+        final File[] files = dir.listFiles();
+
+        if (files == null)
+            return;
+
+        final long now = System.currentTimeMillis();
+        int num = 0;
+
+        for (File file : files)
+        {
+            final String fileName = file.getName();
+            final boolean remove;
+
+            if (fileName.endsWith(".tmp"))
+                // may be in use by a concurrent build
+                remove = (now - file.lastModified()) > TMP_EXPIRATION;
+            else if (fileName.endsWith("." + KIND_8BPP) || fileName.endsWith("." + KIND_PALETTE))
+                remove = isOrphan(file);
+            else
+                remove = false;
+
+            if (remove && file.delete())
+                num++;
+        }
+
+        synchronized (this)
+        {
+            pruned += num;
+        }
+    }
+
+    // true if the source image of the given stored data doesn't exist anymore (or the data can't be used anymore)
+    private static boolean isOrphan(File file)
+    {
+        // only read the header
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()))))
+        {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION))
+                return true;
+
+            final byte[] bytes = new byte[in.readUnsignedShort()];
+            in.readFully(bytes);
+
+            return !new File(new String(bytes, StandardCharsets.UTF_8)).exists();
+        }
+        catch (IOException e)
+        {
+            // truncated or removed meanwhile --> nothing to keep
+            return true;
+        }
+    }
+
+    synchronized void report()
+    {
+        if ((hits + misses) > 0)
+            System.out.println(name + " image store: " + hits + " hit(s), " + misses + " miss(es), " + pruned + " removed - " + dir.getPath());
+    }
+}
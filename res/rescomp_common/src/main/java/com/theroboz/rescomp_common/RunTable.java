@@ -0,0 +1,44 @@
+package com.theroboz.rescomp_common;
+
+/**
+ * Run length per pixel of an image (as used by the outline detectors).<br>
+ * A run never exceeds the image width or height so lengths are stored in a <code>char</code> per pixel, or an
+ * <code>int</code> per pixel when the image is larger than 65535 pixels in one direction.
+ */
+public final class RunTable
+{
+    private final char[] small;
+    private final int[] large;
+
+    /**
+     * Creates the (zero filled) run table of an image of the given size
+     */
+    public RunTable(int width, int height)
+    {
+        final int size = width * height;
+
+        if ((width <= Character.MAX_VALUE) && (height <= Character.MAX_VALUE))
+        {
+            small = new char[size];
+            large = null;
+        }
+        else
+        {
+            small = null;
+            large = new int[size];
+        }
+    }
+
+    public int get(int i)
+    {
+        return (small != null) ? small[i] : large[i];
+    }
+
+    public void set(int i, int len)
+    {
+        if (small != null)
+            small[i] = (char) len;
+        else
+            large[i] = len;
+    }
+}
@@ -0,0 +1,58 @@
+package com.theroboz.rescomp_common;
+
+import java.io.File;
+
+import sgdk.rescomp.Compiler;
+
+/**
+ * Helpers to read the build wide settings of the extensions from JVM system properties (-Dname=value), see the
+ * settings class of each extension for the available properties.
+ */
+public final class Settings
+{
+    private Settings()
+    {
+    }
+
+    /**
+     * Returns the directory used to store persistent caches (may not exist yet)
+     *
+     * @param cacheDir
+     *        configured directory, <code>null</code> for the default one ('.rescomp_cache' in the resource directory)
+     */
+    public static File getCacheDir(String cacheDir)
+    {
+        if (cacheDir != null)
+            return new File(cacheDir);
+
+        return new File((Compiler.resDir != null) ? Compiler.resDir : ".", ".rescomp_cache");
+    }
+
+    public static boolean getBoolean(String name, boolean def)
+    {
+        final String value = System.getProperty(name);
+
+        if (value == null)
+            return def;
+
+        return value.equalsIgnoreCase("true") || value.equals("1");
+    }
+
+    public static int getInt(String name, int def)
+    {
+        final String value = System.getProperty(name);
+
+        if (value == null)
+            return def;
+
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            System.err.println("Warning: invalid value '" + value + "' for '" + name + "' property, using " + def);
+            return def;
+        }
+    }
+}
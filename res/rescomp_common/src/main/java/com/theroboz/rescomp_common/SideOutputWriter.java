@@ -0,0 +1,91 @@
+package com.theroboz.rescomp_common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background writer for side outputs (debug images, exports...) which aren't needed by the build itself.<br>
+ * Tasks are executed one at a time, in submission order, on a single daemon thread so they don't delay the resource
+ * processing. The build joins the writer at the end (shutdown hook) so all outputs are written before the compiler
+ * exits.<br>
+ * Each extension holds its own writer (see its settings class).
+ */
+public class SideOutputWriter
+{
+    public interface Task
+    {
+        void run() throws Exception;
+    }
+
+    /**
+     * Returns a new writer, joined at the end of the build
+     *
+     * @param name
+     *        resource types using the writer (for messages and thread name)
+     */
+    public static SideOutputWriter create(String name)
+    {
+        final SideOutputWriter result = new SideOutputWriter(name);
+
+        // wait for pending outputs at the end of the build
+        Runtime.getRuntime().addShutdownHook(new Thread(result::join, name + " side output"));
+
+        return result;
+    }
+
+    private final String name;
+    private final ExecutorService executor;
+
+    private SideOutputWriter(String name)
+    {
+        this.name = name;
+        executor = Executors.newSingleThreadExecutor(r ->
+        {
+            final Thread t = new Thread(r, name + " side output writer");
+            // don't prevent the compiler to exit (the shutdown hook joins it)
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /**
+     * Schedules a side output task
+     *
+     * @param name
+     *        output name (file) for error report
+     */
+    public void submit(String name, Task task)
+    {
+        executor.execute(() ->
+        {
+            try
+            {
+                task.run();
+            }
+            catch (Throwable t)
+            {
+                System.err.println("Warning: couldn't write '" + name + "': " + t);
+            }
+        });
+    }
+
+    /**
+     * Waits for all pending side outputs to be written
+     */
+    public void join()
+    {
+        executor.shutdown();
+
+        try
+        {
+            if (!executor.awaitTermination(10, TimeUnit.MINUTES))
+                System.err.println("Warning: some " + name + " side outputs were not written (timeout)");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.theroboz.sliced_sprite;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks entry point: same command line than the JMH launcher, with the GC profiler always enabled so allocation
+ * rate (<code>gc.alloc.rate.norm</code> = bytes per operation) is reported alongside throughput.
+ */
+public class BenchmarkMain
+{
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException
+    {
+        final CommandLineOptions cmdLine = new CommandLineOptions(args);
+
+        // -h / -l / -lp ... are handled by the JMH launcher
+        if (cmdLine.shouldHelp() || cmdLine.shouldList() || cmdLine.shouldListWithParams() || cmdLine.shouldListProfilers()
+                || cmdLine.shouldListResultFormats())
+        {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        new Runner(new OptionsBuilder().parent(cmdLine).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,82 @@
+package com.theroboz.sliced_sprite;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sgdk.rescomp.type.Basics.CollisionType;
+import sgdk.rescomp.type.Basics.Compression;
+import sgdk.rescomp.type.SpriteCell.OptimizationType;
+
+/**
+ * Frame matching done by {@link SpriteCutAnimation} before cutting a frame: opacity masks, fingerprints, duplicate
+ * consecutive frames and lookup of an already compiled frame with the same mask.<br>
+ * Frames of every other animation are registered in the mask index so about half of the lookups find a match.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dsliced_sprite.cache=false"})
+public class MaskMatchingBenchmark
+{
+    // frames per animation and number of animations (64x64 frames)
+    @Param({"4", "16", "32"})
+    public int size;
+
+    @Param({"0.2", "0.5", "0.8"})
+    public double density;
+
+    private SyntheticSheet sheet;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        sheet = new SyntheticSheet(size, size, 8, 8, density, 1234);
+        // don't keep (and match) frames registered by previous trials
+        SpriteFrameMaskIndex.clear();
+
+        for (int a = 0; a < size; a += 2)
+        {
+            final FrameView[] frames = FrameView.getFrames(sheet.image8bpp, sheet.w / 8, a, 8, 8);
+
+            for (int f = 0; f < frames.length; f++)
+                SpriteFrameMaskIndex.add(new SpriteCutFrame("bench_" + size + "_" + a + "_" + f, frames[f], 8, 8, 0, CollisionType.NONE, Compression.NONE,
+                        OptimizationType.BALANCED, SpriteCutLevel.FAST, sheet.getCut(a, f)));
+        }
+    }
+
+    @Benchmark
+    public int matchFrames()
+    {
+        int found = 0;
+
+        for (int a = 0; a < sheet.numAnim; a++)
+        {
+            final FrameView[] frames = FrameView.getFrames(sheet.image8bpp, sheet.w / 8, a, 8, 8);
+            final OpacityMask[] masks = SpriteCutAnimation.getFrameMasks(frames, frames.length);
+            final long[] fingerprints = SpriteCutAnimation.getFrameFingerprints(frames, frames.length);
+
+            for (int f = 0; f < frames.length; f++)
+            {
+                found += SpriteCutAnimation.getNumDuplicate(frames, f, frames.length, fingerprints);
+                if (SpriteFrameMaskIndex.find(masks[f]) != null)
+                    found++;
+            }
+        }
+
+        return found;
+    }
+}
@@ -0,0 +1,78 @@
+package com.theroboz.sliced_sprite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Outline detection of a sprites_def PNG: sequential (streamed when the image is tall enough) or parallel bands.<br>
+ * <code>scan</code> only measures the detection on already decoded pixels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutlineDetectorBenchmark
+{
+    // frames per animation and number of animations (64x64 frames)
+    @Param({"4", "16", "32"})
+    public int size;
+
+    @Param({"0.2", "0.5", "0.8"})
+    public double density;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private File dir;
+    private File pngFile;
+    private IndexedOutlineDetector detector;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        final SyntheticSheet sheet = new SyntheticSheet(size, size, 8, 8, density, 1234);
+
+        dir = Files.createTempDirectory("sliced_sprite_bench").toFile();
+        pngFile = new File(dir, "cuts.png");
+        sheet.writeOutlineCuts(pngFile);
+
+        detector = new IndexedOutlineDetector(SpriteCutSettings.getImageCache().get(pngFile).getIndexed());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        pngFile.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public IndexedOutlineDetector.Rect[] detect() throws IOException
+    {
+        return IndexedOutlineDetector.detect(pngFile, parallel);
+    }
+
+    @Benchmark
+    public IndexedOutlineDetector.Rect[] scan()
+    {
+        return parallel ? detector.detectParallel() : detector.detect();
+    }
+}
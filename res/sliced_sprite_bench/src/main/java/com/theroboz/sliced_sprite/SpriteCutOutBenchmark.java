@@ -0,0 +1,116 @@
+package com.theroboz.sliced_sprite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sgdk.rescomp.Resource;
+import sgdk.rescomp.type.Basics.CollisionType;
+import sgdk.rescomp.type.Basics.Compression;
+import sgdk.rescomp.type.SpriteCell.OptimizationType;
+
+/**
+ * Source / binary emission of a whole SLICED_SPRITE resource: the sprite definition and all its internal resources
+ * (palette, animations, frames and frame tilesets) as the compiler outputs them.<br>
+ * The resource is built once from the synthetic sheet and its text cut definitions (no automatic cutting).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dsliced_sprite.cache=false", "-Drescomp_ext.image_store=false"})
+public class SpriteCutOutBenchmark
+{
+    // frames per animation and number of animations (64x64 frames)
+    @Param({"4", "16", "32"})
+    public int size;
+
+    @Param({"0.2", "0.5", "0.8"})
+    public double density;
+
+    private File dir;
+    private File imageFile;
+    private File textFile;
+    private List<Resource> resources;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        final SyntheticSheet sheet = new SyntheticSheet(size, size, 8, 8, density, 1234);
+        // frames of previous trials must not be re-used by this sprite
+        SpriteFrameMaskIndex.clear();
+
+        dir = Files.createTempDirectory("sliced_sprite_bench").toFile();
+        imageFile = new File(dir, "sheet.png");
+        textFile = new File(dir, "cuts.txt");
+        sheet.writeImage(imageFile);
+        sheet.writeTextCuts(textFile);
+
+        final SpriteCut sprite = new SpriteCut("bench_sprite", imageFile.getPath(), 8, 8, Compression.NONE, new int[][] {{0}}, CollisionType.NONE,
+                OptimizationType.BALANCED, SpriteCutLevel.FAST, false, true, textFile.getPath());
+
+        // internal resources are shared between frames so keep each one once
+        final Set<Resource> done = Collections.newSetFromMap(new IdentityHashMap<>());
+        resources = new ArrayList<>();
+        add(done, sprite.palette);
+        for (SpriteCutAnimation animation : sprite.animations)
+        {
+            for (SpriteCutFrame frame : animation.frames)
+            {
+                add(done, frame.tileset);
+                add(done, frame);
+            }
+            add(done, animation);
+        }
+        add(done, sprite);
+    }
+
+    private void add(Set<Resource> done, Resource resource)
+    {
+        if ((resource != null) && done.add(resource))
+            resources.add(resource);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        imageFile.delete();
+        textFile.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public int out() throws IOException
+    {
+        final ByteArrayOutputStream outB = new ByteArrayOutputStream();
+        final StringBuilder outS = new StringBuilder();
+        final StringBuilder outH = new StringBuilder();
+
+        for (Resource resource : resources)
+            resource.out(outB, outS, outH);
+
+        return outB.size() + outS.length() + outH.length();
+    }
+}
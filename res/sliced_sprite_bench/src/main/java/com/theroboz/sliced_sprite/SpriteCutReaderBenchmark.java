@@ -0,0 +1,89 @@
+package com.theroboz.sliced_sprite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of the sprites_def file: text format and outline PNG format (outline detection plus frame mapping).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dsliced_sprite.cache=false"})
+public class SpriteCutReaderBenchmark
+{
+    // frames per animation and number of animations (64x64 frames)
+    @Param({"4", "16", "32"})
+    public int size;
+
+    @Param({"0.2", "0.5", "0.8"})
+    public double density;
+
+    // decode the outline PNG again on each call (otherwise it comes from the decoded image cache)
+    @Param({"false", "true"})
+    public boolean cold;
+
+    private File dir;
+    private File textFile;
+    private File pngFile;
+    private long modified;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        final SyntheticSheet sheet = new SyntheticSheet(size, size, 8, 8, density, 1234);
+
+        dir = Files.createTempDirectory("sliced_sprite_bench").toFile();
+        textFile = new File(dir, "cuts.txt");
+        pngFile = new File(dir, "cuts.png");
+        sheet.writeTextCuts(textFile);
+        sheet.writeOutlineCuts(pngFile);
+        modified = pngFile.lastModified();
+    }
+
+    @Setup(Level.Invocation)
+    public void invalidate()
+    {
+        // new modification time --> new cache key
+        if (cold)
+            pngFile.setLastModified(modified += 1000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        textFile.delete();
+        pngFile.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public SpriteCutReader parseText() throws IOException
+    {
+        return new SpriteCutReader(textFile.getPath(), 64, 64);
+    }
+
+    @Benchmark
+    public SpriteCutReader parsePNG() throws IOException
+    {
+        return new SpriteCutReader(pngFile.getPath(), 64, 64);
+    }
+}
@@ -0,0 +1,70 @@
+package com.theroboz.sliced_sprite;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sgdk.rescomp.type.SpriteCell;
+import sgdk.rescomp.type.SpriteCell.OptimizationLevel;
+import sgdk.rescomp.type.SpriteCell.OptimizationType;
+
+/**
+ * Automatic sprite cutting of a single frame for each SGDK optimization level.<br>
+ * The persistent cut cache is disabled so each call really computes the cut, calls cycle over the frames of a small
+ * sheet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Dsliced_sprite.cache=false"})
+public class SpriteCuttingBenchmark
+{
+    @Param({"FAST", "MEDIUM", "SLOW", "MAX"})
+    public OptimizationLevel level;
+
+    // frame size in tile
+    @Param({"4", "8"})
+    public int frameSize;
+
+    @Param({"0.2", "0.5", "0.8"})
+    public double density;
+
+    private FrameView[] frames;
+    private OpacityMask[] masks;
+    private SpriteCutLevel optLevel;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        final SyntheticSheet sheet = new SyntheticSheet(1, 16, frameSize, frameSize, density, 1234);
+
+        frames = FrameView.getFrames(sheet.image8bpp, sheet.w / 8, 0, frameSize, frameSize);
+        masks = SpriteCutAnimation.getFrameMasks(frames, frames.length);
+        optLevel = SpriteCutLevel.of(level);
+        next = 0;
+    }
+
+    @Benchmark
+    public List<SpriteCell> computeSpriteCutting()
+    {
+        final int f = next;
+        next = (f + 1) % frames.length;
+
+        return SpriteCutFrame.computeSpriteCutting("bench", frames[f], masks[f], frameSize, frameSize, OptimizationType.BALANCED, optLevel);
+    }
+}
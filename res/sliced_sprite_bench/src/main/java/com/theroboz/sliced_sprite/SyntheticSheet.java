@@ -0,0 +1,201 @@
+package com.theroboz.sliced_sprite;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import sgdk.rescomp.type.SpriteCell;
+import sgdk.rescomp.type.SpriteCell.OptimizationType;
+
+/**
+ * Synthetic sprite sheet used by the benchmarks: <code>numAnim</code> rows of <code>numFrame</code> frames, each frame
+ * holding a noisy ellipse covering about <code>density</code> of the frame area.<br>
+ * Frames go by pairs of identical frames so duplicate frames and shared masks are exercised too.<br>
+ * The sheet also gives a cut definition of each frame (32x32 cells over the opaque area) in both text and outline PNG
+ * formats.
+ */
+public class SyntheticSheet
+{
+    // cut cell size / size of the rectangles drawn in the outline image
+    static final int CELL = 32;
+    static final int OUTLINE = 24;
+
+    public final int numAnim;
+    public final int numFrame;
+    public final int wf;
+    public final int hf;
+    public final int w;
+    public final int h;
+    public final byte[] image8bpp;
+
+    public SyntheticSheet(int numAnim, int numFrame, int wf, int hf, double density, long seed)
+    {
+        this.numAnim = numAnim;
+        this.numFrame = numFrame;
+        this.wf = wf;
+        this.hf = hf;
+        w = numFrame * wf * 8;
+        h = numAnim * hf * 8;
+        image8bpp = new byte[w * h];
+
+        // ellipse scale so its area is density * frame area
+        final double scale = Math.sqrt((4d * density) / Math.PI);
+
+        for (int a = 0; a < numAnim; a++)
+            for (int f = 0; f < numFrame; f++)
+                drawFrame(a, f, scale, new Random(seed + (a * 7919L) + (f / 2)));
+    }
+
+    private void drawFrame(int animIndex, int frameIndex, double scale, Random rnd)
+    {
+        final int fw = wf * 8;
+        final int fh = hf * 8;
+        final int x0 = frameIndex * fw;
+        final int y0 = animIndex * fh;
+        // random center and a bit of jitter on the radius so frames differ
+        final double cx = (fw / 2d) + ((rnd.nextDouble() - 0.5d) * (fw / 2d));
+        final double cy = (fh / 2d) + ((rnd.nextDouble() - 0.5d) * (fh / 2d));
+        final double rx = (fw / 2d) * scale * (0.9d + (rnd.nextDouble() * 0.2d));
+        final double ry = (fh / 2d) * scale * (0.9d + (rnd.nextDouble() * 0.2d));
+
+        for (int y = 0; y < fh; y++)
+        {
+            final double dy = (y - cy) / ry;
+
+            for (int x = 0; x < fw; x++)
+            {
+                final double dx = (x - cx) / rx;
+
+                if (((dx * dx) + (dy * dy)) <= 1d)
+                    image8bpp[((y0 + y) * w) + x0 + x] = (byte) (1 + rnd.nextInt(15));
+            }
+        }
+    }
+
+    private boolean isOpaque(int x0, int y0, int cw, int ch)
+    {
+        for (int y = y0; y < (y0 + ch); y++)
+            for (int x = x0; x < (x0 + cw); x++)
+                if (image8bpp[(y * w) + x] != 0)
+                    return true;
+
+        return false;
+    }
+
+    /**
+     * Returns the cut definition (frame relative cells) of the given frame
+     */
+    public List<SpriteCell> getCut(int animIndex, int frameIndex)
+    {
+        final List<SpriteCell> result = new ArrayList<>();
+        final int fw = wf * 8;
+        final int fh = hf * 8;
+
+        for (int y = 0; y < fh; y += CELL)
+            for (int x = 0; x < fw; x += CELL)
+            {
+                final int cw = Math.min(CELL, fw - x);
+                final int ch = Math.min(CELL, fh - y);
+
+                if (isOpaque((frameIndex * fw) + x, (animIndex * fh) + y, cw, ch))
+                    result.add(new SpriteCell(x, y, cw, ch, OptimizationType.BALANCED));
+            }
+
+        return result;
+    }
+
+    private static IndexColorModel getColorModel()
+    {
+        final byte[] r = new byte[16];
+        final byte[] g = new byte[16];
+        final byte[] b = new byte[16];
+
+        for (int i = 0; i < 16; i++)
+        {
+            r[i] = (byte) (i * 17);
+            g[i] = (byte) (255 - (i * 17));
+            b[i] = (byte) ((i & 3) * 85);
+        }
+
+        // index 0 is transparent
+        return new IndexColorModel(8, 16, r, g, b, 0);
+    }
+
+    private static void writeIndexed(File file, byte[] pixels, int width, int height) throws IOException
+    {
+        final BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, getColorModel());
+        System.arraycopy(pixels, 0, ((DataBufferByte) img.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+
+        if (!ImageIO.write(img, "png", file))
+            throw new IOException("Can't write '" + file + "'");
+    }
+
+    /**
+     * Writes the sheet as a 8 bits indexed color PNG (transparent index 0)
+     */
+    public void writeImage(File file) throws IOException
+    {
+        writeIndexed(file, image8bpp, w, h);
+    }
+
+    /**
+     * Writes the cut definitions in the text format of {@link SpriteCutReader}
+     */
+    public void writeTextCuts(File file) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(file))
+        {
+            for (int a = 0; a < numAnim; a++)
+            {
+                out.println("[ANIMATION " + a + "]");
+
+                for (int f = 0; f < numFrame; f++)
+                {
+                    out.println("FRAME " + f);
+                    for (SpriteCell cell : getCut(a, f))
+                        out.println(cell.x + " " + cell.y + " " + cell.width + " " + cell.height);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the cut definitions as an outline PNG (see {@link IndexedOutlineDetector}), rectangles are drawn smaller
+     * than the cells so outlines never touch each other.
+     */
+    public void writeOutlineCuts(File file) throws IOException
+    {
+        final byte[] outline = new byte[w * h];
+
+        for (int a = 0; a < numAnim; a++)
+            for (int f = 0; f < numFrame; f++)
+                for (SpriteCell cell : getCut(a, f))
+                {
+                    final int x0 = (f * wf * 8) + cell.x;
+                    final int y0 = (a * hf * 8) + cell.y;
+                    final int x1 = x0 + Math.min(OUTLINE, cell.width) - 1;
+                    final int y1 = y0 + Math.min(OUTLINE, cell.height) - 1;
+
+                    for (int x = x0; x <= x1; x++)
+                    {
+                        outline[(y0 * w) + x] = 1;
+                        outline[(y1 * w) + x] = 1;
+                    }
+                    for (int y = y0; y <= y1; y++)
+                    {
+                        outline[(y * w) + x0] = 1;
+                        outline[(y * w) + x1] = 1;
+                    }
+                }
+
+        writeIndexed(file, outline, w, h);
+    }
+}
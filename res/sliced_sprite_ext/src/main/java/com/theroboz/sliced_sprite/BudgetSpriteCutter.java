@@ -0,0 +1,480 @@
+package com.theroboz.sliced_sprite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import sgdk.rescomp.type.SpriteCell;
+import sgdk.rescomp.type.SpriteCell.OptimizationType;
+
+/**
+ * Time budgeted sprite cutter: runs several independently seeded optimizer islands in parallel on the frame
+ * {@link CoverProblem} until the deadline and returns the best valid (<= 16 sprites) cut found.<br>
+ * Each island starts from a randomized greedy cut then repeatedly removes a few neighbor sprites of its current cut and
+ * repairs it (randomized greedy again), keeping the result when it isn't worse. Islands share their best cut through a
+ * common best solution: periodically an island may continue from it if it's better than its own current cut.<br>
+ * Search stops at the deadline, or as soon as the best cut reaches the cost lower bound of the frame (can't be
+ * improved).<br>
+ * Result depends on the available CPU time so it isn't deterministic (the persistent cut cache keeps it stable between
+ * builds).
+ */
+public class BudgetSpriteCutter
+{
+    public static class Result
+    {
+        public final List<SpriteCell> sprites;
+        public final int numTile;
+        public final int islands;
+        public final long iterations;
+        public final int improvements;
+        // cost of first and final best solution
+        public final long initialCost;
+        public final long cost;
+        // time (ms) and island which found the best solution
+        public final long bestTime;
+        public final int bestIsland;
+        // total time in ms
+        public final long time;
+
+        Result(List<SpriteCell> sprites, int numTile, int islands, long iterations, int improvements, long initialCost, long cost, long bestTime, int bestIsland,
+                long time)
+        {
+            this.sprites = sprites;
+            this.numTile = numTile;
+            this.islands = islands;
+            this.iterations = iterations;
+            this.improvements = improvements;
+            this.initialCost = initialCost;
+            this.cost = cost;
+            this.bestTime = bestTime;
+            this.bestIsland = bestIsland;
+            this.time = time;
+        }
+    }
+
+    static class Solution
+    {
+        // packed sprites: x | (y << 8) | (size << 16)
+        final int[] sprites;
+        final long cost;
+        final int island;
+        final long time;
+
+        Solution(int[] sprites, long cost, int island, long time)
+        {
+            this.sprites = sprites;
+            this.cost = cost;
+            this.island = island;
+            this.time = time;
+        }
+    }
+
+    // extra cost per sprite above the 16 sprites limit (such cuts are kept to guide the search but never returned)
+    static final long OVER_LIMIT_PENALTY = 1L << 20;
+    // iterations between 2 looks at the shared best solution
+    static final int MIGRATION_INTERVAL = 64;
+    // iterations without improvement before an island restarts from a new greedy cut
+    static final int RESTART_INTERVAL = 4096;
+
+    private static ExecutorService executor = null;
+
+    static synchronized ExecutorService getExecutor()
+    {
+        if (executor == null)
+        {
+            final AtomicInteger threadIndex = new AtomicInteger();
+
+            executor = Executors.newFixedThreadPool(SpriteCutSettings.THREADS, r ->
+            {
+                final Thread t = new Thread(r, "sliced-sprite-island-" + threadIndex.incrementAndGet());
+                // don't prevent the compiler to exit
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        return executor;
+    }
+
+    final CoverProblem problem;
+    final long budget;
+    final int numIsland;
+    // best solution of all islands
+    final AtomicReference<Solution> globalBest;
+    // no cut can cost less
+    final long lowerBound;
+
+    long start;
+    long deadline;
+
+    /**
+     * @param mask
+     *        opacity mask of the frame
+     * @param budget
+     *        time budget in ms
+     * @param islands
+     *        number of island (0 = one per worker thread)
+     */
+    public BudgetSpriteCutter(OpacityMask mask, OptimizationType optType, long budget, int islands)
+    {
+        problem = new CoverProblem(mask, optType);
+        this.budget = budget;
+        numIsland = (islands > 0) ? islands : SpriteCutSettings.THREADS;
+        globalBest = new AtomicReference<>();
+
+        final long[] blocked = problem.newBlockedBuffer();
+        final int area = CoverProblem.MAX_SIZE * CoverProblem.MAX_SIZE;
+        final int minSprite = Math.max((problem.numOpaque + (area - 1)) / area, problem.getNumIndependent(problem.opaque, CoverProblem.MAX_SIZE, blocked));
+        final int minTile = Math.max((problem.numOpaque + 63) / 64, problem.getNumIndependent(problem.opaque, 8, blocked));
+        lowerBound = problem.getLowerBound(minTile, minSprite);
+    }
+
+    /**
+     * Computes the cut, returns <code>null</code> if no cut using at most 16 sprites was found in time.
+     */
+    public Result cut()
+    {
+        start = System.currentTimeMillis();
+        deadline = start + budget;
+
+        // empty frame ? --> nothing to search
+        if (problem.numOpaque == 0)
+            return new Result(new ArrayList<>(), 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        final Island[] islands = new Island[numIsland];
+        for (int i = 0; i < numIsland; i++)
+            islands[i] = new Island(i);
+
+        // run first island in current thread so we always make progress even if workers are busy
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 1; i < numIsland; i++)
+            futures.add(getExecutor().submit(islands[i]));
+
+        islands[0].run();
+
+        for (int i = 1; i < numIsland; i++)
+        {
+            final Future<?> future = futures.get(i - 1);
+
+            // island not even started yet (workers busy with other frames) ? --> prevent it to start, no need to wait for it
+            if (islands[i].claimed.compareAndSet(false, true))
+            {
+                future.cancel(false);
+                continue;
+            }
+
+            // started --> wait for it (it stops at deadline or when the lower bound is reached) so its statistics are final
+            try
+            {
+                future.get();
+            }
+            catch (CancellationException e)
+            {
+                // can't happen (only cancelled when not started)
+            }
+            catch (InterruptedException e)
+            {
+                // running islands would still update the solution / statistics --> don't use them
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Sprite cutting interrupted");
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        final Solution best = globalBest.get();
+
+        if ((best == null) || (best.sprites.length > CoverProblem.MAX_SPRITE))
+            return null;
+
+        // gather statistics
+        long iterations = 0;
+        int improvements = 0;
+        long initialCost = Long.MAX_VALUE;
+        int started = 0;
+        for (Island island : islands)
+        {
+            // not started or started too late
+            if (!island.started || (island.initialCost == Long.MAX_VALUE))
+                continue;
+
+            started++;
+            iterations += island.iterations;
+            improvements += island.improvements;
+            initialCost = Math.min(initialCost, island.initialCost);
+        }
+
+        final int num = best.sprites.length;
+        final int[] x = new int[num];
+        final int[] y = new int[num];
+        final int[] size = new int[num];
+        int numTile = 0;
+        for (int i = 0; i < num; i++)
+        {
+            x[i] = best.sprites[i] & 0xFF;
+            y[i] = (best.sprites[i] >> 8) & 0xFF;
+            size[i] = best.sprites[i] >> 16;
+            numTile += CoverProblem.getNumTile(size[i]);
+        }
+
+        return new Result(problem.getSprites(x, y, size, num), numTile, started, iterations, improvements, initialCost, best.cost, best.time - start, best.island,
+                System.currentTimeMillis() - start);
+    }
+
+    long getCost(int[] sprites)
+    {
+        long result = 0;
+
+        for (int s : sprites)
+            result += problem.getCost(s >> 16);
+        if (sprites.length > CoverProblem.MAX_SPRITE)
+            result += (sprites.length - CoverProblem.MAX_SPRITE) * OVER_LIMIT_PENALTY;
+
+        return result;
+    }
+
+    /**
+     * Returns true if the search should stop (deadline reached or best solution can't be improved anymore)
+     */
+    boolean isDone()
+    {
+        if (System.currentTimeMillis() >= deadline)
+            return true;
+
+        final Solution best = globalBest.get();
+        return (best != null) && (best.cost <= lowerBound);
+    }
+
+    /**
+     * Shares the given solution if it's better than the current shared one
+     */
+    void publish(Solution solution)
+    {
+        Solution best;
+
+        do
+        {
+            best = globalBest.get();
+            if ((best != null) && (best.cost <= solution.cost))
+                return;
+        }
+        while (!globalBest.compareAndSet(best, solution));
+    }
+
+    class Island implements Runnable
+    {
+        final int index;
+        final SplittableRandom random;
+        final CoverCandidates candidates;
+        final long[] bits;
+        // set by the first of the island and cut() (when done) so a queued island either runs fully or not at all
+        final AtomicBoolean claimed;
+
+        boolean started;
+        long iterations;
+        int improvements;
+        long initialCost;
+
+        Island(int index)
+        {
+            this.index = index;
+            // fixed seeds so islands explore differently but reproducibly (for a same amount of work)
+            random = new SplittableRandom(0x9E3779B97F4A7C15L * (index + 1));
+            candidates = new CoverCandidates();
+            bits = problem.newUncovered();
+            claimed = new AtomicBoolean();
+            started = false;
+            initialCost = Long.MAX_VALUE;
+        }
+
+        @Override
+        public void run()
+        {
+            // already skipped by cut() ?
+            if (!claimed.compareAndSet(false, true))
+                return;
+
+            started = true;
+
+            // deadline already reached (island started too late) or nothing left to improve ?
+            if (isDone())
+                return;
+
+            Solution best = construct(new int[0], 0);
+            Solution current = best;
+            int noImprovement = 0;
+
+            initialCost = best.cost;
+            publish(best);
+
+            while (!isDone())
+            {
+                iterations++;
+
+                final Solution s = mutate(current);
+
+                // accept equal cost solution to move on plateaus
+                if (s.cost <= current.cost)
+                    current = s;
+
+                if (s.cost < best.cost)
+                {
+                    best = s;
+                    improvements++;
+                    noImprovement = 0;
+                    publish(best);
+                }
+                else
+                    noImprovement++;
+
+                // migration: continue from the shared best solution (sometime) if it's better than ours
+                if ((iterations % MIGRATION_INTERVAL) == 0)
+                {
+                    final Solution shared = globalBest.get();
+
+                    if ((shared != null) && (shared.cost < current.cost) && random.nextBoolean())
+                        current = shared;
+                }
+
+                // stuck ? --> restart from a new cut
+                if (noImprovement >= RESTART_INTERVAL)
+                {
+                    current = construct(new int[0], 0);
+                    noImprovement = 0;
+                }
+            }
+        }
+
+        /**
+         * Removes a few neighbor sprites from the solution then repairs it
+         */
+        Solution mutate(Solution solution)
+        {
+            final int[] sprites = solution.sprites;
+            final int num = sprites.length;
+
+            if (num == 0)
+                return solution;
+
+            // remove 1 to 3 sprites around a random one
+            final int numRemove = 1 + random.nextInt(Math.min(3, num));
+            final int center = sprites[random.nextInt(num)];
+            final int cx = center & 0xFF;
+            final int cy = (center >> 8) & 0xFF;
+            final boolean[] removed = new boolean[num];
+
+            for (int r = 0; r < numRemove; r++)
+            {
+                int nearest = -1;
+                int nearestDist = Integer.MAX_VALUE;
+
+                for (int i = 0; i < num; i++)
+                {
+                    if (removed[i])
+                        continue;
+
+                    final int d = Math.abs((sprites[i] & 0xFF) - cx) + Math.abs(((sprites[i] >> 8) & 0xFF) - cy);
+                    if (d < nearestDist)
+                    {
+                        nearestDist = d;
+                        nearest = i;
+                    }
+                }
+
+                removed[nearest] = true;
+            }
+
+            final int[] kept = new int[num - numRemove];
+            int k = 0;
+            for (int i = 0; i < num; i++)
+                if (!removed[i])
+                    kept[k++] = sprites[i];
+
+            return construct(kept, kept.length);
+        }
+
+        /**
+         * Completes the given partial solution with a randomized greedy cover then removes redundant sprites
+         */
+        Solution construct(int[] partial, int num)
+        {
+            final List<Integer> sprites = new ArrayList<>();
+
+            System.arraycopy(problem.opaque, 0, bits, 0, bits.length);
+            for (int i = 0; i < num; i++)
+            {
+                sprites.add(Integer.valueOf(partial[i]));
+                clearSprite(bits, partial[i]);
+            }
+
+            int row = 0;
+            while ((row = problem.findFirstUncoveredRow(bits, row)) < problem.height)
+            {
+                final int n = candidates.build(problem, bits, row, problem.findFirstUncoveredX(bits, row));
+
+                // should never happen
+                if (n == 0)
+                    break;
+
+                // mostly take best candidate, else one of the next ones
+                final int c = candidates.order[(random.nextInt(4) == 0) ? random.nextInt(Math.min(n, 4)) : 0];
+                final int s = candidates.x[c] | (candidates.y[c] << 8) | (candidates.size[c] << 16);
+
+                sprites.add(Integer.valueOf(s));
+                clearSprite(bits, s);
+            }
+
+            final int[] result = removeRedundant(sprites);
+            return new Solution(result, getCost(result), index, System.currentTimeMillis());
+        }
+
+        /**
+         * Removes sprites whose opaque pixels are all covered by other sprites
+         */
+        int[] removeRedundant(List<Integer> sprites)
+        {
+            int i = 0;
+
+            while (i < sprites.size())
+            {
+                System.arraycopy(problem.opaque, 0, bits, 0, bits.length);
+                for (int j = 0; j < sprites.size(); j++)
+                    if (j != i)
+                        clearSprite(bits, sprites.get(j).intValue());
+
+                final int s = sprites.get(i).intValue();
+                final int size = s >> 16;
+
+                if (problem.getCount(bits, s & 0xFF, (s >> 8) & 0xFF, CoverProblem.getWidth(size), CoverProblem.getHeight(size)) == 0)
+                    sprites.remove(i);
+                else
+                    i++;
+            }
+
+            final int[] result = new int[sprites.size()];
+            for (int j = 0; j < result.length; j++)
+                result[j] = sprites.get(j).intValue();
+
+            return result;
+        }
+
+        private void clearSprite(long[] b, int s)
+        {
+            final int size = s >> 16;
+            problem.clear(b, s & 0xFF, (s >> 8) & 0xFF, CoverProblem.getWidth(size), CoverProblem.getHeight(size));
+        }
+    }
+}
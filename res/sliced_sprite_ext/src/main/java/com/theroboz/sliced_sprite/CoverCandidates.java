@@ -0,0 +1,175 @@
+package com.theroboz.sliced_sprite;
+
+/**
+ * List of candidate sprites to cover the first uncovered pixel of a {@link CoverProblem} (reusable work buffer, one
+ * per search depth / thread).<br>
+ * As all pixels before the first uncovered one (in raster order) are covered, sprites are pushed down as much as
+ * possible and any sprite which could be replaced by a smaller one covering the same pixels, or whose uncovered pixels
+ * are all covered by a cheaper (or equal) candidate, is removed.
+ */
+public class CoverCandidates
+{
+    // max number of candidate sprite for one pixel (16 sizes x 32 positions)
+    static final int MAX_CANDIDATE = CoverProblem.NUM_SIZE * CoverProblem.MAX_SIZE;
+
+    public final int[] x;
+    public final int[] y;
+    public final int[] size;
+    // number of uncovered pixel covered by candidate
+    public final int[] count;
+    // candidate index sorted by decreasing number of covered pixel per cost unit
+    public final int[] order;
+    public int num;
+
+    final double[] score;
+    // bounding box of uncovered pixels of each candidate
+    final int[] minX;
+    final int[] maxX;
+    final int[] minY;
+    final int[] maxY;
+
+    public CoverCandidates()
+    {
+        x = new int[MAX_CANDIDATE];
+        y = new int[MAX_CANDIDATE];
+        size = new int[MAX_CANDIDATE];
+        count = new int[MAX_CANDIDATE];
+        order = new int[MAX_CANDIDATE];
+        score = new double[MAX_CANDIDATE];
+        minX = new int[MAX_CANDIDATE];
+        maxX = new int[MAX_CANDIDATE];
+        minY = new int[MAX_CANDIDATE];
+        maxY = new int[MAX_CANDIDATE];
+    }
+
+    /**
+     * Builds the list of non dominated sprites covering pixel (px, py) which should be the first uncovered pixel.
+     *
+     * @return number of candidate
+     */
+    public int build(CoverProblem problem, long[] bits, int py, int px)
+    {
+        int n = 0;
+
+        for (int s = 0; s < CoverProblem.NUM_SIZE; s++)
+        {
+            final int w = CoverProblem.getWidth(s);
+            final int h = CoverProblem.getHeight(s);
+
+            // sprite doesn't fit in frame
+            if ((w > problem.width) || (h > problem.height))
+                continue;
+
+            // pixels above (py) are all covered so push sprite down as much as possible
+            final int sy = Math.min(py, problem.height - h);
+
+            for (int sx = Math.max(0, (px - w) + 1); sx <= Math.min(px, problem.width - w); sx++)
+            {
+                // quick test on original mask: an empty border means a smaller sprite does the same job
+                if (problem.hasEmptyBorder(sx, sy, w, h))
+                    continue;
+
+                // get uncovered pixels count and bounding box
+                int cnt = 0;
+                int x1 = w;
+                int x2 = -1;
+                int y1 = -1;
+                int y2 = -1;
+
+                for (int j = sy; j < sy + h; j++)
+                {
+                    final long v = problem.extract(bits, j, sx, w);
+
+                    if (v != 0L)
+                    {
+                        cnt += Long.bitCount(v);
+                        x1 = Math.min(x1, Long.numberOfTrailingZeros(v));
+                        x2 = Math.max(x2, 63 - Long.numberOfLeadingZeros(v));
+                        if (y1 == -1)
+                            y1 = j;
+                        y2 = j;
+                    }
+                }
+
+                // uncovered pixels fit in a smaller sprite ? --> dominated
+                if ((((x2 - x1) + 1) <= (w - 8)) || (((y2 - y1) + 1) <= (h - 8)))
+                    continue;
+
+                x[n] = sx;
+                y[n] = sy;
+                size[n] = s;
+                count[n] = cnt;
+                minX[n] = sx + x1;
+                maxX[n] = sx + x2;
+                minY[n] = y1;
+                maxY[n] = y2;
+                score[n] = (double) cnt / problem.getCost(s);
+                n++;
+            }
+        }
+
+        // sort by cost then by decreasing coverage so a dominating candidate is always seen first
+        for (int i = 0; i < n; i++)
+        {
+            int j = i - 1;
+
+            while ((j >= 0) && (compare(problem, order[j], i) > 0))
+            {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = i;
+        }
+
+        // remove candidates whose uncovered pixels are all covered by a cheaper (or equal) candidate
+        int kept = 0;
+        for (int i = 0; i < n; i++)
+        {
+            final int a = order[i];
+            boolean dominated = false;
+
+            for (int k = 0; k < kept; k++)
+            {
+                final int b = order[k];
+
+                if ((x[b] <= minX[a]) && (maxX[a] < (x[b] + CoverProblem.getWidth(size[b]))) && (y[b] <= minY[a])
+                        && (maxY[a] < (y[b] + CoverProblem.getHeight(size[b]))))
+                {
+                    dominated = true;
+                    break;
+                }
+            }
+
+            if (!dominated)
+                order[kept++] = a;
+        }
+
+        // then sort by decreasing number of covered pixel per cost unit (best first)
+        for (int i = 1; i < kept; i++)
+        {
+            final int c = order[i];
+            int j = i - 1;
+
+            while ((j >= 0) && (score[order[j]] < score[c]))
+            {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = c;
+        }
+
+        num = kept;
+        return kept;
+    }
+
+    private int compare(CoverProblem problem, int a, int b)
+    {
+        final int costA = problem.getCost(size[a]);
+        final int costB = problem.getCost(size[b]);
+
+        if (costA != costB)
+            return Integer.compare(costA, costB);
+
+        return Integer.compare(count[b], count[a]);
+    }
+}
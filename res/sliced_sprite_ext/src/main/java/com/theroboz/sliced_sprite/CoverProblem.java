@@ -0,0 +1,302 @@
+package com.theroboz.sliced_sprite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import sgdk.rescomp.type.SpriteCell;
+import sgdk.rescomp.type.SpriteCell.OptimizationType;
+
+/**
+ * Sprite cover problem of a frame: cover all opaque pixels with at most 16 hardware sprites (1 to 4 tiles in both
+ * direction, inside the frame) while minimizing the cost of the optimization type:
+ *
+ * <pre>
+ * MIN_SPRITE   number of sprite first, then number of tile
+ * MIN_TILE     number of tile first, then number of sprite
+ * BALANCED     number of tile + 2 * number of sprite
+ * </pre>
+ *
+ * Holds the immutable problem data (shared by all solvers / threads working on the frame) and the pixel bitset
+ * operations. Uncovered pixels are stored as one bitset per pixel row (same layout than {@link OpacityMask} rows).<br>
+ * Sprite size is given as an index: ((height / 8) - 1) * 4 + ((width / 8) - 1).
+ */
+public class CoverProblem
+{
+    // maximum number of internal sprite per frame
+    public static final int MAX_SPRITE = 16;
+    // hardware sprite size are 1 to 4 tiles in both direction
+    public static final int MAX_SIZE = 32;
+    public static final int NUM_SIZE = 16;
+
+    public final int width;
+    public final int height;
+    final int rowWords;
+    // opaque pixels (row bitsets)
+    final long[] opaque;
+    public final int numOpaque;
+    // integral image of opaque pixels ((width + 1) * (height + 1))
+    final int[] integral;
+    public final OptimizationType optType;
+    final int tileWeight;
+    final int spriteWeight;
+
+    public CoverProblem(OpacityMask mask, OptimizationType optType)
+    {
+        if (optType == OptimizationType.NONE)
+            throw new IllegalArgumentException("Sprite cover problem doesn't support NONE optimization type");
+
+        width = mask.width;
+        height = mask.height;
+        rowWords = mask.rowWords;
+        opaque = mask.rows;
+        numOpaque = mask.getPopCount();
+        this.optType = optType;
+
+        switch (optType)
+        {
+            case MIN_SPRITE:
+                // max 16 x 16 tiles per sprite so tile count can't exceed 256
+                tileWeight = 1;
+                spriteWeight = 1024;
+                break;
+            case MIN_TILE:
+                tileWeight = MAX_SPRITE + 1;
+                spriteWeight = 1;
+                break;
+            default:
+                tileWeight = 1;
+                spriteWeight = 2;
+                break;
+        }
+
+        // build integral image
+        integral = new int[(width + 1) * (height + 1)];
+        for (int y = 0; y < height; y++)
+        {
+            int sum = 0;
+            for (int x = 0; x < width; x++)
+            {
+                if (mask.isOpaque(x, y))
+                    sum++;
+                integral[((y + 1) * (width + 1)) + x + 1] = integral[(y * (width + 1)) + x + 1] + sum;
+            }
+        }
+    }
+
+    /**
+     * Returns a new bitset of uncovered pixels (all opaque pixels)
+     */
+    public long[] newUncovered()
+    {
+        return opaque.clone();
+    }
+
+    /**
+     * Returns a new buffer for {@link #getNumIndependent(long[], int, long[])}
+     */
+    public long[] newBlockedBuffer()
+    {
+        return new long[(2 * MAX_SIZE) * rowWords];
+    }
+
+    public int getCost(int size)
+    {
+        return (getNumTile(size) * tileWeight) + spriteWeight;
+    }
+
+    /**
+     * Returns lower bound of the cost to cover the given remaining pixels (ignoring the 16 sprites limit)
+     */
+    public int getLowerBound(int minTile, int minSprite)
+    {
+        return (minTile * tileWeight) + (minSprite * spriteWeight);
+    }
+
+    public static int getNumTile(int size)
+    {
+        return ((size & 3) + 1) * ((size >> 2) + 1);
+    }
+
+    public static int getWidth(int size)
+    {
+        return ((size & 3) + 1) * 8;
+    }
+
+    public static int getHeight(int size)
+    {
+        return ((size >> 2) + 1) * 8;
+    }
+
+    /**
+     * Returns number of opaque pixel in the given area (using integral image)
+     */
+    public int getOpaqueCount(int x, int y, int w, int h)
+    {
+        final int s = width + 1;
+        return integral[((y + h) * s) + x + w] - integral[(y * s) + x + w] - integral[((y + h) * s) + x] + integral[(y * s) + x];
+    }
+
+    /**
+     * Returns true if a 8 pixels border of the given sprite area doesn't contain any opaque pixel (a smaller sprite
+     * would cover the same pixels)
+     */
+    public boolean hasEmptyBorder(int x, int y, int w, int h)
+    {
+        if (w > 8)
+        {
+            if ((getOpaqueCount(x, y, 8, h) == 0) || (getOpaqueCount((x + w) - 8, y, 8, h) == 0))
+                return true;
+        }
+        if (h > 8)
+        {
+            if ((getOpaqueCount(x, y, w, 8) == 0) || (getOpaqueCount(x, (y + h) - 8, w, 8) == 0))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the number of uncovered pixels (picked greedily in raster order) which are at least <code>dist</code>
+     * pixels away from each other, horizontally or vertically.<br>
+     * No area of <code>dist x dist</code> pixels can contain 2 of them so it's a lower bound of the number of tile
+     * (dist = 8) or sprite (dist = 32) needed to cover remaining pixels.
+     *
+     * @param blocked
+     *        work buffer (see {@link #newBlockedBuffer()})
+     */
+    public int getNumIndependent(long[] bits, int dist, long[] blocked)
+    {
+        // blocked columns for the next rows (ring buffer of 2 * dist rows)
+        final int ringMask = (2 * dist) - 1;
+        int num = 0;
+
+        Arrays.fill(blocked, 0, (2 * dist) * rowWords, 0L);
+
+        for (int j = 0; j < height; j++)
+        {
+            final int rowOff = (j & ringMask) * rowWords;
+
+            // row (j + dist) isn't reachable from picked points anymore, clear it for later use
+            Arrays.fill(blocked, ((j + dist) & ringMask) * rowWords, (((j + dist) & ringMask) + 1) * rowWords, 0L);
+
+            for (int wi = 0; wi < rowWords; wi++)
+            {
+                long v;
+
+                while ((v = bits[(j * rowWords) + wi] & ~blocked[rowOff + wi]) != 0L)
+                {
+                    final int x = (wi * 64) + Long.numberOfTrailingZeros(v);
+
+                    num++;
+                    // block area which can share a dist x dist square with this point
+                    final int x1 = Math.max(0, (x - dist) + 1);
+                    final int x2 = Math.min(width, x + dist);
+                    for (int r = j; r < Math.min(height, j + dist); r++)
+                        setBits(blocked, (r & ringMask) * rowWords, x1, x2);
+                }
+            }
+        }
+
+        return num;
+    }
+
+    // set bits [x1..x2[ of the given row
+    private static void setBits(long[] bits, int rowOff, int x1, int x2)
+    {
+        for (int wi = x1 >> 6; wi <= ((x2 - 1) >> 6); wi++)
+        {
+            final int base = wi << 6;
+            final int lo = Math.max(x1 - base, 0);
+            final int hi = Math.min(x2 - base, 64);
+            final long hiMask = (hi == 64) ? -1L : ((1L << hi) - 1);
+
+            bits[rowOff + wi] |= hiMask & (-1L << lo);
+        }
+    }
+
+    public int findFirstUncoveredRow(long[] bits, int startRow)
+    {
+        for (int j = startRow; j < height; j++)
+            for (int wi = 0; wi < rowWords; wi++)
+                if (bits[(j * rowWords) + wi] != 0L)
+                    return j;
+
+        return height;
+    }
+
+    public int findFirstUncoveredX(long[] bits, int row)
+    {
+        for (int wi = 0; wi < rowWords; wi++)
+        {
+            final long v = bits[(row * rowWords) + wi];
+
+            if (v != 0L)
+                return (wi * 64) + Long.numberOfTrailingZeros(v);
+        }
+
+        return width;
+    }
+
+    /**
+     * Returns w (<= 32) bits starting at x in the given row
+     */
+    public long extract(long[] bits, int row, int x, int w)
+    {
+        final int off = (row * rowWords) + (x >> 6);
+        final int shift = x & 63;
+        long v = bits[off] >>> shift;
+
+        if ((shift != 0) && (((x >> 6) + 1) < rowWords))
+            v |= bits[off + 1] << (64 - shift);
+
+        return v & ((1L << w) - 1);
+    }
+
+    /**
+     * Returns number of uncovered pixel in the given area
+     */
+    public int getCount(long[] bits, int x, int y, int w, int h)
+    {
+        int result = 0;
+
+        for (int j = y; j < y + h; j++)
+            result += Long.bitCount(extract(bits, j, x, w));
+
+        return result;
+    }
+
+    /**
+     * Marks pixels of the given area as covered
+     */
+    public void clear(long[] bits, int x, int y, int w, int h)
+    {
+        final int shift = x & 63;
+        final long m = (1L << w) - 1;
+        final long lo = m << shift;
+        final long hi = (shift != 0) ? (m >>> (64 - shift)) : 0L;
+
+        for (int j = y; j < y + h; j++)
+        {
+            final int off = (j * rowWords) + (x >> 6);
+
+            bits[off] &= ~lo;
+            if ((hi != 0L) && (((x >> 6) + 1) < rowWords))
+                bits[off + 1] &= ~hi;
+        }
+    }
+
+    /**
+     * Builds the sprite list from the given solution
+     */
+    public List<SpriteCell> getSprites(int[] x, int[] y, int[] size, int num)
+    {
+        final List<SpriteCell> result = new ArrayList<>();
+
+        for (int i = 0; i < num; i++)
+            result.add(new SpriteCell(x[i], y[i], getWidth(size[i]), getHeight(size[i]), optType));
+
+        return result;
+    }
+}
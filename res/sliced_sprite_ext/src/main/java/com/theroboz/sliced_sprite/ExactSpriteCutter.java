@@ -0,0 +1,255 @@
+package com.theroboz.sliced_sprite;
+
+import java.util.List;
+
+import sgdk.rescomp.type.SpriteCell;
+import sgdk.rescomp.type.SpriteCell.OptimizationType;
+
+/**
+ * Exact sprite cutter: finds the optimal solution of the frame {@link CoverProblem}.<br>
+ * Search is a depth first branch-and-bound: the first uncovered opaque pixel (in raster order) has to be covered by one
+ * of the sprites of the solution so we branch on all non dominated sprites covering it (see {@link CoverCandidates}).
+ * <br>
+ * Branches are cut using tile count / sprite count lower bounds (remaining pixels and number of remaining pixels that
+ * can't share a tile / a sprite).<br>
+ * Result is optimal unless the node or time limit is reached, in which case the best cut found so far is returned.
+ */
+public class ExactSpriteCutter
+{
+    public static class Result
+    {
+        public final List<SpriteCell> sprites;
+        public final int numTile;
+        // true if search completed (result is proven optimal)
+        public final boolean optimal;
+        public final long nodes;
+        // search time in ms
+        public final long time;
+
+        Result(List<SpriteCell> sprites, int numTile, boolean optimal, long nodes, long time)
+        {
+            this.sprites = sprites;
+            this.numTile = numTile;
+            this.optimal = optimal;
+            this.nodes = nodes;
+            this.time = time;
+        }
+    }
+
+    static final int MAX_SPRITE = CoverProblem.MAX_SPRITE;
+
+    final CoverProblem problem;
+    final long timeLimit;
+    final long nodeLimit;
+
+    // uncovered opaque pixels for each search depth
+    final long[][] uncovered;
+    // candidates for each search depth
+    final CoverCandidates[] candidates;
+    // work buffer for lower bound
+    final long[] blocked;
+
+    // current solution
+    final int[] solX;
+    final int[] solY;
+    final int[] solSize;
+    // best solution
+    final int[] bestX;
+    final int[] bestY;
+    final int[] bestSize;
+    int bestNum;
+    int bestCost;
+
+    long nodes;
+    long deadline;
+    boolean aborted;
+
+    /**
+     * @param mask
+     *        opacity mask of the frame
+     * @param timeLimit
+     *        search time limit in ms (0 = no limit)
+     * @param nodeLimit
+     *        search node limit (0 = no limit)
+     */
+    public ExactSpriteCutter(OpacityMask mask, OptimizationType optType, long timeLimit, long nodeLimit)
+    {
+        problem = new CoverProblem(mask, optType);
+        this.timeLimit = timeLimit;
+        this.nodeLimit = nodeLimit;
+
+        uncovered = new long[MAX_SPRITE + 1][];
+        uncovered[0] = problem.newUncovered();
+        for (int d = 1; d <= MAX_SPRITE; d++)
+            uncovered[d] = new long[uncovered[0].length];
+
+        candidates = new CoverCandidates[MAX_SPRITE + 1];
+        for (int d = 0; d <= MAX_SPRITE; d++)
+            candidates[d] = new CoverCandidates();
+        blocked = problem.newBlockedBuffer();
+
+        solX = new int[MAX_SPRITE];
+        solY = new int[MAX_SPRITE];
+        solSize = new int[MAX_SPRITE];
+        bestX = new int[MAX_SPRITE];
+        bestY = new int[MAX_SPRITE];
+        bestSize = new int[MAX_SPRITE];
+    }
+
+    /**
+     * Computes the cut, returns <code>null</code> if no cut using at most 16 sprites was found within the limits.
+     */
+    public Result cut()
+    {
+        final long start = System.currentTimeMillis();
+
+        deadline = (timeLimit > 0) ? start + timeLimit : Long.MAX_VALUE;
+        nodes = 0;
+        aborted = false;
+        bestNum = -1;
+        bestCost = Integer.MAX_VALUE;
+
+        // start with best greedy solution (using different weights) as upper bound
+        greedy(problem.tileWeight, problem.spriteWeight);
+        greedy(1, 2);
+        greedy(1, 1024);
+        greedy(1024, 1);
+        search(0, 0, problem.numOpaque, 0);
+
+        if (bestNum == -1)
+            return null;
+
+        int numTile = 0;
+        for (int i = 0; i < bestNum; i++)
+            numTile += CoverProblem.getNumTile(bestSize[i]);
+
+        return new Result(problem.getSprites(bestX, bestY, bestSize, bestNum), numTile, !aborted, nodes, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Greedy cut: take the candidate covering the most pixels per cost unit (using the given weights) until done.
+     */
+    private void greedy(int greedyTileWeight, int greedySpriteWeight)
+    {
+        final long[] bits = uncovered[1];
+        final CoverCandidates cand = candidates[1];
+        int remaining = problem.numOpaque;
+        int cost = 0;
+        int num = 0;
+        int startRow = 0;
+
+        System.arraycopy(uncovered[0], 0, bits, 0, bits.length);
+
+        while ((remaining > 0) && (num < MAX_SPRITE))
+        {
+            startRow = problem.findFirstUncoveredRow(bits, startRow);
+            final int n = cand.build(problem, bits, startRow, problem.findFirstUncoveredX(bits, startRow));
+
+            // should never happen
+            if (n == 0)
+                return;
+
+            // take candidate covering the most pixels per cost unit
+            int c = -1;
+            double bestScore = -1d;
+            for (int i = 0; i < n; i++)
+            {
+                final int ci = cand.order[i];
+                final double score = (double) cand.count[ci] / ((CoverProblem.getNumTile(cand.size[ci]) * greedyTileWeight) + greedySpriteWeight);
+
+                if (score > bestScore)
+                {
+                    bestScore = score;
+                    c = ci;
+                }
+            }
+
+            final int size = cand.size[c];
+
+            solX[num] = cand.x[c];
+            solY[num] = cand.y[c];
+            solSize[num] = size;
+            problem.clear(bits, cand.x[c], cand.y[c], CoverProblem.getWidth(size), CoverProblem.getHeight(size));
+            remaining -= cand.count[c];
+            cost += problem.getCost(size);
+            num++;
+        }
+
+        if (remaining == 0)
+            saveBest(num, cost);
+    }
+
+    private void search(int depth, int cost, int remaining, int startRow)
+    {
+        // all covered ? --> new best solution (we can only get here with a better cost)
+        if (remaining == 0)
+        {
+            saveBest(depth, cost);
+            return;
+        }
+        if (depth >= MAX_SPRITE)
+            return;
+
+        // check limits
+        nodes++;
+        if (((nodeLimit > 0) && (nodes > nodeLimit)) || (((nodes & 1023) == 0) && (System.currentTimeMillis() > deadline)))
+        {
+            aborted = true;
+            return;
+        }
+
+        final long[] bits = uncovered[depth];
+
+        // lower bounds
+        final int minSprite = Math.max((remaining + ((CoverProblem.MAX_SIZE * CoverProblem.MAX_SIZE) - 1)) / (CoverProblem.MAX_SIZE * CoverProblem.MAX_SIZE),
+                problem.getNumIndependent(bits, CoverProblem.MAX_SIZE, blocked));
+
+        if ((depth + minSprite) > MAX_SPRITE)
+            return;
+
+        final int minTile = Math.max((remaining + 63) / 64, problem.getNumIndependent(bits, 8, blocked));
+
+        if ((cost + problem.getLowerBound(minTile, minSprite)) >= bestCost)
+            return;
+
+        final int py = problem.findFirstUncoveredRow(bits, startRow);
+        final int px = problem.findFirstUncoveredX(bits, py);
+        final CoverCandidates cand = candidates[depth];
+        final int n = cand.build(problem, bits, py, px);
+        final long[] next = uncovered[depth + 1];
+
+        for (int i = 0; i < n; i++)
+        {
+            final int c = cand.order[i];
+            final int size = cand.size[c];
+            final int newCost = cost + problem.getCost(size);
+
+            if (newCost >= bestCost)
+                continue;
+
+            System.arraycopy(bits, 0, next, 0, bits.length);
+            problem.clear(next, cand.x[c], cand.y[c], CoverProblem.getWidth(size), CoverProblem.getHeight(size));
+
+            solX[depth] = cand.x[c];
+            solY[depth] = cand.y[c];
+            solSize[depth] = size;
+
+            search(depth + 1, newCost, remaining - cand.count[c], py);
+
+            if (aborted)
+                return;
+        }
+    }
+
+    private void saveBest(int num, int cost)
+    {
+        if (cost >= bestCost)
+            return;
+
+        bestCost = cost;
+        bestNum = num;
+        System.arraycopy(solX, 0, bestX, 0, num);
+        System.arraycopy(solY, 0, bestY, 0, num);
+        System.arraycopy(solSize, 0, bestSize, 0, num);
+    }
+}
@@ -0,0 +1,164 @@
+package com.theroboz.sliced_sprite;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Lightweight view of a frame inside a 8bpp sprite sheet (no pixel copy).<br>
+ * Mask, fingerprint and comparison operations read the sheet directly, a contiguous copy of the frame pixels is only
+ * made through {@link #toArray()} when it's really needed (tileset and sprite cutter input).<br>
+ * Frame width is always a multiple of 8 pixels.
+ */
+public class FrameView
+{
+    // used to read 8 pixels at once from 8bpp image
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    public final byte[] image8bpp;
+    // width of the image in pixel
+    public final int stride;
+    // frame position and size in pixel
+    public final int x;
+    public final int y;
+    public final int width;
+    public final int height;
+
+    public FrameView(byte[] image8bpp, int stride, int x, int y, int width, int height)
+    {
+        this.image8bpp = image8bpp;
+        this.stride = stride;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * View of a whole frame image
+     */
+    public FrameView(byte[] frameImage8bpp, int width, int height)
+    {
+        this(frameImage8bpp, width, 0, 0, width, height);
+    }
+
+    /**
+     * Returns views of all frames of the given animation (sheet row)
+     *
+     * @param w
+     *        width of image in tile
+     * @param wf
+     *        width of frame in tile
+     * @param hf
+     *        height of frame in tile
+     */
+    public static FrameView[] getFrames(byte[] image8bpp, int w, int animIndex, int wf, int hf)
+    {
+        final FrameView[] result = new FrameView[w / wf];
+
+        for (int f = 0; f < result.length; f++)
+            result[f] = new FrameView(image8bpp, w * 8, (f * wf) * 8, (animIndex * hf) * 8, wf * 8, hf * 8);
+
+        return result;
+    }
+
+    /**
+     * Returns offset of the given frame row in the image
+     */
+    public int getOffset(int row)
+    {
+        return ((y + row) * stride) + x;
+    }
+
+    /**
+     * Returns true if the view already covers a whole contiguous image
+     */
+    public boolean isContiguous()
+    {
+        return (x == 0) && (y == 0) && (stride == width) && (image8bpp.length == (width * height));
+    }
+
+    /**
+     * Returns frame pixels as a contiguous 8bpp image (backing array is returned if the view is already contiguous so
+     * result should not be modified).
+     */
+    public byte[] toArray()
+    {
+        if (isContiguous())
+            return image8bpp;
+
+        final byte[] result = new byte[width * height];
+
+        for (int j = 0; j < height; j++)
+            System.arraycopy(image8bpp, getOffset(j), result, j * width, width);
+
+        return result;
+    }
+
+    /**
+     * Builds the opacity mask of the frame
+     */
+    public OpacityMask getMask()
+    {
+        return new OpacityMask(image8bpp, stride, x, y, width, height);
+    }
+
+    /**
+     * Returns a 64 bits fingerprint of the frame pixels
+     */
+    public long getFingerprint()
+    {
+        long hash = 0;
+
+        for (int j = 0; j < height; j++)
+        {
+            int off = getOffset(j);
+
+            // frame row is always a multiple of 8 pixels so we can read it as longs
+            for (int i = 0; i < width; i += 8, off += 8)
+            {
+                hash = (hash ^ (long) LONG_VIEW.get(image8bpp, off)) * 0x9E3779B97F4A7C15L;
+                hash ^= hash >>> 29;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Returns true if both frames have same size and same pixels
+     */
+    public boolean contentEquals(FrameView frame)
+    {
+        if ((width != frame.width) || (height != frame.height))
+            return false;
+
+        for (int j = 0; j < height; j++)
+        {
+            final int off1 = getOffset(j);
+            final int off2 = frame.getOffset(j);
+
+            if (!Arrays.equals(image8bpp, off1, off1 + width, frame.image8bpp, off2, off2 + width))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Feeds frame pixels to the given digest
+     */
+    public void update(MessageDigest md)
+    {
+        for (int j = 0; j < height; j++)
+            md.update(image8bpp, getOffset(j), width);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "FrameView[" + x + "," + y + " - " + width + " x " + height + "]";
+    }
+}
@@ -1,11 +1,12 @@
 package com.theroboz.sliced_sprite;
 
-import javax.imageio.ImageIO;
-import java.awt.image.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+import com.theroboz.rescomp_common.DecodedImageCache;
 
 public final class IndexedOutlineDetector
 {
@@ -46,112 +47,112 @@ public final class IndexedOutlineDetector
         }
     }
 
-    private static int transIdx;
-
-    private static final int MIN_SIZE = 8;
-    private static final int MAX_SIZE = 32;
+    static final int MIN_SIZE = 8;
+    static final int MAX_SIZE = 32;
+    // minimum image height to use the streaming detector
+    static final int STREAMING_MIN_HEIGHT = 1024;
+    // minimum number of corner rows per band in parallel mode
+    private static final int MIN_BAND_HEIGHT = 64;
 
-    private static BufferedImage img;
-    private static byte[] pixels;
-    private static int w, h;
-    private static int cornerColor;
+    // detection state is immutable (shared by all bands)
+    private final byte[] pixels;
+    private final int w, h;
+    private final int transIdx;
 
-    private static boolean isSolid(int x, int y) {
-        return x >= 0 && y >= 0 && x < w && y < h && (pixels[y * w + x] & 0xFF) != transIdx;
-    }
-
-    private static int getColor(int x, int y) {
-        if (x < 0 || y < 0 || x >= w || y >= h) return transIdx;
-        return (pixels[y * w + x] & 0xFF);
-    }
+    public IndexedOutlineDetector(DecodedImageCache.IndexedImage img)
+    {
+        transIdx = img.transparentIndex;
+        if (transIdx == -1) throw new RuntimeException("No transparent color found");
 
-    // Checkerboard: valid if current or next pixel is solid
-    private static boolean hasLeftBorderPixel(int x, int y) {
-        return (getColor(x, y) == cornerColor || getColor(x, y+1) == cornerColor);
+        pixels = img.pixels;
+        w = img.width;
+        h = img.height;
     }
 
-    // Checkerboard: valid if current or next pixel is solid
-    private static boolean hasTopborderPixel(int x, int y) {
-        return (getColor(x, y) == cornerColor) || (getColor(x + 1, y) == cornerColor);
+    public static Rect[] detect(File file) throws IOException
+    {
+        return detect(file, SpriteCutSettings.PARALLEL);
     }
 
-    private static Rect tryExtend(int sx, int sy) {
-
-        int rx = sx+1;
-        while (rx < w && hasTopborderPixel(rx, sy)) rx++;
-        if (!isSolid(rx, sy) || (getColor(rx,sy+1)!=cornerColor && getColor(rx, sy+2)!=cornerColor)) rx--;
-        if (rx <= sx) return null;
-        if (rx - sx + 1 < MIN_SIZE) rx = sx + MIN_SIZE-1;
-
-        int ry = sy + 1;
-        while (ry < h && hasLeftBorderPixel(sx, ry)) ry++;
-        if (!isSolid(sx, ry) || (getColor(sx+1,ry)!=cornerColor && getColor(sx, ry+2)!=cornerColor)) ry--;
-        if (ry <= sy) return null;
-        if (ry - sy + 1 < MIN_SIZE) ry = sy + MIN_SIZE-1;
-        //System.out.println("found left vertical span from "+sx+", "+sy+" to  " + sx + ", "+ry);
-
-        // Verify right edge
-        for (int dy = sy + 1; dy < ry; dy++) {
-            if (!isSolid(rx, dy)) return null;
-        }
-
-        //System.out.println("found right vertical span from "+rx+", "+sy+" to " + dy );
-
-        // Verify bottom edge
-        for (int dx = sx + 1; dx < rx; dx++) {
-            if (!isSolid(dx, ry)) return null;
+    /**
+     * Detects outlines of the given indexed color image file
+     *
+     * @param parallel
+     *        if true large images are decoded then split in horizontal bands detected in parallel, otherwise tall
+     *        images are streamed (see {@link StreamingOutlineDetector})
+     */
+    public static Rect[] detect(File file, boolean parallel) throws IOException
+    {
+        // tall image ? --> use streaming detection when possible (memory only depends on image width)
+        if (!parallel)
+        {
+            try (IndexedPngRowReader reader = IndexedPngRowReader.open(file))
+            {
+                if ((reader != null) && (reader.height >= STREAMING_MIN_HEIGHT))
+                    return new StreamingOutlineDetector(reader).detect();
+            }
         }
 
-        //System.out.println("found bottom horizontal span from "+sx+", "+by+" to " + bx );
-        //System.out.println("found RECT "+sx+", "+sy+", " + (rx - sx + 1) +", "+ (ry - sy + 1));
+        // decoded image (shared with other resources using the same file)
+        final IndexedOutlineDetector detector = new IndexedOutlineDetector(SpriteCutSettings.getImageCache().get(file).getIndexed());
 
-        return new Rect(sx, sy, rx - sx + 1, ry - sy + 1);
+        return parallel ? detector.detectParallel() : detector.detect();
     }
 
-    public static Rect[] detect(File file) throws IOException
+    /**
+     * Detects all outlines of the image
+     */
+    public Rect[] detect()
     {
-        img = ImageIO.read(file);
-        if (!(img.getColorModel() instanceof IndexColorModel)) throw new IllegalArgumentException("Must be indexed-color PNG");
-
-        IndexColorModel cm = (IndexColorModel) img.getColorModel();
-        transIdx = cm.getTransparentPixel();
-        if (transIdx == -1) throw new RuntimeException("No transparent color found");
+        return detectBand(0, h - MIN_SIZE).toArray(new Rect[0]);
+    }
 
-        pixels = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
-        w = img.getWidth();
-        h = img.getHeight();
+    /**
+     * Detects all outlines of the image, scanning horizontal bands in parallel.<br>
+     * Each band has its own {@link OutlineScanner}: it computes the row runs of its rows (and carries the column runs
+     * down from 2 rows above its first corner row) so all the run building work is split between bands, the only
+     * duplicated work is the few rows a band reads below its last corner row. A band only owns the corner rows it
+     * scans but reads the rows below it (shared image) until its outlines are resolved, so outlines crossing band
+     * seams are found entirely by the band holding their top-left corner. Bands results are concatenated in order so
+     * the result is identical to {@link #detect()}.
+     */
+    public Rect[] detectParallel()
+    {
+        return detectParallel(Math.min(SpriteCutSettings.THREADS, (h - MIN_SIZE) / MIN_BAND_HEIGHT));
+    }
 
-        List<Rect> result = new ArrayList<>();
+    // detects all outlines of the image with the given number of bands
+    Rect[] detectParallel(int numBand)
+    {
         int maxY = h - MIN_SIZE;
-        int maxX = w - MIN_SIZE;
 
+        // not worth it
+        if (numBand <= 1) return detect();
 
-        for (int y = 0; y < maxY; y++) {
-            for (int x = 0; x <maxX; x++) {
+        List<ForkJoinTask<List<Rect>>> tasks = new ArrayList<>();
+        for (int b = 0; b < numBand; b++) {
+            final int y0 = (int) (((long) maxY * b) / numBand);
+            final int y1 = (int) (((long) maxY * (b + 1)) / numBand);
 
-                cornerColor = getColor(x,y);
+            tasks.add(ParallelSpriteCutter.getPool().submit(() -> detectBand(y0, y1)));
+        }
 
-                // Geometric top-left corner
-                if (cornerColor == transIdx) continue;
-                if (getColor(x - 1, y) == cornerColor) continue;
-                if (getColor(x - 2, y) == cornerColor) continue;
-                if (getColor(x, y - 1) == cornerColor) continue;
-                if (getColor(x, y - 2) == cornerColor) continue;
+        // merge in band order
+        List<Rect> result = new ArrayList<>();
+        for (ForkJoinTask<List<Rect>> task : tasks)
+            result.addAll(task.join());
 
-                //System.out.println("Possible TOP CORNER at "+x+", "+y);
+        return result.toArray(new Rect[0]);
+    }
 
-                Rect raw = tryExtend(x, y);
-                if (raw == null) continue;
+    // detects outlines whose top-left corner is in rows [y0..y1[
+    private List<Rect> detectBand(int y0, int y1)
+    {
+        final OutlineScanner scanner = new OutlineScanner(w, h, transIdx, y0, y1);
 
-                // Clamp to 8–32 range
-                int clampedW = Math.max(MIN_SIZE, Math.min(MAX_SIZE, raw.width));
-                int clampedH = Math.max(MIN_SIZE, Math.min(MAX_SIZE, raw.height));
+        while (scanner.needsRow())
+            scanner.addRow(pixels, scanner.getNextRow() * w);
 
-                result.add(new Rect(raw.x, raw.y, clampedW, clampedH));
-                x += 1;
-            }
-        }
-        return result.toArray(new Rect[0]);
+        return scanner.getResult();
     }
-
 }
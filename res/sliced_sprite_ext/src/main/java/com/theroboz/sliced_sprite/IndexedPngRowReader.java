@@ -0,0 +1,299 @@
+package com.theroboz.sliced_sprite;
+
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Sequential row reader for 8 bits indexed color, non interlaced PNG images: rows are inflated and unfiltered one at a
+ * time so only 2 rows are kept in memory whatever the image height.<br>
+ * The transparent color index is taken from the image type reported by the ImageIO PNG reader (header only, pixels
+ * aren't decoded) so it's the same than the one given by the color model of <code>ImageIO.read(..)</code>.
+ */
+public class IndexedPngRowReader implements Closeable
+{
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    public final int width;
+    public final int height;
+    // transparent color index (-1 if none)
+    public final int transparentIndex;
+
+    private final DataInputStream in;
+    private final InputStream pixels;
+    private byte[] prior;
+    private byte[] current;
+    private int row;
+
+    /**
+     * Opens the given PNG file, returns <code>null</code> if it isn't a 8 bits indexed color non interlaced PNG
+     */
+    public static IndexedPngRowReader open(File file) throws IOException
+    {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try
+        {
+            final byte[] sig = new byte[SIGNATURE.length];
+            in.readFully(sig);
+            for (int i = 0; i < sig.length; i++)
+                if (sig[i] != SIGNATURE[i])
+                    return close(in);
+
+            // IHDR is always the first chunk
+            final int len = in.readInt();
+            if ((len != 13) || !readType(in).equals("IHDR"))
+                return close(in);
+
+            final int w = in.readInt();
+            final int h = in.readInt();
+            final int bitDepth = in.readUnsignedByte();
+            final int colorType = in.readUnsignedByte();
+            in.readUnsignedByte(); // compression
+            in.readUnsignedByte(); // filter
+            final int interlace = in.readUnsignedByte();
+            in.readInt(); // crc
+
+            if ((bitDepth != 8) || (colorType != 3) || (interlace != 0) || (w <= 0) || (h <= 0))
+                return close(in);
+
+            final int trans = getTransparentIndex(file);
+            if (trans == -2)
+                return close(in);
+
+            return new IndexedPngRowReader(in, w, h, trans);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static IndexedPngRowReader close(InputStream in) throws IOException
+    {
+        in.close();
+        return null;
+    }
+
+    private static String readType(DataInputStream in) throws IOException
+    {
+        final byte[] type = new byte[4];
+        in.readFully(type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
+    // returns transparent index of the PNG color model, -2 if not an indexed color model
+    private static int getTransparentIndex(File file) throws IOException
+    {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file))
+        {
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext())
+                return -2;
+
+            final ImageReader reader = readers.next();
+            try
+            {
+                reader.setInput(iis, true, true);
+
+                final Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+                if (!types.hasNext())
+                    return -2;
+
+                final ColorModel cm = types.next().getColorModel();
+                if (!(cm instanceof IndexColorModel))
+                    return -2;
+
+                return ((IndexColorModel) cm).getTransparentPixel();
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    private IndexedPngRowReader(DataInputStream in, int width, int height, int transparentIndex)
+    {
+        this.in = in;
+        this.width = width;
+        this.height = height;
+        this.transparentIndex = transparentIndex;
+
+        pixels = new InflaterInputStream(new IdatInputStream(in), new Inflater(), 8192);
+        // filter byte + pixels
+        prior = new byte[width + 1];
+        current = new byte[width + 1];
+        row = 0;
+    }
+
+    /**
+     * Reads the next row into <code>dest</code> (at least <code>width</code> bytes)
+     */
+    public void readRow(byte[] dest) throws IOException
+    {
+        if (row >= height)
+            throw new EOFException("No more row");
+
+        readFully(pixels, current);
+
+        final int filter = current[0] & 0xFF;
+        for (int i = 1; i <= width; i++)
+        {
+            final int a = (i > 1) ? current[i - 1] & 0xFF : 0;
+            final int b = prior[i] & 0xFF;
+            final int c = (i > 1) ? prior[i - 1] & 0xFF : 0;
+            final int x = current[i] & 0xFF;
+
+            switch (filter)
+            {
+                case 0:
+                    break;
+                case 1:
+                    current[i] = (byte) (x + a);
+                    break;
+                case 2:
+                    current[i] = (byte) (x + b);
+                    break;
+                case 3:
+                    current[i] = (byte) (x + ((a + b) >> 1));
+                    break;
+                case 4:
+                    current[i] = (byte) (x + paeth(a, b, c));
+                    break;
+                default:
+                    throw new IOException("Invalid PNG filter type " + filter + " at row " + row);
+            }
+        }
+
+        System.arraycopy(current, 1, dest, 0, width);
+
+        final byte[] tmp = prior;
+        prior = current;
+        current = tmp;
+        row++;
+    }
+
+    private static int paeth(int a, int b, int c)
+    {
+        final int p = (a + b) - c;
+        final int pa = Math.abs(p - a);
+        final int pb = Math.abs(p - b);
+        final int pc = Math.abs(p - c);
+
+        if ((pa <= pb) && (pa <= pc))
+            return a;
+        if (pb <= pc)
+            return b;
+        return c;
+    }
+
+    private static void readFully(InputStream in, byte[] buf) throws IOException
+    {
+        int off = 0;
+
+        while (off < buf.length)
+        {
+            final int n = in.read(buf, off, buf.length - off);
+            if (n < 0)
+                throw new EOFException("Truncated PNG image data");
+            off += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * Concatenated data of the IDAT chunks (other chunks are skipped)
+     */
+    private static class IdatInputStream extends InputStream
+    {
+        private final DataInputStream in;
+        // remaining bytes in current IDAT chunk
+        private int remaining;
+        private boolean end;
+
+        IdatInputStream(DataInputStream in)
+        {
+            this.in = in;
+            remaining = 0;
+            end = false;
+        }
+
+        private boolean nextChunk() throws IOException
+        {
+            while (!end)
+            {
+                final int len = in.readInt();
+                final String type = readType(in);
+
+                if (type.equals("IDAT"))
+                {
+                    remaining = len;
+                    if (len > 0)
+                        return true;
+                    in.readInt(); // crc
+                    continue;
+                }
+                if (type.equals("IEND"))
+                {
+                    end = true;
+                    break;
+                }
+
+                // skip chunk data and crc
+                in.skipNBytes(len + 4L);
+            }
+
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final byte[] b = new byte[1];
+            return (read(b, 0, 1) == 1) ? b[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0)
+                return 0;
+            if ((remaining == 0) && !nextChunk())
+                return -1;
+
+            final int n = in.read(b, off, Math.min(len, remaining));
+            if (n < 0)
+                throw new EOFException("Truncated PNG file");
+
+            remaining -= n;
+            // end of IDAT chunk --> skip its crc
+            if (remaining == 0)
+                in.readInt();
+
+            return n;
+        }
+    }
+}
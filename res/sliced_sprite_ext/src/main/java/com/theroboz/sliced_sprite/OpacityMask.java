@@ -0,0 +1,264 @@
+package com.theroboz.sliced_sprite;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bit packed opacity mask of a sprite frame (a pixel is opaque when its color index in the palette is not 0).<br>
+ * Pixels are stored twice: one <code>long</code> per 8x8 tile (bit = (y * 8) + x, row 0 in the lowest byte) for
+ * equality, population and per-tile queries, and one bitset per row (bit = x) for rectangle coverage queries.<br>
+ * Width and height must be multiple of 8 (frames are always tile aligned).
+ */
+public class OpacityMask
+{
+    public final int width;
+    public final int height;
+    // size in tile
+    final int wt;
+    final int ht;
+    // one 64 bits word per tile (tiles stored per row)
+    final long[] tiles;
+    // bitset per pixel row
+    final int rowWords;
+    final long[] rows;
+    final int popCount;
+    final int hc;
+
+    /**
+     * Builds the opacity mask of a region of a 8bpp image
+     *
+     * @param image8bpp
+     *        8bpp image
+     * @param stride
+     *        image width in pixel
+     * @param x
+     *        region position X in pixel
+     * @param y
+     *        region position Y in pixel
+     * @param width
+     *        region width in pixel (multiple of 8)
+     * @param height
+     *        region height in pixel (multiple of 8)
+     */
+    public OpacityMask(byte[] image8bpp, int stride, int x, int y, int width, int height)
+    {
+        if (((width & 7) != 0) || ((height & 7) != 0))
+            throw new IllegalArgumentException("Opacity mask size (" + width + " x " + height + ") should be a multiple of 8");
+
+        this.width = width;
+        this.height = height;
+        wt = width / 8;
+        ht = height / 8;
+        tiles = new long[wt * ht];
+        rowWords = (width + 63) / 64;
+        rows = new long[height * rowWords];
+
+        for (int j = 0; j < height; j++)
+        {
+            int off = ((y + j) * stride) + x;
+            final int rowOff = j * rowWords;
+            final int tileRowOff = (j >> 3) * wt;
+            final int tileShift = (j & 7) * 8;
+
+            for (int tx = 0; tx < wt; tx++)
+            {
+                // get 8 pixels opacity as a byte
+                int b = 0;
+                for (int i = 0; i < 8; i++)
+                    if ((image8bpp[off++] & 0xF) != 0)
+                        b |= 1 << i;
+
+                if (b != 0)
+                {
+                    tiles[tileRowOff + tx] |= ((long) b) << tileShift;
+                    rows[rowOff + (tx >> 3)] |= ((long) b) << ((tx & 7) * 8);
+                }
+            }
+        }
+
+        int pop = 0;
+        for (long t : tiles)
+            pop += Long.bitCount(t);
+        popCount = pop;
+
+        hc = (width << 16) ^ height ^ Arrays.hashCode(tiles);
+    }
+
+    /**
+     * Builds the opacity mask of the given frame image
+     */
+    public OpacityMask(byte[] frameImage8bpp, int width, int height)
+    {
+        this(frameImage8bpp, width, 0, 0, width, height);
+    }
+
+    /**
+     * Returns the number of opaque pixel
+     */
+    public int getPopCount()
+    {
+        return popCount;
+    }
+
+    /**
+     * Returns true if there is no opaque pixel
+     */
+    public boolean isEmpty()
+    {
+        return popCount == 0;
+    }
+
+    /**
+     * Returns true if pixel at given position is opaque
+     */
+    public boolean isOpaque(int x, int y)
+    {
+        return ((rows[(y * rowWords) + (x >> 6)] >>> (x & 63)) & 1) != 0;
+    }
+
+    /**
+     * Returns the 8x8 opacity bits of the given tile (bit = (y * 8) + x)
+     */
+    public long getTile(int tx, int ty)
+    {
+        return tiles[(ty * wt) + tx];
+    }
+
+    /**
+     * Returns true if the given tile contains at least one opaque pixel
+     */
+    public boolean isTileOccupied(int tx, int ty)
+    {
+        return getTile(tx, ty) != 0L;
+    }
+
+    /**
+     * Returns the number of tiles containing at least one opaque pixel
+     */
+    public int getNumOccupiedTile()
+    {
+        int result = 0;
+
+        for (long t : tiles)
+            if (t != 0L)
+                result++;
+
+        return result;
+    }
+
+    /**
+     * Returns the number of opaque pixels in the given rectangle (clipped to the mask bounds)
+     */
+    public int getCoverage(int x, int y, int w, int h)
+    {
+        final int x1 = Math.max(0, x);
+        final int y1 = Math.max(0, y);
+        final int x2 = Math.min(width, x + w);
+        final int y2 = Math.min(height, y + h);
+        int result = 0;
+
+        for (int j = y1; j < y2; j++)
+        {
+            final int rowOff = j * rowWords;
+
+            for (int wi = x1 >> 6; wi <= ((x2 - 1) >> 6); wi++)
+                result += Long.bitCount(rows[rowOff + wi] & getWordMask(wi, x1, x2));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns true if the given rectangle doesn't contain any opaque pixel
+     */
+    public boolean isEmpty(int x, int y, int w, int h)
+    {
+        final int x1 = Math.max(0, x);
+        final int y1 = Math.max(0, y);
+        final int x2 = Math.min(width, x + w);
+        final int y2 = Math.min(height, y + h);
+
+        for (int j = y1; j < y2; j++)
+        {
+            final int rowOff = j * rowWords;
+
+            for (int wi = x1 >> 6; wi <= ((x2 - 1) >> 6); wi++)
+                if ((rows[rowOff + wi] & getWordMask(wi, x1, x2)) != 0L)
+                    return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns true if all opaque pixels are inside the given rectangles
+     */
+    public boolean isCovered(List<? extends Rectangle> rects)
+    {
+        final long[] uncovered = rows.clone();
+
+        for (Rectangle r : rects)
+        {
+            final int x1 = Math.max(0, r.x);
+            final int y1 = Math.max(0, r.y);
+            final int x2 = Math.min(width, r.x + r.width);
+            final int y2 = Math.min(height, r.y + r.height);
+
+            for (int j = y1; j < y2; j++)
+            {
+                final int rowOff = j * rowWords;
+
+                for (int wi = x1 >> 6; wi <= ((x2 - 1) >> 6); wi++)
+                    uncovered[rowOff + wi] &= ~getWordMask(wi, x1, x2);
+            }
+        }
+
+        for (long w : uncovered)
+            if (w != 0L)
+                return false;
+
+        return true;
+    }
+
+    // bits of row word 'wi' in [x1..x2[ range
+    private static long getWordMask(int wi, int x1, int x2)
+    {
+        final int base = wi << 6;
+        final int lo = Math.max(x1 - base, 0);
+        final int hi = Math.min(x2 - base, 64);
+
+        if (hi <= lo)
+            return 0L;
+
+        final long hiMask = (hi == 64) ? -1L : ((1L << hi) - 1);
+        return hiMask & (-1L << lo);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hc;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == this)
+            return true;
+
+        if (obj instanceof OpacityMask)
+        {
+            final OpacityMask mask = (OpacityMask) obj;
+            return (hc == mask.hc) && (width == mask.width) && (height == mask.height) && (popCount == mask.popCount) && Arrays.equals(tiles, mask.tiles);
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "OpacityMask[" + width + " x " + height + ", opaque=" + popCount + "]";
+    }
+}
@@ -0,0 +1,297 @@
+package com.theroboz.sliced_sprite;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Outline detection engine shared by {@link IndexedOutlineDetector} (whole image or horizontal bands) and
+ * {@link StreamingOutlineDetector} (PNG rows): image rows are pushed in order into a ring buffer of {@link #WINDOW}
+ * rows, with their run lengths, so memory only depends on the image width.<br>
+ * Runs are computed once per row when it arrives: border / solid runs to the right are row-local, border / solid runs
+ * going down a column are carried from the previous rows (as runs ending on the row). Candidate corners are evaluated
+ * as soon as the 2 rows below them are available, then each candidate is resolved once the rows around its bottom edge
+ * have been seen. Result is identical to the original detection (borders walked pixel by pixel from each corner).
+ */
+final class OutlineScanner
+{
+    // rows kept in memory (a candidate is resolved at most 4 rows below the last row it reads)
+    static final int WINDOW = 8;
+
+    private static class Candidate
+    {
+        final int sx, sy;
+        final int cornerColor;
+        final int rx;
+        // last row of the left border (see borderStart)
+        int bottom;
+
+        Candidate(int sx, int sy, int cornerColor, int rx)
+        {
+            this.sx = sx;
+            this.sy = sy;
+            this.cornerColor = cornerColor;
+            this.rx = rx;
+            bottom = sy;
+        }
+    }
+
+    private final int w, h;
+    private final int transIdx;
+    // corner rows [y0..y1[ scanned by this scanner
+    private final int y0, y1;
+    // first row pushed
+    private final int first;
+
+    private final byte[][] rows;
+    // border run length (same color allowing 1 pixel gaps: a border pixel is valid if it or the next one has the
+    // corner color) to the right of each pixel
+    private final int[][] borderRight;
+    // solid (non transparent) run length to the right of each pixel
+    private final int[][] solidRight;
+    // first row of the vertical border (same rule as borderRight) ending on each pixel
+    private final int[][] borderStart;
+    // solid run length going up from each pixel
+    private final int[][] solidUp;
+    // last row pushed
+    private int last;
+
+    private final List<Candidate> pending;
+    // found outlines with their corner position (packed as y * w + x) to restore the scan order
+    private final List<long[]> found;
+
+    /**
+     * Scanner of the outlines whose top-left corner is in rows [y0..y1[ of a <code>w</code> x <code>h</code> image,
+     * rows are then pushed from row <code>max(0, y0 - 2)</code> while {@link #needsRow()} is true.
+     */
+    OutlineScanner(int w, int h, int transIdx, int y0, int y1)
+    {
+        this.w = w;
+        this.h = h;
+        this.transIdx = transIdx;
+        this.y0 = y0;
+        this.y1 = y1;
+
+        // corner test reads the 2 rows above the corner
+        first = Math.max(0, y0 - 2);
+        last = first - 1;
+
+        rows = new byte[WINDOW][w];
+        borderRight = new int[WINDOW][w];
+        solidRight = new int[WINDOW][w];
+        borderStart = new int[WINDOW][w];
+        solidUp = new int[WINDOW][w];
+        pending = new ArrayList<>();
+        found = new ArrayList<>();
+    }
+
+    /**
+     * Returns the index of the next row to push
+     */
+    int getNextRow()
+    {
+        return last + 1;
+    }
+
+    /**
+     * Returns true while more rows are needed (corner rows not all scanned or unresolved candidates)
+     */
+    boolean needsRow()
+    {
+        if ((last + 1) >= h)
+            return false;
+
+        // corners of a row are scanned when the 2 rows below it are available
+        return ((y0 < y1) && (last < (y1 + 1))) || !pending.isEmpty();
+    }
+
+    /**
+     * Pushes the next row (<code>w</code> pixels from <code>offset</code>)
+     */
+    void addRow(byte[] src, int offset)
+    {
+        final int y = ++last;
+
+        System.arraycopy(src, offset, rows[y % WINDOW], 0, w);
+        buildRuns(y);
+
+        // follow pending candidates on the new row
+        update();
+
+        // corners of row (y - 2) can be evaluated now
+        if (((y - 2) >= y0) && ((y - 2) < y1))
+            scanCorners(y - 2);
+    }
+
+    /**
+     * Returns found outlines in scan order (all rows must have been pushed)
+     */
+    List<IndexedOutlineDetector.Rect> getResult()
+    {
+        if (!pending.isEmpty())
+            throw new IllegalStateException("Unresolved outline candidates");
+
+        // restore scan order, then skip outlines found just after another one (same as the x += 1 of the scan loop)
+        found.sort((a, b) -> Long.compare(a[0], b[0]));
+
+        final List<IndexedOutlineDetector.Rect> result = new ArrayList<>();
+        long lastKept = -2;
+        for (long[] f : found)
+        {
+            if (f[0] == (lastKept + 1))
+                continue;
+
+            lastKept = f[0];
+            result.add(new IndexedOutlineDetector.Rect((int) f[1], (int) f[2], (int) f[3], (int) f[4]));
+        }
+
+        return result;
+    }
+
+    private boolean isSolid(int x, int y) {
+        return x >= 0 && y >= 0 && x < w && y < h && (row(y)[x] & 0xFF) != transIdx;
+    }
+
+    private int getColor(int x, int y) {
+        if (x < 0 || y < 0 || x >= w || y >= h) return transIdx;
+        return (row(y)[x] & 0xFF);
+    }
+
+    private byte[] row(int y)
+    {
+        if ((y > last) || (y <= (last - WINDOW)) || (y < first))
+            throw new IllegalStateException("Row " + y + " is out of the detection window");
+
+        return rows[y % WINDOW];
+    }
+
+    /**
+     * Computes run lengths of row <code>y</code>: runs to the right in a single backward pass over the row, runs going
+     * down continued from the 2 previous rows.
+     */
+    private void buildRuns(int y)
+    {
+        final int r = y % WINDOW;
+        final byte[] pixels = rows[r];
+        final int[] bRight = borderRight[r];
+        final int[] sRight = solidRight[r];
+        final int[] bStart = borderStart[r];
+        final int[] sUp = solidUp[r];
+        // previous rows (null if not pushed)
+        final byte[] prev1 = (y - 1 >= first) ? rows[(y - 1) % WINDOW] : null;
+        final byte[] prev2 = (y - 2 >= first) ? rows[(y - 2) % WINDOW] : null;
+        final int[] sUpPrev = (prev1 != null) ? solidUp[(y - 1) % WINDOW] : null;
+
+        for (int x = w - 1; x >= 0; x--) {
+            final byte c = pixels[x];
+            final boolean solid = (c & 0xFF) != transIdx;
+
+            sRight[x] = solid ? (((x + 1) < w) ? sRight[x + 1] + 1 : 1) : 0;
+
+            // run continues on the next pixel, or skips a 1 pixel gap
+            int end;
+            if ((x + 1) >= w) end = x + 1;
+            else if (pixels[x + 1] == c) end = x + 1 + bRight[x + 1];
+            else if (((x + 2) < w) && (pixels[x + 2] == c)) end = x + 2 + bRight[x + 2];
+            else end = x + 1;
+            bRight[x] = end - x;
+
+            sUp[x] = solid ? ((sUpPrev != null) ? sUpPrev[x] + 1 : 1) : 0;
+
+            // same for the vertical border ending here (started on the row above, or 2 rows above with a gap)
+            if ((prev1 != null) && (prev1[x] == c)) bStart[x] = borderStart[(y - 1) % WINDOW][x];
+            else if ((prev2 != null) && (prev2[x] == c)) bStart[x] = borderStart[(y - 2) % WINDOW][x];
+            else bStart[x] = y;
+        }
+    }
+
+    private void scanCorners(int y)
+    {
+        final int maxX = w - IndexedOutlineDetector.MIN_SIZE;
+        final int[] bRight = borderRight[y % WINDOW];
+
+        for (int x = 0; x < maxX; x++) {
+
+            int cornerColor = getColor(x,y);
+
+            // Geometric top-left corner
+            if (cornerColor == transIdx) continue;
+            if (getColor(x - 1, y) == cornerColor) continue;
+            if (getColor(x - 2, y) == cornerColor) continue;
+            if (getColor(x, y - 1) == cornerColor) continue;
+            if (getColor(x, y - 2) == cornerColor) continue;
+
+            // top border
+            int rx = x + bRight[x];
+            if (!isSolid(rx, y) || (getColor(rx,y+1)!=cornerColor && getColor(rx, y+2)!=cornerColor)) rx--;
+            if (rx <= x) continue;
+            if (rx - x + 1 < IndexedOutlineDetector.MIN_SIZE) rx = x + IndexedOutlineDetector.MIN_SIZE-1;
+
+            final Candidate c = new Candidate(x, y, cornerColor, rx);
+            // left border on rows already pushed
+            for (int ry = y + 1; ry <= last; ry++)
+                follow(c, ry);
+
+            if (!advance(c))
+                pending.add(c);
+        }
+    }
+
+    private void update()
+    {
+        for (Iterator<Candidate> it = pending.iterator(); it.hasNext();)
+        {
+            final Candidate c = it.next();
+
+            follow(c, last);
+            if (advance(c))
+                it.remove();
+        }
+    }
+
+    // left border continues on row y ?
+    private void follow(Candidate c, int y)
+    {
+        final int r = y % WINDOW;
+
+        if (((rows[r][c.sx] & 0xFF) == c.cornerColor) && (borderStart[r][c.sx] == c.sy))
+            c.bottom = y;
+    }
+
+    /**
+     * Resolves the candidate when the rows around its bottom edge are available.
+     *
+     * @return true if candidate is resolved
+     */
+    private boolean advance(Candidate c)
+    {
+        // left border ends 2 rows without corner color after its last row, then bottom edge needs 2 more rows
+        if (last < Math.min(h - 1, Math.max(c.bottom + 3, c.sy + IndexedOutlineDetector.MIN_SIZE - 1)))
+            return false;
+
+        resolve(c);
+        return true;
+    }
+
+    private void resolve(Candidate c)
+    {
+        final int sx = c.sx, sy = c.sy, rx = c.rx, cornerColor = c.cornerColor;
+        int ry = c.bottom + 1;
+
+        if (!isSolid(sx, ry) || (getColor(sx+1,ry)!=cornerColor && getColor(sx, ry+2)!=cornerColor)) ry--;
+        if (ry <= sy) return;
+        if (ry - sy + 1 < IndexedOutlineDetector.MIN_SIZE) ry = sy + IndexedOutlineDetector.MIN_SIZE-1;
+
+        // Verify right edge
+        if ((ry - sy - 1) > 0 && solidUp[(ry - 1) % WINDOW][rx] < (ry - sy - 1)) return;
+
+        // Verify bottom edge
+        if ((rx - sx - 1) > 0 && solidRight[ry % WINDOW][sx + 1] < (rx - sx - 1)) return;
+
+        // Clamp to 8–32 range
+        int clampedW = Math.max(IndexedOutlineDetector.MIN_SIZE, Math.min(IndexedOutlineDetector.MAX_SIZE, rx - sx + 1));
+        int clampedH = Math.max(IndexedOutlineDetector.MIN_SIZE, Math.min(IndexedOutlineDetector.MAX_SIZE, ry - sy + 1));
+
+        found.add(new long[] {((long) sy * w) + sx, sx, sy, clampedW, clampedH});
+    }
+}
@@ -0,0 +1,194 @@
+package com.theroboz.sliced_sprite;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import sgdk.rescomp.type.SpriteCell;
+import sgdk.rescomp.type.SpriteCell.OptimizationType;
+
+/**
+ * Computes the sprite cutting of all automatically cut frames of a sprite sheet on a fork-join pool.<br>
+ * Only the cutting is done here: resources are still created and registered by {@link SpriteCutAnimation} in the usual
+ * order, which just picks up the precomputed cut, so generated ids and output are identical to the sequential build.
+ */
+public class ParallelSpriteCutter
+{
+    private static ForkJoinPool pool = null;
+
+    static synchronized ForkJoinPool getPool()
+    {
+        if (pool == null)
+            // FIFO mode so jobs are started in submission order (heaviest first)
+            pool = new ForkJoinPool(SpriteCutSettings.THREADS, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+        return pool;
+    }
+
+    static class CutJob
+    {
+        final String id;
+        final FrameView frame;
+        final OpacityMask mask;
+        final long weight;
+        ForkJoinTask<List<SpriteCell>> task;
+
+        CutJob(String id, FrameView frame, OpacityMask mask, long weight)
+        {
+            this.id = id;
+            this.frame = frame;
+            this.mask = mask;
+            this.weight = weight;
+        }
+    }
+
+    final int wf;
+    final int hf;
+    final OptimizationType optType;
+    final SpriteCutLevel optLevel;
+    // (animation index, frame index) --> job
+    final Map<Long, CutJob> jobs;
+
+    /**
+     * @param sheet
+     *        frame cell statistics of the sprite sheet
+     * @param wf
+     *        width of frame in tile
+     * @param hf
+     *        height of frame in tile
+     */
+    public ParallelSpriteCutter(String id, byte[] image8bpp, SpriteSheetAnalysis sheet, int wf, int hf, OptimizationType optType, SpriteCutLevel optLevel,
+            boolean optDuplicate, SpriteCutReader spriteDefReader)
+    {
+        this.wf = wf;
+        this.hf = hf;
+        this.optType = optType;
+        this.optLevel = optLevel;
+        jobs = new HashMap<>();
+
+        final long levelWeight = getLevelWeight(optLevel);
+        // frames sharing the same opacity mask get the same cut so we only compute it once
+        final Map<OpacityMask, CutJob> jobByMask = new HashMap<>();
+        final List<CutJob> uniqueJobs = new ArrayList<>();
+        final int w = sheet.width / 8;
+
+        // same frame walk than SpriteCutAnimation
+        for (int a = 0; a < sheet.numAnim; a++)
+        {
+            final int numFrame = sheet.getNumFrame(a);
+
+            // empty animation (not built)
+            if (numFrame == 0)
+                continue;
+
+            final String animId = id + "_animation" + a;
+            final List<SpriteFrameDefinition> frameDefinitions = spriteDefReader.getAnimationFrameDefinitions(a);
+            final FrameView[] frames = FrameView.getFrames(image8bpp, w, a, wf, hf);
+            final OpacityMask[] masks = SpriteCutAnimation.getFrameMasks(frames, numFrame);
+            final long[] fingerprints = optDuplicate ? SpriteCutAnimation.getFrameFingerprints(frames, numFrame) : null;
+
+            for (int f = 0; f < numFrame; f++)
+            {
+                final int duplicate = optDuplicate ? SpriteCutAnimation.getNumDuplicate(frames, f, numFrame, fingerprints) : 0;
+
+                // frame defined in the definition file ? --> no cutting needed
+                if ((f < frameDefinitions.size()) && (frameDefinitions.get(f) != null) && !frameDefinitions.get(f).cells.isEmpty())
+                {
+                    f += duplicate;
+                    continue;
+                }
+
+                final OpacityMask mask = masks[f];
+                CutJob job = jobByMask.get(mask);
+
+                if (job == null)
+                {
+                    job = new CutJob(animId + "_frame" + f, frames[f], mask, levelWeight * Math.max(1, mask.getPopCount()));
+                    jobByMask.put(mask, job);
+                    uniqueJobs.add(job);
+                }
+
+                jobs.put(Long.valueOf(getKey(a, f)), job);
+                // bypass duplicates
+                f += duplicate;
+            }
+        }
+
+        // schedule heaviest jobs first (stable sort so equal weights keep frame order)
+        uniqueJobs.sort(Comparator.comparingLong((CutJob j) -> j.weight).reversed());
+
+        final ForkJoinPool p = getPool();
+        for (CutJob job : uniqueJobs)
+            job.task = p.submit(() -> SpriteCutFrame.computeSpriteCutting(job.id, job.frame, job.mask, wf, hf, optType, optLevel));
+    }
+
+    /**
+     * Returns the precomputed sprite cutting for the given frame (waits for it if needed), or <code>null</code> if it
+     * wasn't computed ahead.
+     */
+    public List<SpriteCell> getSprites(int animIndex, int frameIndex)
+    {
+        final CutJob job = jobs.get(Long.valueOf(getKey(animIndex, frameIndex)));
+
+        if (job == null)
+            return null;
+
+        final List<SpriteCell> sprites;
+
+        try
+        {
+            sprites = job.task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Sprite cutting of '" + job.id + "' interrupted", e);
+        }
+        catch (CancellationException e)
+        {
+            throw new RuntimeException("Sprite cutting of '" + job.id + "' cancelled", e);
+        }
+        catch (ExecutionException e)
+        {
+            // re-throw original exception so we fail as the sequential build does
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            throw new RuntimeException(e.getCause());
+        }
+
+        // several frames can share the same job, give each one its own list
+        return new ArrayList<>(sprites);
+    }
+
+    private static long getKey(int animIndex, int frameIndex)
+    {
+        return (((long) animIndex) << 32) | (frameIndex & 0xFFFFFFFFL);
+    }
+
+    // rough relative cost of each optimization level (see SLICED_SPRITE opt_level documentation)
+    private static long getLevelWeight(SpriteCutLevel optLevel)
+    {
+        // exact cutter cost depends on the frame but it's generally the slowest, budget cutter always uses its whole time
+        if ((optLevel.method == SpriteCutLevel.Method.EXACT) || (optLevel.method == SpriteCutLevel.Method.BUDGET))
+            return 100;
+
+        switch (optLevel.level)
+        {
+            case MEDIUM:
+                return 5;
+            case SLOW:
+                return 20;
+            case MAX:
+                return 100;
+            default:
+                return 1;
+        }
+    }
+}
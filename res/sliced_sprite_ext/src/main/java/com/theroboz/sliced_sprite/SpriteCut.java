@@ -2,12 +2,17 @@ package com.theroboz.sliced_sprite;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.theroboz.rescomp_common.DecodedImageCache;
+
 import sgdk.rescomp.Resource;
 import sgdk.rescomp.resource.Bin;
 import sgdk.rescomp.resource.Palette;
@@ -15,9 +20,7 @@ import sgdk.rescomp.resource.Palette;
 import sgdk.rescomp.tool.Util;
 import sgdk.rescomp.type.Basics.CollisionType;
 import sgdk.rescomp.type.Basics.Compression;
-import sgdk.rescomp.type.SpriteCell.OptimizationLevel;
 import sgdk.rescomp.type.SpriteCell.OptimizationType;
-import sgdk.tool.ArrayMath;
 import sgdk.tool.FileUtil;
 import sgdk.tool.ImageUtil;
 import sgdk.tool.ImageUtil.BasicImageInfo;
@@ -35,7 +38,7 @@ public class SpriteCut extends Resource
     public final Palette palette;
 
     public SpriteCut(String id, String imgFile, int wf, int hf, Compression compression, int[][] time, CollisionType collision, OptimizationType optType,
-            OptimizationLevel optLevel, boolean showCut, boolean optDuplicate, String spritesDefFile) throws Exception
+            SpriteCutLevel optLevel, boolean showCut, boolean optDuplicate, String spritesDefFile) throws Exception
     {
         super(id);
 
@@ -52,66 +55,80 @@ public class SpriteCut extends Resource
         this.wf = wf;
         this.hf = hf;
 
+        // decoded image (shared with other resources using the same file)
+        final DecodedImageCache.Entry decoded = SpriteCutSettings.getImageCache().get(imgFile);
         // get 8bpp pixels and also check image dimension is aligned to tile
-        final byte[] image = ImageUtil.getImageAs8bpp(imgFile, true, true);
+        final byte[] image = decoded.get8bpp();
 
         // happen when we couldn't retrieve palette data from RGB image
         if (image == null)
             throw new IllegalArgumentException(
                     "RGB image '" + imgFile + "' does not contains palette data (see 'Important note about image format' in the rescomp.txt file");
 
-        // find max color index
-        final int maxIndex = ArrayMath.max(image, false);
-        if (maxIndex >= 64)
-            throw new IllegalArgumentException("'" + imgFile
-                    + "' uses color index >= 64, SLICED_SPRITE resource requires image with a maximum of 64 colors, use 4bpp indexed colors image instead if you are unsure.");
-
         // retrieve basic infos about the image
-        final BasicImageInfo imgInfo = ImageUtil.getBasicInfo(imgFile);
+        final BasicImageInfo imgInfo = decoded.getBasicInfo();
         final int w = imgInfo.w;
         // we determine 'h' from data length and 'w' as we can crop image vertically to remove palette data
         final int h = image.length / w;
 
+        // get size in tile
+        final int wt = w / 8;
+        final int ht = h / 8;
+
+        // check image size is correct
+        if ((wt % wf) != 0)
+            throw new IllegalArgumentException("Error: '" + imgFile + "' width (" + w + ") is not a multiple of cell width (" + (wf * 8) + ").");
+        if ((ht % hf) != 0)
+            throw new IllegalArgumentException("Error: '" + imgFile + "' height (" + h + ") is not a multiple of cell height (" + (hf * 8) + ").");
+
+        // analyze all frame cells in a single pass (colors, palette, opaque area and empty frames)
+        final SpriteSheetAnalysis sheet = new SpriteSheetAnalysis(image, wt, ht, wf, hf);
+
+        // check max color index
+        if (sheet.maxColor >= 64)
+            throw new IllegalArgumentException("'" + imgFile
+                    + "' uses color index >= 64, SLICED_SPRITE resource requires image with a maximum of 64 colors, use 4bpp indexed colors image instead if you are unsure.");
+
         final int palIndex;
         try
         {
             // get palette index used (only 1 palette allowed for sprite)
-            palIndex = ImageUtil.getSpritePaletteIndex(image, w, h);
+            palIndex = sheet.getPaletteIndex();
         }
         catch (IllegalArgumentException e)
         {
             throw new IllegalArgumentException(
                     "'" + imgFile + "' SLICED_SPRITE resource use more than 1 palette (16 colors), use 4bpp indexed colors image instead if you are unsure.", e);
         }
-        // get size in tile
-        final int wt = w / 8;
-        final int ht = h / 8;
-
-        // check image size is correct
-        if ((wt % wf) != 0)
-            throw new IllegalArgumentException("Error: '" + imgFile + "' width (" + w + ") is not a multiple of cell width (" + (wf * 8) + ").");
-        if ((ht % hf) != 0)
-            throw new IllegalArgumentException("Error: '" + imgFile + "' height (" + h + ") is not a multiple of cell height (" + (hf * 8) + ").");
 
         // build PALETTE
         palette = (Palette) addInternalResource(new Palette(id + "_palette", imgFile, palIndex * 16, 16, true));
 
-        // for debug purpose (scale image x2 so it's easier to see bounding boxes)
-        final BufferedImage bufImg = ImageUtil.scale(ImageUtil.load(imgFile), w * 2 , h * 2, false);
-        final Graphics2D g2 = bufImg.createGraphics();
-        g2.setColor(Color.pink);
+        // for debug purpose (VDP sprites bounding boxes, rendered in background at the end)
+        final List<Rectangle> cutRects = showCut ? new ArrayList<>() : null;
 
         // get number of animation
-        final int numAnim = ht / hf;
+        final int numAnim = sheet.numAnim;
 
         // Read sprite definitions from file
         final SpriteCutReader spriteDefReader = new SpriteCutReader(spritesDefFile, wf*8, hf*8);
+        // compute sprite cuts of all frames ahead on all cores (resources are still built in order below)
+        final ParallelSpriteCutter parallelCutter = SpriteCutSettings.PARALLEL
+                ? new ParallelSpriteCutter(id, image, sheet, wf, hf, optType, optLevel, optDuplicate, spriteDefReader) : null;
 
         int yOff = 0;
         for (int i = 0; i < numAnim; i++)
         {
+            // empty animation ? --> no need to build it
+            if (sheet.isAnimationEmpty(i))
+            {
+                // for debug purpose
+                yOff += hf * 8;
+                continue;
+            }
+
             // build sprite animation
-            SpriteCutAnimation animation = new SpriteCutAnimation(id + "_animation" + i, image, wt, ht, i, wf, hf, time[Math.min(time.length - 1, i)], collision, compression, optType, optLevel, optDuplicate, spriteDefReader.getAnimationFrameDefinitions(i));
+            SpriteCutAnimation animation = new SpriteCutAnimation(id + "_animation" + i, image, wt, ht, i, wf, hf, time[Math.min(time.length - 1, i)], collision, compression, optType, optLevel, optDuplicate, spriteDefReader.getAnimationFrameDefinitions(i), sheet, parallelCutter);
 
             // check if empty
             if (!animation.isEmpty())
@@ -122,12 +139,10 @@ public class SpriteCut extends Resource
                 if (showCut)
                 {
                     int xOff = 0;
-                    // add 32 pixels margin for RGB image (contains palette data in row 0-31)
-                    int yMargin = (imgInfo.bpp > 8) ? 32 : 0;
                     for (SpriteCutFrame frame : animation.frames)
                     {
                         for (VDPSpriteCut spr : frame.vdpSprites)
-                            g2.drawRect((xOff + spr.offsetX) * 2, (yMargin + yOff + spr.offsetY) * 2, ((spr.wt * 8) * 2) - 1, ((spr.ht * 8) * 2) - 1);
+                            cutRects.add(new Rectangle(xOff + spr.offsetX, yOff + spr.offsetY, spr.wt * 8, spr.ht * 8));
 
                         // for debug purpose
                         xOff += wf * 8;
@@ -146,16 +161,41 @@ public class SpriteCut extends Resource
             yOff += hf * 8;
         }
 
-        g2.dispose();
-
         // for debug purpose
         if (showCut)
-            ImageUtil.save(bufImg, "png", FileUtil.setExtension(imgFile, "") + "_opt.png");
+        {
+            final String outFile = FileUtil.setExtension(imgFile, "") + "_opt.png";
+
+            SpriteCutSettings.getSideOutputWriter().submit(outFile, () -> saveCutImage(outFile, decoded.getPalette(), image, w, h, cutRects));
+        }
 
         // compute hash code
         hc = (wf << 0) ^ (hf << 8) ^ (maxNumTile << 16) ^ (maxNumSprite << 24) ^ animations.hashCode() ^ palette.hashCode();
     }
 
+    /**
+     * Renders the cut debug image (frames scaled x2 with VDP sprites bounding boxes) from the 8bpp image data and saves it
+     */
+    static void saveCutImage(String outFile, int[] imgPalette, byte[] image, int w, int h, List<Rectangle> cutRects)
+    {
+        // need to convert palette back to ABGR format (don't modify the cached one)
+        final int[] palette = ImageUtil.ARGBtoABGR(imgPalette.clone());
+        final IndexColorModel cm = new IndexColorModel(8, Math.min(palette.length, 256), palette, 0, false, 0, DataBuffer.TYPE_BYTE);
+        final BufferedImage srcImg = ImageUtil.createIndexedImage(w, h, cm, image);
+
+        // scale image x2 so it's easier to see bounding boxes
+        final BufferedImage bufImg = new BufferedImage(w * 2, h * 2, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g2 = bufImg.createGraphics();
+
+        g2.drawImage(srcImg, 0, 0, w * 2, h * 2, null);
+        g2.setColor(Color.pink);
+        for (Rectangle r : cutRects)
+            g2.drawRect(r.x * 2, r.y * 2, (r.width * 2) - 1, (r.height * 2) - 1);
+        g2.dispose();
+
+        ImageUtil.save(bufImg, "png", outFile);
+    }
+
     @Override
     public int internalHashCode()
     {
@@ -1,25 +1,19 @@
 package com.theroboz.sliced_sprite;
 
-import java.awt.Dimension;
-import java.awt.Rectangle;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import sgdk.rescomp.Compiler;
 import sgdk.rescomp.Resource;
 import sgdk.rescomp.resource.Bin;
 import sgdk.rescomp.tool.Util;
 import sgdk.rescomp.type.Basics.CollisionType;
 import sgdk.rescomp.type.Basics.Compression;
 import sgdk.rescomp.type.SpriteCell;
-import sgdk.rescomp.type.SpriteCell.OptimizationLevel;
 import sgdk.rescomp.type.SpriteCell.OptimizationType;
-import sgdk.tool.ImageUtil;
 
 public class SpriteCutAnimation extends Resource
 {
@@ -42,9 +36,14 @@ public class SpriteCutAnimation extends Resource
      *
      * @param frameDefinitions
      *        List of SpriteFrameDefinition from file
+     * @param sheet
+     *        frame cell statistics of the sprite sheet
+     * @param parallelCutter
+     *        sprite cuts computed ahead in parallel (can be <code>null</code>)
      */
     public SpriteCutAnimation(String id, byte[] image8bpp, int w, int h, int animIndex, int wf, int hf, int[] time, CollisionType collision, Compression compression,
-        OptimizationType optType, OptimizationLevel optLevel, boolean optDuplicate, List<SpriteFrameDefinition> frameDefinitions)
+        OptimizationType optType, SpriteCutLevel optLevel, boolean optDuplicate, List<SpriteFrameDefinition> frameDefinitions, SpriteSheetAnalysis sheet,
+        ParallelSpriteCutter parallelCutter)
     {
         super(id);
 
@@ -54,59 +53,29 @@ public class SpriteCutAnimation extends Resource
         // default loop index
         loopIndex = 0;
 
-        final Dimension imageDim = new Dimension(w * 8, h * 8);
-        // get max number of frame
-        final int maxFrame = w / wf;
-
-        // find last non transparent frame
-        int f = maxFrame - 1;
-        while (f >= 0)
-        {
-            // define frame bounds
-            final Rectangle frameBounds = new Rectangle((f * wf) * 8, (animIndex * hf) * 8, wf * 8, hf * 8);
-            // not transparent ? --> stop here
-            if (!ImageUtil.isTransparent(image8bpp, imageDim, frameBounds))
-                break;
-
-            f--;
-        }
-
+        // view of each frame in the sheet (no copy)
+        final FrameView[] frameViews = FrameView.getFrames(image8bpp, w, animIndex, wf, hf);
         // number of frame to process
-        final int numFrame = f + 1;
+        final int numFrame = sheet.getNumFrame(animIndex);
+        // opacity mask of each frame (built once)
+        final OpacityMask[] masks = getFrameMasks(frameViews, numFrame);
+        // content fingerprint of each frame (only needed to find duplicates)
+        final long[] fingerprints = optDuplicate ? getFrameFingerprints(frameViews, numFrame) : null;
 
         for (int i = 0; i < numFrame; i++)
         {
-            // define frame bounds
-            final Rectangle frameBounds = new Rectangle((i * wf) * 8, (animIndex * hf) * 8, wf * 8, hf * 8);
-            // get image for this frame
-            final byte[] frameImage = ImageUtil.getSubImage(image8bpp, new Dimension(w * 8, h * 8), frameBounds);
-
-            int duplicate = 0;
-            // duplicate optimization enabled ?
-            if (optDuplicate)
-            {
-                // search for duplicate consecutive frames
-                for (int j = i + 1; j < numFrame; j++)
-                {
-                    final Rectangle nextBounds = new Rectangle((j * wf) * 8, (animIndex * hf) * 8, wf * 8, hf * 8);
-                    final byte[] nextImage = ImageUtil.getSubImage(image8bpp, new Dimension(w * 8, h * 8), nextBounds);
-
-                    // different ? --> stop here
-                    if (!Arrays.equals(frameImage, nextImage))
-                        break;
-
-                    // found duplicate
-                    duplicate++;
-                }
-            }
+            final FrameView frameView = frameViews[i];
+            // duplicate optimization enabled ? --> get number of duplicate consecutive frames
+            final int duplicate = optDuplicate ? getNumDuplicate(frameViews, i, numFrame, fingerprints) : 0;
 
             // try to search for a duplicated sprite mask to we can re-use the previous sprite cutting without processing a new one
-            SpriteCutFrame frame = findMatchingSpriteFrameMask(frameImage, frameBounds.getSize());
+            final List<SpriteCell> maskSprites = SpriteFrameMaskIndex.find(masks[i]);
+            SpriteCutFrame frame;
             // found it ?
-            if (frame != null)
+            if (maskSprites != null)
             {
             	// create sprite frame ('timer' is augmented by number of duplicate) and re-use previous sprite cutting
-            	frame = new SpriteCutFrame(id + "_frame" + i, frameImage, wf, hf, time[Math.min(time.length - 1, i)] * (duplicate + 1), collision, compression, optType, optLevel, frame.getSprites());
+            	frame = new SpriteCutFrame(id + "_frame" + i, frameView, masks[i], wf, hf, time[Math.min(time.length - 1, i)] * (duplicate + 1), collision, compression, optType, optLevel, maskSprites);
             }
             else
             {
@@ -128,17 +97,25 @@ public class SpriteCutAnimation extends Resource
                             + " sprites, max is 16");
                 else if (sprites.size() > 0)
                     // Create sprite frame using file-defined sprites
-                    frame = new SpriteCutFrame(id + "_frame" + i, frameImage, wf, hf, time[Math.min(time.length - 1, i)] * (duplicate + 1), collision, compression, optType, optLevel, sprites);
+                    frame = new SpriteCutFrame(id + "_frame" + i, frameView, masks[i], wf, hf, time[Math.min(time.length - 1, i)] * (duplicate + 1), collision, compression, optType, optLevel, sprites);
                 else
                 {
-                    System.out.println("Sprite animation '"+id+"'' Frame "+i+" has no user-defined Cuts. Using SGDK automatic processing");
+                    System.out.println("Sprite animation '"+id+"'' Frame "+i+" has no user-defined Cuts. Using " + (optLevel.isSGDK() ? "SGDK" : optLevel.method.name()) + " automatic processing");
+                    // sprite cutting already computed in parallel ?
+                    final List<SpriteCell> cut = (parallelCutter != null) ? parallelCutter.getSprites(animIndex, i) : null;
+
                     // create sprite frame ('timer' is augmented by number of duplicate)
-            	    frame = new SpriteCutFrame(id + "_frame" + i, frameImage, wf, hf, time[Math.min(time.length - 1, i)] * (duplicate + 1), collision, compression, optType, optLevel);
+                    if (cut != null)
+                        frame = new SpriteCutFrame(id + "_frame" + i, frameView, masks[i], wf, hf, time[Math.min(time.length - 1, i)] * (duplicate + 1), collision, compression, optType, optLevel, cut);
+                    else
+                        frame = new SpriteCutFrame(id + "_frame" + i, frameView, masks[i], wf, hf, time[Math.min(time.length - 1, i)] * (duplicate + 1), collision, compression, optType, optLevel);
                 }
             }
 
             // add as internal resource (get duplicate if exist)
             frame = (SpriteCutFrame) addInternalResource(frame);
+            // so next frames with same mask can find it
+            SpriteFrameMaskIndex.add(frame);
             // bypass duplicates
             i += duplicate;
 
@@ -154,38 +131,52 @@ public class SpriteCutAnimation extends Resource
         hc = loopIndex ^ frames.hashCode();
     }
 
-    private SpriteCutFrame findMatchingSpriteFrameMask(byte[] frameImage, Dimension dimension)
+    /**
+     * Returns opacity mask of the first <code>numFrame</code> frames
+     */
+    static OpacityMask[] getFrameMasks(FrameView[] frameViews, int numFrame)
     {
-        for (Resource res : Compiler.getResources(SpriteCutFrame.class))
-        {
-            final SpriteCutFrame spriteFrame = (SpriteCutFrame) res;
+        final OpacityMask[] result = new OpacityMask[numFrame];
 
-            if (checkMaskEqual(spriteFrame, frameImage, dimension))
-                return spriteFrame;
-        }
+        for (int f = 0; f < result.length; f++)
+            result[f] = frameViews[f].getMask();
 
-        return null;
+        return result;
     }
 
-    private boolean checkMaskEqual(SpriteCutFrame spriteFrame, byte[] frameImage, Dimension dimension)
+    /**
+     * Returns content fingerprint of the first <code>numFrame</code> frames
+     */
+    static long[] getFrameFingerprints(FrameView[] frameViews, int numFrame)
     {
-    	if (!spriteFrame.frameDim.equals(dimension))
-    		return false;
+        final long[] result = new long[numFrame];
+
+        for (int f = 0; f < numFrame; f++)
+            result[f] = frameViews[f].getFingerprint();
+
+        return result;
+    }
 
-    	final byte[] frame1 = spriteFrame.frameImage;
-		final byte[] frame2 = frameImage;
+    /**
+     * Returns the number of consecutive duplicates of the given frame.<br>
+     * Frames are compared by fingerprint first, pixels are only compared (in place) to confirm a match.
+     */
+    static int getNumDuplicate(FrameView[] frameViews, int frameIndex, int numFrame, long[] fingerprints)
+    {
+        int result = 0;
 
-		if (frame1.length != frame2.length)
-    		return false;
+        // search for duplicate consecutive frames
+        for (int j = frameIndex + 1; j < numFrame; j++)
+        {
+            // different ? --> stop here
+            if ((fingerprints[j] != fingerprints[frameIndex]) || !frameViews[j].contentEquals(frameViews[frameIndex]))
+                break;
 
-    	for(int i = 0; i < frame1.length; i++)
-    	{
-    		boolean p1 = frame1[i] != 0;
-    		boolean p2 = frame2[i] != 0;
-    		if (p1 != p2) return false;
-    	}
+            // found duplicate
+            result++;
+        }
 
-    	return true;
+        return result;
     }
 
     public boolean isEmpty()
@@ -0,0 +1,293 @@
+package com.theroboz.sliced_sprite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import sgdk.rescomp.type.SpriteCell;
+import sgdk.rescomp.type.SpriteCell.OptimizationType;
+
+/**
+ * Persistent, content addressed cache of computed sprite cuts.<br>
+ * A cut is keyed by a SHA-256 of the frame 8bpp pixels, frame size, optimization type and optimization level so an
+ * unchanged frame gets its previous cut back without running the sprite cutter again.<br>
+ * Entries are appended to a single file ('sliced_sprite_cuts.bin' in the cache directory) as soon as they are computed,
+ * delete the file to reset the cache. Each entry has its own checksum and the file is locked while appending or
+ * repairing it, so concurrent rescomp processes (parallel make) can share it.
+ */
+public class SpriteCutCache
+{
+    private static final String FILE_NAME = "sliced_sprite_cuts.bin";
+    private static final int MAGIC = 0x53435543; // 'SCUC'
+    private static final int VERSION = 2;
+    private static final int KEY_SIZE = 32;
+
+    private static SpriteCutCache instance = null;
+
+    /**
+     * Returns the cache instance for this build, or <code>null</code> if the cut cache is disabled
+     */
+    public static synchronized SpriteCutCache getInstance()
+    {
+        if (!SpriteCutSettings.CUT_CACHE)
+            return null;
+
+        if (instance == null)
+        {
+            instance = new SpriteCutCache(new File(SpriteCutSettings.getCacheDir(), FILE_NAME));
+            // report statistics and release the file at the end of the build
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::close, "sliced_sprite cut cache"));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Computes the cache key for the given frame and cutting parameters
+     */
+    public static String computeKey(FrameView frame, int wf, int hf, OptimizationType optType, SpriteCutLevel optLevel)
+    {
+        final MessageDigest md;
+
+        try
+        {
+            md = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // SHA-256 is always available on Java platform
+            throw new IllegalStateException(e);
+        }
+
+        md.update((byte) VERSION);
+        md.update((byte) wf);
+        md.update((byte) hf);
+        md.update(optType.name().getBytes(StandardCharsets.US_ASCII));
+        md.update((byte) ':');
+        md.update(optLevel.toString().getBytes(StandardCharsets.US_ASCII));
+        md.update((byte) ':');
+        frame.update(md);
+
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    private final File file;
+    // key --> packed cut (x, y, width, height for each sprite)
+    private final Map<String, short[]> cuts;
+    private FileChannel output;
+    private int hits;
+    private int misses;
+
+    SpriteCutCache(File file)
+    {
+        this.file = file;
+        cuts = new HashMap<>();
+        output = null;
+        hits = 0;
+        misses = 0;
+
+        load();
+    }
+
+    // checksum of an entry (key, sprite count and cut)
+    private static int getChecksum(ByteBuffer entry, int from, int to)
+    {
+        final CRC32 crc = new CRC32();
+        crc.update(entry.array(), from, to - from);
+        return (int) crc.getValue();
+    }
+
+    private void load()
+    {
+        if (!file.exists())
+            return;
+
+        // other rescomp processes may append to the cache concurrently --> lock it while reading (and repairing)
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE); FileLock lock = channel.lock())
+        {
+            // just created by another process
+            if (channel.size() == 0)
+                return;
+
+            final ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+            while (data.hasRemaining() && (channel.read(data) != -1))
+                ;
+            data.flip();
+
+            if ((data.remaining() < 8) || (data.getInt() != MAGIC) || (data.getInt() != VERSION))
+            {
+                System.out.println("SLICED_SPRITE cut cache '" + file.getPath() + "' has an unknown format, it will be rebuilt");
+                channel.truncate(0);
+                return;
+            }
+
+            final byte[] key = new byte[KEY_SIZE];
+
+            // entry = key, sprite count (unsigned short), cut (4 shorts per sprite), CRC32 of all previous fields
+            while (data.remaining() >= (KEY_SIZE + 2 + 4))
+            {
+                final int start = data.position();
+                data.get(key);
+                final int num = data.getShort() & 0xFFFF;
+
+                if (data.remaining() < ((num * 4 * 2) + 4))
+                    break;
+
+                final short[] cut = new short[num * 4];
+                for (int i = 0; i < cut.length; i++)
+                    cut[i] = data.getShort();
+
+                // corrupted entry ? --> stop here (following entries can't be trusted)
+                if (data.getInt() != getChecksum(data, start, data.position() - 4))
+                {
+                    data.position(start);
+                    break;
+                }
+
+                cuts.put(HexFormat.of().formatHex(key), cut);
+            }
+
+            // remove partially written or corrupted entries (interrupted build) so we can append again
+            if (data.hasRemaining())
+            {
+                System.out.println("SLICED_SPRITE cut cache '" + file.getPath() + "' has invalid entries, they are removed");
+                channel.truncate(data.position());
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Warning: couldn't read SLICED_SPRITE cut cache '" + file.getPath() + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the cached sprite list for the given key or <code>null</code> if not found
+     */
+    public synchronized List<SpriteCell> get(String key, OptimizationType optType)
+    {
+        final short[] cut = cuts.get(key);
+
+        if (cut == null)
+        {
+            misses++;
+            return null;
+        }
+
+        hits++;
+
+        final List<SpriteCell> result = new ArrayList<>();
+        for (int i = 0; i < cut.length; i += 4)
+            result.add(new SpriteCell(cut[i + 0], cut[i + 1], cut[i + 2], cut[i + 3], optType));
+
+        return result;
+    }
+
+    /**
+     * Stores the sprite list for the given key (written to disk immediately)
+     */
+    public synchronized void put(String key, List<SpriteCell> sprites)
+    {
+        // can't be stored (never happens with valid cuts) --> just don't cache it
+        if (sprites.size() > 0xFFFF)
+            return;
+
+        final short[] cut = new short[sprites.size() * 4];
+
+        int off = 0;
+        for (SpriteCell spr : sprites)
+        {
+            cut[off++] = (short) spr.x;
+            cut[off++] = (short) spr.y;
+            cut[off++] = (short) spr.width;
+            cut[off++] = (short) spr.height;
+        }
+
+        cuts.put(key, cut);
+
+        final ByteBuffer entry = ByteBuffer.allocate(KEY_SIZE + 2 + (cut.length * 2) + 4);
+        entry.put(HexFormat.of().parseHex(key));
+        entry.putShort((short) sprites.size());
+        for (short v : cut)
+            entry.putShort(v);
+        entry.putInt(getChecksum(entry, 0, entry.position()));
+        entry.flip();
+
+        try
+        {
+            if (output == null)
+                output = FileChannel.open(openFile().toPath(), StandardOpenOption.WRITE);
+
+            // other rescomp processes may use the same cache --> whole entry is written under lock, always at the end
+            try (FileLock lock = output.lock())
+            {
+                if (output.size() == 0)
+                {
+                    final ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).flip();
+                    while (header.hasRemaining())
+                        output.write(header, output.size());
+                }
+
+                long pos = output.size();
+                while (entry.hasRemaining())
+                    pos += output.write(entry, pos);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Warning: couldn't write SLICED_SPRITE cut cache '" + file.getPath() + "': " + e.getMessage());
+        }
+    }
+
+    private File openFile() throws IOException
+    {
+        final File dir = file.getParentFile();
+        if ((dir != null) && !dir.exists())
+            dir.mkdirs();
+
+        file.createNewFile();
+
+        return file;
+    }
+
+    public synchronized int getHits()
+    {
+        return hits;
+    }
+
+    public synchronized int getMisses()
+    {
+        return misses;
+    }
+
+    synchronized void close()
+    {
+        if ((hits + misses) > 0)
+            System.out.println("SLICED_SPRITE cut cache: " + hits + " hit(s), " + misses + " miss(es) - " + file.getPath());
+
+        if (output != null)
+        {
+            try
+            {
+                output.close();
+            }
+            catch (IOException e)
+            {
+                // ignore
+            }
+
+            output = null;
+        }
+    }
+}
@@ -1,13 +1,12 @@
 package com.theroboz.sliced_sprite;
 
 import java.awt.Dimension;
-import java.awt.Rectangle;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 import sgdk.rescomp.Resource;
 import sgdk.rescomp.resource.Bin;
@@ -21,7 +20,6 @@ import sgdk.rescomp.type.Basics.CollisionType;
 import sgdk.rescomp.type.SpriteCell;
 import sgdk.rescomp.type.SpriteCell.OptimizationLevel;
 import sgdk.rescomp.type.SpriteCell.OptimizationType;
-import sgdk.tool.ImageUtil;
 
 public class SpriteCutFrame extends Resource
 {
@@ -32,14 +30,31 @@ public class SpriteCutFrame extends Resource
 
    final int hc;
 
-    // just for pre-equal test
-   final byte[] frameImage;
+    // just for pre-equal test (the frame view isn't kept so the sheet buffer can be released)
    final Dimension frameDim;
    final Basics.CollisionType collisionType;
    final Basics.Compression compression;
    final int fhc;
+   // opacity mask (see SpriteFrameMaskIndex)
+   final OpacityMask mask;
 
-   public SpriteCutFrame(String id, byte[] frameImage8bpp, int wf, int hf, int timer, Basics.CollisionType collisionType, Basics.Compression compression, SpriteCell.OptimizationType optType, SpriteCell.OptimizationLevel optLevel, List<SpriteCell> sprites)
+   public SpriteCutFrame(String id, byte[] frameImage8bpp, int wf, int hf, int timer, Basics.CollisionType collisionType, Basics.Compression compression, SpriteCell.OptimizationType optType, SpriteCutLevel optLevel, List<SpriteCell> sprites)
+   {
+      this(id, new FrameView(frameImage8bpp, wf * 8, hf * 8), wf, hf, timer, collisionType, compression, optType, optLevel, sprites);
+   }
+
+   public SpriteCutFrame(String id, FrameView frameView, int wf, int hf, int timer, Basics.CollisionType collisionType, Basics.Compression compression, SpriteCell.OptimizationType optType, SpriteCutLevel optLevel, List<SpriteCell> sprites)
+   {
+      this(id, frameView, frameView.getMask(), wf, hf, timer, collisionType, compression, optType, optLevel, sprites);
+   }
+
+   SpriteCutFrame(String id, FrameView frameView, OpacityMask mask, int wf, int hf, int timer, Basics.CollisionType collisionType, Basics.Compression compression, SpriteCell.OptimizationType optType, SpriteCutLevel optLevel, List<SpriteCell> sprites)
+   {
+      this(id, frameView, sprites.isEmpty() ? null : frameView.toArray(), mask, wf, hf, timer, collisionType, compression, optType, optLevel, sprites);
+   }
+
+   // frameImage8bpp is the contiguous copy of the frame (only needed for a non empty frame)
+   private SpriteCutFrame(String id, FrameView frameView, byte[] frameImage8bpp, OpacityMask mask, int wf, int hf, int timer, Basics.CollisionType collisionType, Basics.Compression compression, SpriteCell.OptimizationType optType, SpriteCutLevel optLevel, List<SpriteCell> sprites)
    {
       super(id);
 
@@ -47,9 +62,9 @@ public class SpriteCutFrame extends Resource
       this.timer = timer;
       this.collisionType = collisionType;
       this.compression = compression;
-      this.frameImage = frameImage8bpp;
       this.frameDim = new Dimension(wf * 8, hf * 8);
-      this.fhc = computeFastHashcode(frameImage8bpp, frameDim, timer, collisionType, compression);
+      this.fhc = computeFastHashcode(frameView, timer, collisionType, compression);
+      this.mask = mask;
 
       // empty frame --> empty tileset
       if (sprites.isEmpty())
@@ -68,8 +83,8 @@ public class SpriteCutFrame extends Resource
          // shot info about this sprite frame
          System.out.println("Sprite frame '" + id + "' - " + sprites.size() + " VDP sprites and " + optNumTile + " tiles");
 
-         // build tileset
-         tileset = (Tileset) addInternalResource(new Tileset(id + "_tileset", frameImage, wf * 8, hf * 8, sprites, compression, false));
+         // build tileset (only place where we need a contiguous copy of the frame)
+         tileset = (Tileset) addInternalResource(new Tileset(id + "_tileset", frameImage8bpp, wf * 8, hf * 8, sprites, compression, false));
       }
 
       final Collision coll;
@@ -128,9 +143,29 @@ public class SpriteCutFrame extends Resource
      * @param showCut
      */
    public SpriteCutFrame(String id, byte[] frameImage8bpp, int wf, int hf, int timer, Basics.CollisionType collisionType, Basics.Compression compression,
-      SpriteCell.OptimizationType optType, SpriteCell.OptimizationLevel optLevel)
+      SpriteCell.OptimizationType optType, SpriteCutLevel optLevel)
+   {
+      this(id, new FrameView(frameImage8bpp, wf * 8, hf * 8), wf, hf, timer, collisionType, compression, optType, optLevel);
+   }
+
+   public SpriteCutFrame(String id, FrameView frameView, int wf, int hf, int timer, Basics.CollisionType collisionType, Basics.Compression compression,
+      SpriteCell.OptimizationType optType, SpriteCutLevel optLevel)
+   {
+      this(id, frameView, frameView.getMask(), wf, hf, timer, collisionType, compression, optType, optLevel);
+   }
+
+   SpriteCutFrame(String id, FrameView frameView, OpacityMask mask, int wf, int hf, int timer, Basics.CollisionType collisionType, Basics.Compression compression,
+      SpriteCell.OptimizationType optType, SpriteCutLevel optLevel)
+   {
+      // contiguous copy of the frame made once for both the sprite cutter and the tileset
+      this(id, frameView, frameView.toArray(), mask, wf, hf, timer, collisionType, compression, optType, optLevel);
+   }
+
+   private SpriteCutFrame(String id, FrameView frameView, byte[] frameImage8bpp, OpacityMask mask, int wf, int hf, int timer, Basics.CollisionType collisionType,
+      Basics.Compression compression, SpriteCell.OptimizationType optType, SpriteCutLevel optLevel)
    {
-      this(id, frameImage8bpp, wf, hf, timer, collisionType, compression, optType, optLevel, computeSpriteCutting(id, frameImage8bpp, wf, hf, optType, optLevel));
+      this(id, frameView, frameImage8bpp, mask, wf, hf, timer, collisionType, compression, optType, optLevel,
+               computeSpriteCutting(id, frameView, frameImage8bpp, mask, wf, hf, optType, optLevel));
    }
 
     /**
@@ -144,52 +179,97 @@ public class SpriteCutFrame extends Resource
      *        height of frame in tile
      */
    public SpriteCutFrame(String id, byte[] image8bpp, int w, int h, int frameIndex, int animIndex, int wf, int hf, int timer, Basics.CollisionType collisionType,
-      Basics.Compression compression, SpriteCell.OptimizationType optType, SpriteCell.OptimizationLevel optLevel)
+      Basics.Compression compression, SpriteCell.OptimizationType optType, SpriteCutLevel optLevel)
    {
-      this(id, ImageUtil.getSubImage(image8bpp, new Dimension(w * 8, h * 8), new Rectangle((frameIndex * wf) * 8, (animIndex * hf) * 8, wf * 8, hf * 8)), wf,
-            hf, timer, collisionType, compression, optType, optLevel);
+      this(id, new FrameView(image8bpp, w * 8, (frameIndex * wf) * 8, (animIndex * hf) * 8, wf * 8, hf * 8), wf, hf, timer, collisionType, compression, optType, optLevel);
    }
 
-   static List<SpriteCell> computeSpriteCutting(String id, byte[] frameImage8bpp, int wf, int hf, SpriteCell.OptimizationType optType, SpriteCell.OptimizationLevel optLevel) throws UnsupportedOperationException
+   static List<SpriteCell> computeSpriteCutting(String id, FrameView frameView, OpacityMask mask, int wf, int hf, SpriteCell.OptimizationType optType, SpriteCutLevel optLevel) throws UnsupportedOperationException
    {
+      return computeSpriteCutting(id, frameView, null, mask, wf, hf, optType, optLevel);
+   }
 
-      List<SpriteCell> sprites;
+   // frameImage8bpp is the contiguous copy of the frame if already made (null to make it only if the cut has to be computed)
+   private static List<SpriteCell> computeSpriteCutting(String id, FrameView frameView, byte[] frameImage8bpp, OpacityMask mask, int wf, int hf, SpriteCell.OptimizationType optType,
+      SpriteCutLevel optLevel) throws UnsupportedOperationException
+   {
+      final SpriteCutCache cache = SpriteCutCache.getInstance();
+
+      // cut cache disabled ? --> always compute it
+      if (cache == null)
+         return doComputeSpriteCutting(id, (frameImage8bpp != null) ? frameImage8bpp : frameView.toArray(), mask, wf, hf, optType, optLevel);
+
+      final String key = SpriteCutCache.computeKey(frameView, wf, hf, optType, optLevel);
+      // same frame already cut with same parameters ? --> re-use it
+      List<SpriteCell> sprites = cache.get(key, optType);
+      if (sprites != null)
+      {
+         // never trust the cache blindly: a wrong cut would end in the ROM
+         if (isValidCut(mask, sprites))
+            return sprites;
+
+         System.out.println("Sprite frame '" + id + "' - cached cut doesn't match the frame, computing it again");
+      }
+
+      sprites = doComputeSpriteCutting(id, (frameImage8bpp != null) ? frameImage8bpp : frameView.toArray(), mask, wf, hf, optType, optLevel);
+      // store it for next builds
+      cache.put(key, sprites);
+
+      return sprites;
+   }
+
+   // valid VDP sprite sizes and all opaque pixels covered ?
+   private static boolean isValidCut(OpacityMask mask, List<SpriteCell> sprites)
+   {
+      for (SpriteCell spr : sprites)
+         if ((spr.width < 8) || (spr.width > 32) || ((spr.width & 7) != 0) || (spr.height < 8) || (spr.height > 32) || ((spr.height & 7) != 0))
+            return false;
+
+      return mask.isCovered(sprites);
+   }
+
+   private static List<SpriteCell> doComputeSpriteCutting(String id, byte[] frameImage8bpp, OpacityMask mask, int wf, int hf, SpriteCell.OptimizationType optType, SpriteCutLevel optLevel) throws UnsupportedOperationException
+   {
+      List<SpriteCell> sprites = null;
       Dimension frameDim = new Dimension(wf * 8, hf * 8);
 
       if (optType == OptimizationType.NONE)
          sprites = SpriteCutter.getFastOptimizedSpriteList(frameImage8bpp, frameDim, OptimizationType.NONE, false);
       else
       {
-         // slow optimization ?
-         if ((optLevel == OptimizationLevel.SLOW) || (optLevel == OptimizationLevel.MAX))
+         // exact cutter ?
+         if (optLevel.method == SpriteCutLevel.Method.EXACT)
          {
-               final int iteration = (optLevel == OptimizationLevel.SLOW) ? 500000 : 5000000;
-
-               sprites = SpriteCutter.getSlowOptimizedSpriteList(frameImage8bpp, frameDim, iteration, optType);
+               final ExactSpriteCutter.Result result = new ExactSpriteCutter(mask, optType, optLevel.timeLimit, optLevel.nodeLimit).cut();
 
-               // above the limit of internal sprite ? force MIN_SPRITE optimization strategy
-               if ((sprites.size() > 16) && (optType != OptimizationType.MIN_SPRITE))
-                  sprites = SpriteCutter.getSlowOptimizedSpriteList(frameImage8bpp, frameDim, iteration, OptimizationType.MIN_SPRITE);
+               if (result != null)
+               {
+                  System.out.println("Sprite frame '" + id + "' - exact cut: " + result.sprites.size() + " VDP sprites and " + result.numTile + " tiles ("
+                           + (result.optimal ? "optimal" : "limit reached") + ", " + result.nodes + " nodes in " + result.time + " ms)");
+                  sprites = result.sprites;
+               }
+               else
+                  System.out.println("Sprite frame '" + id + "' - exact cut: no solution found within limits, using SGDK " + optLevel.level + " optimization");
          }
-         else
+         // time budgeted island optimizer ?
+         else if (optLevel.method == SpriteCutLevel.Method.BUDGET)
          {
-               final boolean optBetter = optLevel == OptimizationLevel.MEDIUM;
+               final BudgetSpriteCutter.Result result = new BudgetSpriteCutter(mask, optType, optLevel.timeLimit, optLevel.islands).cut();
 
-               // always start with the fast optimization first
-               sprites = SpriteCutter.getFastOptimizedSpriteList(frameImage8bpp, frameDim, optType, optBetter);
-
-               // too many sprites used for this sprite ? try MIN_SPRITE opt strategy
-               if ((sprites.size() > 16) && (optType != OptimizationType.MIN_SPRITE))
-                  sprites = SpriteCutter.getFastOptimizedSpriteList(frameImage8bpp, frameDim, OptimizationType.MIN_SPRITE, optBetter);
-
-               // still too many sprites used for this sprite ? try MIN_SPRITE with optBetter option
-               if ((sprites.size() > 16) && !optBetter)
-                  sprites = SpriteCutter.getFastOptimizedSpriteList(frameImage8bpp, frameDim, OptimizationType.MIN_SPRITE, true);
-
-               // still too many sprites used for this sprite ? try better (but slower) sprite optimization method
-               if (sprites.size() > 16)
-                  sprites = SpriteCutter.getSlowOptimizedSpriteList(frameImage8bpp, frameDim, 100000, OptimizationType.MIN_SPRITE);
+               if (result != null)
+               {
+                  System.out.println("Sprite frame '" + id + "' - budget cut: " + result.sprites.size() + " VDP sprites and " + result.numTile + " tiles ("
+                           + result.islands + " islands, " + result.iterations + " iterations, " + result.improvements + " improvements, cost " + result.initialCost
+                           + " -> " + result.cost + ", best found by island " + result.bestIsland + " at " + result.bestTime + " ms of " + result.time + " ms)");
+                  sprites = result.sprites;
+               }
+               else
+                  System.out.println("Sprite frame '" + id + "' - budget cut: no valid solution found in time, using SGDK " + optLevel.level + " optimization");
          }
+
+         // use SGDK sprite cutter
+         if (sprites == null)
+               sprites = getSGDKSpriteList(frameImage8bpp, frameDim, optType, optLevel.level);
       }
 
       // still above the limit ? --> stop here :-(
@@ -197,32 +277,71 @@ public class SpriteCutFrame extends Resource
          throw new UnsupportedOperationException("Sprite frame '" + id + "' uses " + sprites.size()
                   + " internal sprites, that is above the limit (16), try to reduce the sprite size or split it.");
 
-      // special case of NONE optimization type
-      if ((!sprites.isEmpty()) && (optType == OptimizationType.NONE))
+      // special case of NONE optimization type: empty frame ? --> clear sprite list
+      if ((!sprites.isEmpty()) && (optType == OptimizationType.NONE) && mask.isEmpty())
+         sprites.clear();
+
+      return sprites;
+   }
+
+   private static List<SpriteCell> getSGDKSpriteList(byte[] frameImage8bpp, Dimension frameDim, SpriteCell.OptimizationType optType, OptimizationLevel optLevel)
+   {
+      List<SpriteCell> sprites;
+
+      // slow optimization ?
+      if ((optLevel == OptimizationLevel.SLOW) || (optLevel == OptimizationLevel.MAX))
       {
-         // check if frame is empty or not
-         boolean empty = true;
-         for (byte b : frameImage8bpp)
-         {
-               if ((b & 0xF) != 0)
-               {
-                  empty = false;
-                  break;
-               }
-         }
+            final int iteration = (optLevel == OptimizationLevel.SLOW) ? 500000 : 5000000;
+
+            sprites = SpriteCutter.getSlowOptimizedSpriteList(frameImage8bpp, frameDim, iteration, optType);
+
+            // above the limit of internal sprite ? force MIN_SPRITE optimization strategy
+            if ((sprites.size() > 16) && (optType != OptimizationType.MIN_SPRITE))
+               sprites = SpriteCutter.getSlowOptimizedSpriteList(frameImage8bpp, frameDim, iteration, OptimizationType.MIN_SPRITE);
+      }
+      // race the fallback strategies ?
+      else if (SpriteCutSettings.RACE)
+      {
+            final boolean optBetter = optLevel == OptimizationLevel.MEDIUM;
+            final List<Supplier<List<SpriteCell>>> strategies = new ArrayList<>();
+
+            // same strategies and preference order than the sequential processing below
+            strategies.add(() -> SpriteCutter.getFastOptimizedSpriteList(frameImage8bpp, frameDim, optType, optBetter));
+            if (optType != OptimizationType.MIN_SPRITE)
+               strategies.add(() -> SpriteCutter.getFastOptimizedSpriteList(frameImage8bpp, frameDim, OptimizationType.MIN_SPRITE, optBetter));
+            if (!optBetter)
+               strategies.add(() -> SpriteCutter.getFastOptimizedSpriteList(frameImage8bpp, frameDim, OptimizationType.MIN_SPRITE, true));
+            strategies.add(() -> SpriteCutter.getSlowOptimizedSpriteList(frameImage8bpp, frameDim, 100000, OptimizationType.MIN_SPRITE));
+
+            sprites = SpriteCutRace.run(strategies, SpriteCutSettings.RACE_DEPTH);
+      }
+      else
+      {
+            final boolean optBetter = optLevel == OptimizationLevel.MEDIUM;
+
+            // always start with the fast optimization first
+            sprites = SpriteCutter.getFastOptimizedSpriteList(frameImage8bpp, frameDim, optType, optBetter);
+
+            // too many sprites used for this sprite ? try MIN_SPRITE opt strategy
+            if ((sprites.size() > 16) && (optType != OptimizationType.MIN_SPRITE))
+               sprites = SpriteCutter.getFastOptimizedSpriteList(frameImage8bpp, frameDim, OptimizationType.MIN_SPRITE, optBetter);
+
+            // still too many sprites used for this sprite ? try MIN_SPRITE with optBetter option
+            if ((sprites.size() > 16) && !optBetter)
+               sprites = SpriteCutter.getFastOptimizedSpriteList(frameImage8bpp, frameDim, OptimizationType.MIN_SPRITE, true);
 
-         // empty frame ? --> clear sprite list
-         if (empty)
-               sprites.clear();
+            // still too many sprites used for this sprite ? try better (but slower) sprite optimization method
+            if (sprites.size() > 16)
+               sprites = SpriteCutter.getSlowOptimizedSpriteList(frameImage8bpp, frameDim, 100000, OptimizationType.MIN_SPRITE);
       }
 
       return sprites;
    }
 
-   static int computeFastHashcode(byte[] frameImage8bpp, Dimension frameDim, int timer, Basics.CollisionType collision, Basics.Compression compression)
+   static int computeFastHashcode(FrameView frameView, int timer, Basics.CollisionType collision, Basics.Compression compression)
    {
-      return (timer << 16) ^ ((collision != null) ? collision.hashCode() : 0) ^ Arrays.hashCode(frameImage8bpp) ^ frameDim.hashCode()
-                ^ compression.hashCode();
+      return (timer << 16) ^ ((collision != null) ? collision.hashCode() : 0) ^ Long.hashCode(frameView.getFingerprint()) ^ (frameView.width << 16)
+                ^ frameView.height ^ compression.hashCode();
    }
 
    public List<SpriteCell> getSprites()
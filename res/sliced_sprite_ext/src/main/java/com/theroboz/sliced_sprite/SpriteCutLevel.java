@@ -0,0 +1,149 @@
+package com.theroboz.sliced_sprite;
+
+import java.util.Objects;
+
+import sgdk.rescomp.tool.Util;
+import sgdk.rescomp.type.SpriteCell.OptimizationLevel;
+
+/**
+ * SLICED_SPRITE optimization level: either one of the SGDK levels (FAST, MEDIUM, SLOW, MAX) or one of the cutters
+ * provided by this extension, with its limits.<br>
+ * Accepted values:
+ *
+ * <pre>
+ * FAST / MEDIUM / SLOW / MAX     SGDK sprite cutter
+ * EXACT[:time[:nodes]]           exact branch-and-bound cutter (time limit in ms, node limit)
+ * BUDGET:time[:islands]          parallel island optimizer running for the given time (ms)
+ * </pre>
+ */
+public class SpriteCutLevel
+{
+    public enum Method
+    {
+        SGDK, EXACT, BUDGET
+    }
+
+    // default EXACT limits
+    public static final long DEFAULT_EXACT_TIME = 10000;
+    public static final long DEFAULT_EXACT_NODES = 10000000;
+
+    public static final SpriteCutLevel FAST = new SpriteCutLevel(Method.SGDK, OptimizationLevel.FAST, 0, 0, 0);
+
+    public final Method method;
+    // SGDK optimization level (used as fallback by other methods)
+    public final OptimizationLevel level;
+    // time limit in ms (0 = no limit)
+    public final long timeLimit;
+    // search node limit (0 = no limit)
+    public final long nodeLimit;
+    // number of optimizer island (0 = one per worker thread)
+    public final int islands;
+
+    public SpriteCutLevel(Method method, OptimizationLevel level, long timeLimit, long nodeLimit, int islands)
+    {
+        this.method = method;
+        this.level = level;
+        this.timeLimit = timeLimit;
+        this.nodeLimit = nodeLimit;
+        this.islands = islands;
+    }
+
+    /**
+     * Returns the level corresponding to the given SGDK optimization level
+     */
+    public static SpriteCutLevel of(OptimizationLevel level)
+    {
+        return new SpriteCutLevel(Method.SGDK, level, 0, 0, 0);
+    }
+
+    /**
+     * Parses an optimization level value (see class documentation)
+     */
+    public static SpriteCutLevel parse(String value) throws IllegalArgumentException
+    {
+        final String[] parts = value.trim().split(":");
+
+        if (parts[0].equalsIgnoreCase("EXACT"))
+        {
+            final long time = (parts.length > 1) ? parseLimit(value, parts[1]) : DEFAULT_EXACT_TIME;
+            final long nodes = (parts.length > 2) ? parseLimit(value, parts[2]) : DEFAULT_EXACT_NODES;
+
+            // use SGDK FAST level as fallback when no valid cut is found within limits
+            return new SpriteCutLevel(Method.EXACT, OptimizationLevel.FAST, time, nodes, 0);
+        }
+        if (parts[0].equalsIgnoreCase("BUDGET"))
+        {
+            if (parts.length < 2)
+                throw new IllegalArgumentException("Invalid SLICED_SPRITE opt_level '" + value + "', BUDGET requires a time in ms (BUDGET:<time>)");
+
+            final long time = parseLimit(value, parts[1]);
+            final long islands = (parts.length > 2) ? parseLimit(value, parts[2]) : 0;
+
+            if (time == 0)
+                throw new IllegalArgumentException("Invalid SLICED_SPRITE opt_level '" + value + "', BUDGET time should be > 0");
+
+            // use SGDK FAST level as fallback when no valid cut is found in time
+            return new SpriteCutLevel(Method.BUDGET, OptimizationLevel.FAST, time, 0, (int) Math.min(islands, 256));
+        }
+
+        return of(Util.getSpriteOptLevel(value));
+    }
+
+    private static long parseLimit(String value, String limit) throws IllegalArgumentException
+    {
+        try
+        {
+            final long result = Long.parseLong(limit.trim());
+
+            if (result >= 0)
+                return result;
+        }
+        catch (NumberFormatException e)
+        {
+            // handled below
+        }
+
+        throw new IllegalArgumentException("Invalid SLICED_SPRITE opt_level '" + value + "', limits should be positive integers");
+    }
+
+    /**
+     * Returns true if this level is handled by the SGDK sprite cutter
+     */
+    public boolean isSGDK()
+    {
+        return method == Method.SGDK;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(method, level, Long.valueOf(timeLimit), Long.valueOf(nodeLimit), Integer.valueOf(islands));
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj instanceof SpriteCutLevel)
+        {
+            final SpriteCutLevel l = (SpriteCutLevel) obj;
+            return (method == l.method) && (level == l.level) && (timeLimit == l.timeLimit) && (nodeLimit == l.nodeLimit)
+                    && (islands == l.islands);
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the level as written in the resource definition (also used as part of the cut cache key)
+     */
+    @Override
+    public String toString()
+    {
+        if (isSGDK())
+            return level.name();
+        if (method == Method.BUDGET)
+            return method.name() + ":" + timeLimit + ":" + islands;
+
+        return method.name() + ":" + timeLimit + ":" + nodeLimit;
+    }
+}
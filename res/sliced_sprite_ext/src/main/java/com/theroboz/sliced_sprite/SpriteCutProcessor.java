@@ -7,7 +7,6 @@ import sgdk.rescomp.resource.Sprite;
 import sgdk.rescomp.tool.Util;
 import sgdk.rescomp.type.Basics.CollisionType;
 import sgdk.rescomp.type.Basics.Compression;
-import sgdk.rescomp.type.SpriteCell.OptimizationLevel;
 import sgdk.rescomp.type.SpriteCell.OptimizationType;
 import sgdk.tool.FileUtil;
 import sgdk.tool.StringUtil;
@@ -53,6 +52,11 @@ public class SpriteCutProcessor implements Processor
             System.out.println("                    MEDIUM    = intermediate optimisation level, provide better results than FAST but ~5 time slower");
             System.out.println("                    SLOW      = advanced optimisation level using a genetic algorithm (80000 iterations), ~20 time slower than FAST");
             System.out.println("                    MAX       = maximum optimisation level, genetic algorithm (500000 iterations), ~100 time slower than FAST");
+            System.out.println("                    EXACT[:time[:nodes]] = exact branch-and-bound cutter, gives the optimal cut for opt_type (not for NONE)");
+            System.out.println("                                time (ms, default 10000) and nodes (default 10000000) limit the search per frame (0 = no limit),");
+            System.out.println("                                best cut found so far is used when a limit is reached (SGDK FAST if none)");
+            System.out.println("                    BUDGET:time[:islands] = parallel island optimizer running for the given time (ms) on each frame (not for NONE),");
+            System.out.println("                                islands = number of independent searches (default = one per worker thread)");
             System.out.println("  opt_duplicate enabled optimization of consecutive duplicated frames by removing them and increasing animation time to compensante.");
             System.out.println("                    FALSE     = no optimization (default)");
             System.out.println("                                Note that duplicated frames pixel data are still removed by rescomp binary blob optimizer");
@@ -120,11 +124,11 @@ public class SpriteCutProcessor implements Processor
         if (fields.length >= 9 && spritesDefFileIndex != 8)
             opt = Util.getSpriteOptType(fields[8]);
         // get max number of iteration
-        OptimizationLevel optLevel = OptimizationLevel.FAST;
+        SpriteCutLevel optLevel = SpriteCutLevel.FAST;
         boolean showCut = false;
         if (fields.length >= 10 && spritesDefFileIndex != 9)
         {
-            optLevel = Util.getSpriteOptLevel(fields[9]);
+            optLevel = SpriteCutLevel.parse(fields[9]);
             showCut = true;
         }
         boolean optDuplicate = false;
@@ -150,10 +154,13 @@ public class SpriteCutProcessor implements Processor
                 return null;
             }
         }
+        // optimization level not supported by SGDK ? --> we need our own sprite resource even without sprites definition
+        else if (!optLevel.isSGDK())
+            return new SpriteCut(id, fileIn, wf, hf, compression, time, collision, opt, optLevel, showCut, optDuplicate, null);
         else
         {
             // add resource file (used for deps generation)
-            return new Sprite(id, fileIn, wf, hf, compression, time, collision, opt, optLevel, showCut, optDuplicate);
+            return new Sprite(id, fileIn, wf, hf, compression, time, collision, opt, optLevel.level, showCut, optDuplicate);
         }
     }
 }
@@ -0,0 +1,91 @@
+package com.theroboz.sliced_sprite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+import sgdk.rescomp.type.SpriteCell;
+
+/**
+ * Runs a list of sprite cutting strategies concurrently and returns the result of the first strategy (in preference
+ * order) giving a valid cut (16 sprites max), or the result of the last strategy if none does.<br>
+ * The first strategy runs in the calling thread while the following ones (the slow last one included) are forked on
+ * the {@link ParallelSpriteCutter} pool. Results are joined in preference order and the remaining strategies are
+ * cancelled as soon as a valid one is known (SGDK cutters can't be interrupted so a strategy already running completes
+ * in background and its result is ignored).<br>
+ * The number of strategies started ahead of the one being joined can be limited (see
+ * {@link SpriteCutSettings#RACE_DEPTH}) to save CPU time, the next strategies are then started as results come.
+ */
+public class SpriteCutRace
+{
+    /**
+     * Returns the result of the first strategy (in list order) giving a valid cut, or the result of the last strategy.
+     * All strategies are started at once.
+     */
+    public static List<SpriteCell> run(List<Supplier<List<SpriteCell>>> strategies)
+    {
+        return run(strategies, 0);
+    }
+
+    /**
+     * Returns the result of the first strategy (in list order) giving a valid cut, or the result of the last strategy.
+     *
+     * @param depth
+     *        maximum number of strategies running ahead of the one we are waiting for (0 = no limit, all strategies are
+     *        started at once)
+     */
+    @SuppressWarnings("unchecked")
+    public static List<SpriteCell> run(List<Supplier<List<SpriteCell>>> strategies, int depth)
+    {
+        final int num = strategies.size();
+        final int ahead = (depth <= 0) ? num : depth;
+        final ForkJoinTask<List<SpriteCell>>[] tasks = new ForkJoinTask[num];
+
+        try
+        {
+            // start the fallback strategies (the first one is computed by the calling thread)
+            for (int i = 1; i < Math.min(num, ahead + 1); i++)
+                tasks[i] = start(strategies.get(i));
+
+            for (int i = 0; i < num; i++)
+            {
+                // started ahead ? --> wait for it (or run it if no worker took it yet)
+                final List<SpriteCell> sprites = (tasks[i] != null) ? tasks[i].join() : strategies.get(i).get();
+
+                if ((sprites.size() <= 16) || (i == (num - 1)))
+                    return sprites;
+
+                // keep 'depth' strategies running ahead
+                final int next = i + ahead + 1;
+                if ((next < num) && (tasks[next] == null))
+                    tasks[next] = start(strategies.get(next));
+            }
+        }
+        finally
+        {
+            // we have our result: cancel the strategies not yet started (no effect on completed ones)
+            for (ForkJoinTask<List<SpriteCell>> task : tasks)
+                if (task != null)
+                    task.cancel(false);
+        }
+
+        // empty strategy list
+        return new ArrayList<>();
+    }
+
+    private static ForkJoinTask<List<SpriteCell>> start(Supplier<List<SpriteCell>> strategy)
+    {
+        final ForkJoinPool pool = ParallelSpriteCutter.getPool();
+        final ForkJoinTask<List<SpriteCell>> task = ForkJoinTask.adapt(strategy::get);
+
+        // called from a parallel cutting job ? --> push it on the worker queue so join() can run it directly if still there
+        if (ForkJoinTask.getPool() == pool)
+            task.fork();
+        else
+            pool.execute(task);
+
+        return task;
+    }
+}
@@ -41,9 +41,13 @@ public class SpriteCutReader
 
     public SpriteCutReader(String filePath, int W, int H) throws IOException
     {
-        this.file = new File(filePath);
+        this.file = (filePath != null) ? new File(filePath) : null;
         this.animationDefinitions = new HashMap<>();
 
+        // no definition file --> automatic cutting for all frames
+        if (this.file == null)
+            return;
+
         // Only parse if the source file has a .txt extension (case-insensitive)
         final String name = this.file.getName();
         if (name != null)
@@ -0,0 +1,62 @@
+package com.theroboz.sliced_sprite;
+
+import java.io.File;
+
+import com.theroboz.rescomp_common.DecodedImageCache;
+import com.theroboz.rescomp_common.Settings;
+import com.theroboz.rescomp_common.SideOutputWriter;
+
+/**
+ * Build wide settings of the SLICED_SPRITE processor.<br>
+ * They are read once from JVM system properties (-Dname=value) so they can be given through JAVA_TOOL_OPTIONS without
+ * changing the .res files.<br>
+ * Also holds the build wide helpers of the extension (decoded images cache, side output writer).
+ */
+public final class SpriteCutSettings
+{
+    // persistent sprite cut cache (enabled by default)
+    public static final boolean CUT_CACHE = Settings.getBoolean("sliced_sprite.cache", true);
+    // persistent caches directory (default is '.rescomp_cache' in the resource directory)
+    public static final String CACHE_DIR = System.getProperty("sliced_sprite.cache.dir");
+    // compute sprite cuts of all frames in parallel before building resources (disabled by default)
+    public static final boolean PARALLEL = Settings.getBoolean("sliced_sprite.parallel", false);
+    // run the SGDK FAST / MEDIUM fallback strategies concurrently instead of one after the other (disabled by default)
+    public static final boolean RACE = Settings.getBoolean("sliced_sprite.race", false);
+    // maximum number of fallback strategies running ahead of the awaited one when racing (default is 0 = all at once)
+    public static final int RACE_DEPTH = Math.max(0, Settings.getInt("sliced_sprite.race.depth", 0));
+    // number of worker threads for parallel processing (default is number of available processors)
+    public static final int THREADS = Math.max(1, Settings.getInt("sliced_sprite.threads", Runtime.getRuntime().availableProcessors()));
+
+    private static SideOutputWriter sideOutputWriter = null;
+
+    private SpriteCutSettings()
+    {
+    }
+
+    /**
+     * Returns the directory used to store persistent caches (may not exist yet)
+     */
+    public static File getCacheDir()
+    {
+        return Settings.getCacheDir(CACHE_DIR);
+    }
+
+    /**
+     * Returns the decoded images cache of SLICED_SPRITE resources (build wide cache shared with the other extensions)
+     */
+    public static DecodedImageCache getImageCache()
+    {
+        return DecodedImageCache.getShared();
+    }
+
+    /**
+     * Returns the background writer of SLICED_SPRITE side outputs
+     */
+    public static synchronized SideOutputWriter getSideOutputWriter()
+    {
+        if (sideOutputWriter == null)
+            sideOutputWriter = SideOutputWriter.create("SLICED_SPRITE");
+
+        return sideOutputWriter;
+    }
+}
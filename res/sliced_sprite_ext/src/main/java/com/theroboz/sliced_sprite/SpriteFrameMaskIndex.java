@@ -0,0 +1,59 @@
+package com.theroboz.sliced_sprite;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sgdk.rescomp.type.SpriteCell;
+import sgdk.rescomp.type.SpriteCell.OptimizationType;
+
+/**
+ * Index of the sprite cutting of all sprite frames built by SLICED_SPRITE resources, keyed by their opacity mask.<br>
+ * Used to find the cutting of a frame having the same mask than a new one (so it can be re-used) with a single hash
+ * lookup, instead of comparing against every compiled frame.<br>
+ * Only the first frame registered for a given mask is kept, as its mask and sprites (frames themselves aren't
+ * referenced). The index is shared by all SLICED_SPRITE resources of the build and keeps its content until
+ * {@link #clear()} is called.
+ */
+public class SpriteFrameMaskIndex
+{
+    // opacity mask --> sprites of the first frame registered with this mask
+    private static final Map<OpacityMask, List<SpriteCell>> sprites = new HashMap<>();
+
+    /**
+     * Returns the sprites of the first registered frame having the same opacity mask than the given one (as a new list),
+     * or <code>null</code> if none.
+     */
+    public static synchronized List<SpriteCell> find(OpacityMask mask)
+    {
+        final List<SpriteCell> cells = sprites.get(mask);
+
+        if (cells == null)
+            return null;
+
+        // sprite cells are mutable so always return copies
+        final List<SpriteCell> result = new ArrayList<>(cells.size());
+        for (SpriteCell cell : cells)
+            result.add(new SpriteCell(cell.x, cell.y, cell.width, cell.height, OptimizationType.BALANCED));
+
+        return result;
+    }
+
+    /**
+     * Registers the sprites of a compiled frame (does nothing if a frame with the same mask is already registered)
+     */
+    public static synchronized void add(SpriteCutFrame frame)
+    {
+        if (!sprites.containsKey(frame.mask))
+            sprites.put(frame.mask, frame.getSprites());
+    }
+
+    /**
+     * Removes all registered frames (to call when frames of a previous build / run shouldn't be re-used anymore)
+     */
+    public static synchronized void clear()
+    {
+        sprites.clear();
+    }
+}
@@ -0,0 +1,236 @@
+package com.theroboz.sliced_sprite;
+
+import java.awt.Rectangle;
+
+/**
+ * Per frame cell statistics of a 8bpp sprite sheet, computed in a single pass over the image.<br>
+ * Gives the color / palette checks and the animation / frame loops everything they need (opaque pixel count, opaque
+ * bounding box, max color index, palette index and emptiness) so the sheet pixels don't have to be scanned again.<br>
+ * A pixel is opaque when its color index in the palette is not 0 (same rule than {@link OpacityMask}).
+ */
+public class SpriteSheetAnalysis
+{
+    public static class FrameStats
+    {
+        // number of opaque pixel
+        public int opaqueCount;
+        // opaque bounding box (relative to the frame cell, inclusive), only valid if frame isn't empty
+        public int minX;
+        public int minY;
+        public int maxX;
+        public int maxY;
+        // max color index (transparent pixels included)
+        public int maxColor;
+        // palettes used by opaque pixels (bit N set = palette N used)
+        int paletteMask;
+
+        FrameStats(int width, int height)
+        {
+            minX = width;
+            minY = height;
+            maxX = -1;
+            maxY = -1;
+        }
+
+        public boolean isEmpty()
+        {
+            return opaqueCount == 0;
+        }
+
+        /**
+         * Returns the tight opaque bounding box (relative to the frame cell), or <code>null</code> if frame is empty
+         */
+        public Rectangle getBounds()
+        {
+            if (isEmpty())
+                return null;
+
+            return new Rectangle(minX, minY, (maxX - minX) + 1, (maxY - minY) + 1);
+        }
+
+        /**
+         * Returns the palette index used by the frame (-1 if frame is empty)
+         *
+         * @throws IllegalArgumentException
+         *         if frame uses more than 1 palette
+         */
+        public int getPaletteIndex() throws IllegalArgumentException
+        {
+            return SpriteSheetAnalysis.getPaletteIndex(paletteMask, -1);
+        }
+    }
+
+    // sheet size in pixel
+    public final int width;
+    public final int height;
+    // frame cell size in pixel
+    public final int frameWidth;
+    public final int frameHeight;
+    public final int numAnim;
+    // number of frame cell per animation (sheet row)
+    public final int numFrameCell;
+    // max color index of the whole sheet
+    public final int maxColor;
+
+    final FrameStats[] frames;
+    // number of frame to process per animation (trailing empty frames excluded)
+    final int[] numFrames;
+    final int paletteMask;
+
+    /**
+     * @param w
+     *        width of image in tile
+     * @param h
+     *        height of image in tile
+     * @param wf
+     *        width of frame in tile
+     * @param hf
+     *        height of frame in tile
+     */
+    public SpriteSheetAnalysis(byte[] image8bpp, int w, int h, int wf, int hf)
+    {
+        width = w * 8;
+        height = h * 8;
+        frameWidth = wf * 8;
+        frameHeight = hf * 8;
+        numAnim = h / hf;
+        numFrameCell = w / wf;
+
+        frames = new FrameStats[numAnim * numFrameCell];
+        for (int i = 0; i < frames.length; i++)
+            frames[i] = new FrameStats(frameWidth, frameHeight);
+
+        int max = 0;
+
+        for (int y = 0; y < (numAnim * frameHeight); y++)
+        {
+            final int fy = y % frameHeight;
+            final int cellOff = (y / frameHeight) * numFrameCell;
+            int off = y * width;
+
+            for (int f = 0; f < numFrameCell; f++)
+            {
+                final FrameStats stats = frames[cellOff + f];
+                int count = 0;
+                int first = -1;
+                int last = -1;
+                int maxCol = 0;
+                int palMask = 0;
+
+                for (int fx = 0; fx < frameWidth; fx++)
+                {
+                    final int v = image8bpp[off++] & 0xFF;
+
+                    if (v > maxCol)
+                        maxCol = v;
+
+                    // opaque pixel ?
+                    if ((v & 0xF) != 0)
+                    {
+                        if (first == -1)
+                            first = fx;
+                        last = fx;
+                        count++;
+                        palMask |= 1 << ((v >> 4) & 3);
+                    }
+                }
+
+                // update frame stats once per frame row
+                if (maxCol > stats.maxColor)
+                    stats.maxColor = maxCol;
+
+                if (count > 0)
+                {
+                    stats.opaqueCount += count;
+                    stats.paletteMask |= palMask;
+                    stats.minX = Math.min(stats.minX, first);
+                    stats.maxX = Math.max(stats.maxX, last);
+                    stats.minY = Math.min(stats.minY, fy);
+                    stats.maxY = fy;
+                }
+            }
+
+            // remaining pixels on the right of the last frame cell (only happen with unaligned image)
+            for (int x = numFrameCell * frameWidth; x < width; x++)
+                max = Math.max(max, image8bpp[off++] & 0xFF);
+        }
+
+        // remaining rows below the last animation (only happen with unaligned image)
+        for (int off = (numAnim * frameHeight) * width; off < image8bpp.length; off++)
+            max = Math.max(max, image8bpp[off] & 0xFF);
+
+        int palMask = 0;
+        for (FrameStats stats : frames)
+        {
+            max = Math.max(max, stats.maxColor);
+            palMask |= stats.paletteMask;
+        }
+
+        maxColor = max;
+        paletteMask = palMask;
+
+        numFrames = new int[numAnim];
+        for (int a = 0; a < numAnim; a++)
+        {
+            // find last non empty frame
+            int f = numFrameCell - 1;
+            while ((f >= 0) && getFrame(a, f).isEmpty())
+                f--;
+
+            numFrames[a] = f + 1;
+        }
+    }
+
+    /**
+     * Returns statistics of the given frame cell
+     */
+    public FrameStats getFrame(int animIndex, int frameIndex)
+    {
+        return frames[(animIndex * numFrameCell) + frameIndex];
+    }
+
+    /**
+     * Returns the number of frame to process for the given animation (trailing empty frames are ignored)
+     */
+    public int getNumFrame(int animIndex)
+    {
+        return numFrames[animIndex];
+    }
+
+    /**
+     * Returns true if the given animation doesn't contain any opaque pixel
+     */
+    public boolean isAnimationEmpty(int animIndex)
+    {
+        return numFrames[animIndex] == 0;
+    }
+
+    /**
+     * Returns the palette index used by the sheet (same result than <code>ImageUtil.getSpritePaletteIndex(..)</code>
+     * but without scanning the image again)
+     *
+     * @throws IllegalArgumentException
+     *         if sheet uses more than 1 palette
+     */
+    public int getPaletteIndex() throws IllegalArgumentException
+    {
+        return getPaletteIndex(paletteMask, 0);
+    }
+
+    static int getPaletteIndex(int paletteMask, int defaultIndex) throws IllegalArgumentException
+    {
+        // no opaque pixel
+        if (paletteMask == 0)
+            return defaultIndex;
+        if (Integer.bitCount(paletteMask) > 1)
+            throw new IllegalArgumentException("Sprite uses more than 1 palette (16 colors)");
+
+        return Integer.numberOfTrailingZeros(paletteMask);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SpriteSheetAnalysis[" + width + " x " + height + ", " + numAnim + " animations of " + numFrameCell + " frames, maxColor=" + maxColor + "]";
+    }
+}
@@ -0,0 +1,39 @@
+package com.theroboz.sliced_sprite;
+
+import java.io.IOException;
+
+/**
+ * Streaming version of {@link IndexedOutlineDetector}: image rows are pulled one at a time from an
+ * {@link IndexedPngRowReader} and pushed to the detection engine ({@link OutlineScanner}, which only keeps a window of
+ * rows) so the decoded image is never held in memory. Result is identical to {@link IndexedOutlineDetector#detect()}.
+ */
+public class StreamingOutlineDetector
+{
+    private final IndexedPngRowReader reader;
+    private final int w, h;
+    private final int transIdx;
+
+    public StreamingOutlineDetector(IndexedPngRowReader reader)
+    {
+        this.reader = reader;
+        w = reader.width;
+        h = reader.height;
+        transIdx = reader.transparentIndex;
+        if (transIdx == -1) throw new RuntimeException("No transparent color found");
+    }
+
+    public IndexedOutlineDetector.Rect[] detect() throws IOException
+    {
+        final OutlineScanner scanner = new OutlineScanner(w, h, transIdx, 0, h - IndexedOutlineDetector.MIN_SIZE);
+        final byte[] row = new byte[w];
+
+        // remaining rows aren't needed once all outlines are resolved
+        while (scanner.needsRow())
+        {
+            reader.readRow(row);
+            scanner.addRow(row, 0);
+        }
+
+        return scanner.getResult().toArray(new IndexedOutlineDetector.Rect[0]);
+    }
+}
@@ -0,0 +1,195 @@
+package com.theroboz.sliced_sprite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import sgdk.rescomp.type.SpriteCell;
+import sgdk.rescomp.type.SpriteCell.OptimizationType;
+
+/**
+ * Checks the exact (branch-and-bound) sprite cutter against a plain exhaustive search on small random frames: both
+ * should find the same optimal cost for every optimization type.
+ */
+public class ExactSpriteCutterTest
+{
+    /**
+     * Exhaustive search: the first uncovered opaque pixel is covered by any sprite (of any size and position inside the
+     * frame) containing it, only branches which can't beat the best cost are cut (no candidate domination nor lower
+     * bound).
+     */
+    static class BruteForceCutter
+    {
+        final OpacityMask mask;
+        final CoverProblem problem;
+        final int w, h;
+        final boolean[] opaque;
+        // best cost found for each visited uncovered pixels set
+        final Map<BitSet, Integer> visited = new HashMap<>();
+        int bestCost;
+
+        BruteForceCutter(OpacityMask mask, OptimizationType optType)
+        {
+            this.mask = mask;
+            problem = new CoverProblem(mask, optType);
+            w = mask.width;
+            h = mask.height;
+            opaque = new boolean[w * h];
+
+            for (int y = 0; y < h; y++)
+                for (int x = 0; x < w; x++)
+                    opaque[(y * w) + x] = mask.isOpaque(x, y);
+        }
+
+        int getOptimalCost()
+        {
+            final BitSet uncovered = new BitSet(w * h);
+            for (int i = 0; i < opaque.length; i++)
+                if (opaque[i])
+                    uncovered.set(i);
+
+            // start from the trivial cut (one 8x8 sprite per occupied tile) as upper bound
+            bestCost = 0;
+            for (int ty = 0; ty < (h / 8); ty++)
+                for (int tx = 0; tx < (w / 8); tx++)
+                    if (mask.isTileOccupied(tx, ty))
+                        bestCost += problem.getCost(0);
+            // +1 so the trivial cut is found again by the search
+            bestCost++;
+            search(uncovered, 0, 0);
+
+            return bestCost;
+        }
+
+        private void search(BitSet uncovered, int depth, int cost)
+        {
+            final int p = uncovered.nextSetBit(0);
+
+            // all covered ?
+            if (p == -1)
+            {
+                bestCost = Math.min(bestCost, cost);
+                return;
+            }
+            if (depth >= CoverProblem.MAX_SPRITE)
+                return;
+
+            // same pixels already left to cover for a lower (or equal) cost ? --> nothing better here
+            final Integer previous = visited.get(uncovered);
+            if ((previous != null) && (previous.intValue() <= cost))
+                return;
+            visited.put(uncovered, Integer.valueOf(cost));
+
+            final int px = p % w;
+            final int py = p / w;
+
+            for (int s = 0; s < CoverProblem.NUM_SIZE; s++)
+            {
+                final int sw = CoverProblem.getWidth(s);
+                final int sh = CoverProblem.getHeight(s);
+                final int newCost = cost + problem.getCost(s);
+
+                if ((sw > w) || (sh > h) || (newCost >= bestCost))
+                    continue;
+
+                for (int sy = Math.max(0, (py - sh) + 1); sy <= Math.min(py, h - sh); sy++)
+                {
+                    for (int sx = Math.max(0, (px - sw) + 1); sx <= Math.min(px, w - sw); sx++)
+                    {
+                        final BitSet next = (BitSet) uncovered.clone();
+                        for (int y = sy; y < sy + sh; y++)
+                            next.clear((y * w) + sx, (y * w) + sx + sw);
+
+                        search(next, depth + 1, newCost);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Random frame image: sparse noise and a few small opaque blocks
+     */
+    static byte[] createFrame(Random random, int w, int h)
+    {
+        final byte[] pixels = new byte[w * h];
+        final int noise = 8 + random.nextInt(120);
+
+        for (int i = 0; i < pixels.length; i++)
+            if (random.nextInt(noise) == 0)
+                pixels[i] = (byte) (1 + random.nextInt(15));
+
+        final int num = random.nextInt(4);
+        for (int n = 0; n < num; n++)
+        {
+            final int bw = 1 + random.nextInt(12);
+            final int bh = 1 + random.nextInt(12);
+            final int bx = random.nextInt(w);
+            final int by = random.nextInt(h);
+
+            for (int y = by; y < Math.min(h, by + bh); y++)
+                for (int x = bx; x < Math.min(w, bx + bw); x++)
+                    pixels[(y * w) + x] = (byte) (1 + random.nextInt(15));
+        }
+
+        return pixels;
+    }
+
+    // size index of the given sprite (see CoverProblem)
+    private static int getSize(SpriteCell sprite)
+    {
+        return (((sprite.height / 8) - 1) * 4) + ((sprite.width / 8) - 1);
+    }
+
+    @Test
+    public void cutMatchesBruteForce()
+    {
+        final Random random = new Random(8888);
+        final int[][] frameSizes = {{8, 8}, {16, 8}, {8, 16}, {16, 16}, {24, 8}, {8, 24}, {24, 16}, {16, 24}};
+
+        for (int t = 0; t < 160; t++)
+        {
+            final int w = frameSizes[t % frameSizes.length][0];
+            final int h = frameSizes[t % frameSizes.length][1];
+            final OpacityMask mask = new OpacityMask(createFrame(random, w, h), w, h);
+
+            // empty frame isn't a cover problem
+            if (mask.isEmpty())
+                continue;
+
+            for (OptimizationType optType : new OptimizationType[] {OptimizationType.BALANCED, OptimizationType.MIN_SPRITE, OptimizationType.MIN_TILE})
+            {
+                final String message = "frame " + t + " (" + w + " x " + h + "), " + optType;
+                final ExactSpriteCutter.Result result = new ExactSpriteCutter(mask, optType, 0, 0).cut();
+
+                assertNotNull(result, message + " - no result");
+                assertTrue(result.optimal, message + " - search not completed");
+                assertTrue(result.sprites.size() <= CoverProblem.MAX_SPRITE, message + " - too many sprites");
+                assertTrue(mask.isCovered(result.sprites), message + " - opaque pixels not covered");
+
+                final CoverProblem problem = new CoverProblem(mask, optType);
+                final List<SpriteCell> sprites = result.sprites;
+                int cost = 0;
+                int numTile = 0;
+                for (SpriteCell sprite : sprites)
+                {
+                    assertTrue((sprite.x >= 0) && (sprite.y >= 0) && ((sprite.x + sprite.width) <= w) && ((sprite.y + sprite.height) <= h),
+                            message + " - sprite outside frame: " + sprite);
+                    cost += problem.getCost(getSize(sprite));
+                    numTile += CoverProblem.getNumTile(getSize(sprite));
+                }
+
+                assertEquals(numTile, result.numTile, message + " - tile count");
+                assertEquals(new BruteForceCutter(mask, optType).getOptimalCost(), cost, message + " - cost");
+            }
+        }
+    }
+}
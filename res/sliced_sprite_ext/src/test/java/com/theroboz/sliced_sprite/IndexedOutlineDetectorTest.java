@@ -0,0 +1,202 @@
+package com.theroboz.sliced_sprite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.theroboz.rescomp_common.DecodedImageCache;
+
+/**
+ * Checks the run-length based outline detection against the original pixel walking detection (kept below as
+ * reference) on random images.
+ */
+public class IndexedOutlineDetectorTest
+{
+    private static final int TRANSPARENT = 0;
+
+    /**
+     * Original detection: borders are walked pixel by pixel from each top-left corner candidate
+     */
+    static class ReferenceDetector
+    {
+        final byte[] pixels;
+        final int w, h;
+        final int transIdx;
+
+        ReferenceDetector(byte[] pixels, int w, int h, int transIdx)
+        {
+            this.pixels = pixels;
+            this.w = w;
+            this.h = h;
+            this.transIdx = transIdx;
+        }
+
+        boolean isSolid(int x, int y)
+        {
+            return x >= 0 && y >= 0 && x < w && y < h && (pixels[y * w + x] & 0xFF) != transIdx;
+        }
+
+        int getColor(int x, int y)
+        {
+            if (x < 0 || y < 0 || x >= w || y >= h) return transIdx;
+            return (pixels[y * w + x] & 0xFF);
+        }
+
+        boolean hasLeftBorderPixel(int x, int y, int cornerColor)
+        {
+            return (getColor(x, y) == cornerColor || getColor(x, y + 1) == cornerColor);
+        }
+
+        boolean hasTopborderPixel(int x, int y, int cornerColor)
+        {
+            return (getColor(x, y) == cornerColor) || (getColor(x + 1, y) == cornerColor);
+        }
+
+        IndexedOutlineDetector.Rect tryExtend(int sx, int sy, int cornerColor)
+        {
+            int rx = sx + 1;
+            while (rx < w && hasTopborderPixel(rx, sy, cornerColor)) rx++;
+            if (!isSolid(rx, sy) || (getColor(rx, sy + 1) != cornerColor && getColor(rx, sy + 2) != cornerColor)) rx--;
+            if (rx <= sx) return null;
+            if (rx - sx + 1 < IndexedOutlineDetector.MIN_SIZE) rx = sx + IndexedOutlineDetector.MIN_SIZE - 1;
+
+            int ry = sy + 1;
+            while (ry < h && hasLeftBorderPixel(sx, ry, cornerColor)) ry++;
+            if (!isSolid(sx, ry) || (getColor(sx + 1, ry) != cornerColor && getColor(sx, ry + 2) != cornerColor)) ry--;
+            if (ry <= sy) return null;
+            if (ry - sy + 1 < IndexedOutlineDetector.MIN_SIZE) ry = sy + IndexedOutlineDetector.MIN_SIZE - 1;
+
+            for (int dy = sy + 1; dy < ry; dy++)
+                if (!isSolid(rx, dy)) return null;
+            for (int dx = sx + 1; dx < rx; dx++)
+                if (!isSolid(dx, ry)) return null;
+
+            return new IndexedOutlineDetector.Rect(sx, sy, rx - sx + 1, ry - sy + 1);
+        }
+
+        List<IndexedOutlineDetector.Rect> detect()
+        {
+            final List<IndexedOutlineDetector.Rect> result = new ArrayList<>();
+
+            for (int y = 0; y < h - IndexedOutlineDetector.MIN_SIZE; y++)
+            {
+                for (int x = 0; x < w - IndexedOutlineDetector.MIN_SIZE; x++)
+                {
+                    int cornerColor = getColor(x, y);
+
+                    if (cornerColor == transIdx) continue;
+                    if (getColor(x - 1, y) == cornerColor) continue;
+                    if (getColor(x - 2, y) == cornerColor) continue;
+                    if (getColor(x, y - 1) == cornerColor) continue;
+                    if (getColor(x, y - 2) == cornerColor) continue;
+
+                    IndexedOutlineDetector.Rect raw = tryExtend(x, y, cornerColor);
+                    if (raw == null) continue;
+
+                    int clampedW = Math.max(IndexedOutlineDetector.MIN_SIZE, Math.min(IndexedOutlineDetector.MAX_SIZE, raw.width));
+                    int clampedH = Math.max(IndexedOutlineDetector.MIN_SIZE, Math.min(IndexedOutlineDetector.MAX_SIZE, raw.height));
+
+                    result.add(new IndexedOutlineDetector.Rect(raw.x, raw.y, clampedW, clampedH));
+                    x += 1;
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Random outline sheet: solid and checkerboard outlines (some overlapping, some filled) over sparse noise
+     */
+    static byte[] createImage(Random random, int w, int h)
+    {
+        final byte[] pixels = new byte[w * h];
+
+        // noise
+        for (int i = 0; i < pixels.length; i++)
+            if (random.nextInt(50) == 0)
+                pixels[i] = (byte) (1 + random.nextInt(3));
+
+        final int num = 1 + ((w * h) / 1500);
+        for (int n = 0; n < num; n++)
+        {
+            final int rw = 4 + random.nextInt(40);
+            final int rh = 4 + random.nextInt(40);
+            final int rx = random.nextInt(Math.max(1, w - 2));
+            final int ry = random.nextInt(Math.max(1, h - 2));
+            final byte color = (byte) (1 + random.nextInt(3));
+            final boolean checker = random.nextInt(3) == 0;
+            final boolean filled = random.nextInt(3) == 0;
+
+            for (int y = ry; y < Math.min(h, ry + rh); y++)
+            {
+                for (int x = rx; x < Math.min(w, rx + rw); x++)
+                {
+                    final boolean border = (x == rx) || (y == ry) || (x == (rx + rw - 1)) || (y == (ry + rh - 1));
+
+                    if (border)
+                    {
+                        if (!checker || (((x + y) & 1) == 0))
+                            pixels[(y * w) + x] = color;
+                        else
+                            pixels[(y * w) + x] = (byte) (4 + random.nextInt(2));
+                    }
+                    else if (filled)
+                        pixels[(y * w) + x] = (byte) (4 + random.nextInt(2));
+                }
+            }
+        }
+
+        return pixels;
+    }
+
+    private static void assertSameRects(List<IndexedOutlineDetector.Rect> expected, IndexedOutlineDetector.Rect[] actual, String message)
+    {
+        assertEquals(expected.size(), actual.length, message + " - number of outlines");
+
+        for (int i = 0; i < actual.length; i++)
+            assertEquals(expected.get(i).toString(), actual[i].toString(), message + " - outline " + i);
+    }
+
+    @Test
+    public void detectMatchesReference()
+    {
+        final Random random = new Random(1234);
+
+        for (int t = 0; t < 300; t++)
+        {
+            final int w = 16 + random.nextInt(200);
+            final int h = 16 + random.nextInt(400);
+            final byte[] pixels = createImage(random, w, h);
+            final IndexedOutlineDetector detector = new IndexedOutlineDetector(new DecodedImageCache.IndexedImage(pixels, w, h, TRANSPARENT));
+            final List<IndexedOutlineDetector.Rect> expected = new ReferenceDetector(pixels, w, h, TRANSPARENT).detect();
+
+            assertSameRects(expected, detector.detect(), "image " + t + " (" + w + " x " + h + ")");
+            assertSameRects(expected, detector.detectParallel(), "image " + t + " (" + w + " x " + h + ") parallel");
+            // outlines crossing band seams (whatever the number of processors)
+            assertSameRects(expected, detector.detectParallel(2 + (t % 7)), "image " + t + " (" + w + " x " + h + ") " + (2 + (t % 7)) + " bands");
+        }
+    }
+
+    @Test
+    public void detectWideImageMatchesReference()
+    {
+        final Random random = new Random(5678);
+        // too wide for char run lengths
+        final int w = Character.MAX_VALUE + 100;
+        final int h = 48;
+        final byte[] pixels = createImage(random, w, h);
+
+        // border running along the whole image width
+        for (int x = 0; x < w; x++)
+            pixels[(2 * w) + x] = 1;
+
+        final IndexedOutlineDetector detector = new IndexedOutlineDetector(new DecodedImageCache.IndexedImage(pixels, w, h, TRANSPARENT));
+
+        assertSameRects(new ReferenceDetector(pixels, w, h, TRANSPARENT).detect(), detector.detect(), "wide image");
+    }
+}
@@ -0,0 +1,154 @@
+package com.theroboz.sliced_sprite;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.theroboz.rescomp_common.DecodedImageCache;
+
+/**
+ * Checks the streaming outline detection (and its PNG row reader) against the in-memory detection of the same images
+ * decoded by ImageIO.
+ */
+public class StreamingOutlineDetectorTest
+{
+    @TempDir
+    Path dir;
+
+    // writes the given 8bpp pixels as a 8 bits indexed color PNG (256 colors palette)
+    private static File writePng(File file, byte[] pixels, int w, int h, int transparentIndex) throws IOException
+    {
+        final byte[] r = new byte[256];
+        final byte[] g = new byte[256];
+        final byte[] b = new byte[256];
+        for (int i = 0; i < 256; i++)
+        {
+            r[i] = (byte) (i * 7);
+            g[i] = (byte) (i * 13);
+            b[i] = (byte) (i * 29);
+        }
+
+        final IndexColorModel cm = new IndexColorModel(8, 256, r, g, b, transparentIndex);
+        final BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, cm);
+        System.arraycopy(pixels, 0, ((DataBufferByte) img.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+
+        ImageIO.write(img, "png", file);
+
+        return file;
+    }
+
+    private static DecodedImageCache.IndexedImage readImageIO(File file) throws IOException
+    {
+        final BufferedImage img = ImageIO.read(file);
+        final IndexColorModel cm = (IndexColorModel) img.getColorModel();
+
+        return new DecodedImageCache.IndexedImage(((DataBufferByte) img.getRaster().getDataBuffer()).getData(), img.getWidth(), img.getHeight(),
+                cm.getTransparentPixel());
+    }
+
+    // random outline image using the given transparent index (swapped with color 0 of the generated image)
+    private static byte[] createImage(Random random, int w, int h, int transparentIndex)
+    {
+        final byte[] pixels = IndexedOutlineDetectorTest.createImage(random, w, h);
+
+        for (int i = 0; i < pixels.length; i++)
+        {
+            if (pixels[i] == 0)
+                pixels[i] = (byte) transparentIndex;
+            else if (pixels[i] == transparentIndex)
+                pixels[i] = 0;
+        }
+
+        return pixels;
+    }
+
+    @Test
+    public void rowReaderMatchesImageIO() throws IOException
+    {
+        final Random random = new Random(42);
+
+        for (int t = 0; t < 20; t++)
+        {
+            final int w = 1 + random.nextInt(300);
+            final int h = 1 + random.nextInt(300);
+            final File file = writePng(dir.resolve("rows" + t + ".png").toFile(), createImage(random, w, h, random.nextInt(6)), w, h, random.nextInt(6));
+            final DecodedImageCache.IndexedImage expected = readImageIO(file);
+
+            try (IndexedPngRowReader reader = IndexedPngRowReader.open(file))
+            {
+                assertNotNull(reader, "image " + t + " should be readable");
+                assertEquals(expected.width, reader.width);
+                assertEquals(expected.height, reader.height);
+                assertEquals(expected.transparentIndex, reader.transparentIndex, "image " + t + " transparent index");
+
+                final byte[] row = new byte[w];
+                for (int y = 0; y < h; y++)
+                {
+                    reader.readRow(row);
+                    assertArrayEquals(Arrays.copyOfRange(expected.pixels, y * w, (y + 1) * w), row, "image " + t + " row " + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rowReaderRejectsNonIndexedImage() throws IOException
+    {
+        final File file = dir.resolve("rgb.png").toFile();
+        ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), "png", file);
+
+        assertNull(IndexedPngRowReader.open(file));
+    }
+
+    @Test
+    public void streamingMatchesInMemoryDetection() throws IOException
+    {
+        final Random random = new Random(4242);
+
+        for (int t = 0; t < 40; t++)
+        {
+            final int w = 16 + random.nextInt(200);
+            // some images tall enough for the streaming detection to be used by detect(File)
+            final int h = 16 + random.nextInt((t < 30) ? 300 : 2000);
+            final int transparentIndex = random.nextInt(6);
+            final File file = writePng(dir.resolve("outlines" + t + ".png").toFile(), createImage(random, w, h, transparentIndex), w, h, transparentIndex);
+            final IndexedOutlineDetector.Rect[] expected = new IndexedOutlineDetector(readImageIO(file)).detect();
+            final IndexedOutlineDetector.Rect[] actual;
+
+            try (IndexedPngRowReader reader = IndexedPngRowReader.open(file))
+            {
+                actual = new StreamingOutlineDetector(reader).detect();
+            }
+
+            assertArrayEquals(toStrings(expected), toStrings(actual), "image " + t + " (" + w + " x " + h + ")");
+            // tall image --> detection from file uses streaming too (smaller ones would go through the image cache)
+            if (h >= IndexedOutlineDetector.STREAMING_MIN_HEIGHT)
+                assertArrayEquals(toStrings(expected), toStrings(IndexedOutlineDetector.detect(file, false)), "image " + t + " (" + w + " x " + h + ") from file");
+        }
+    }
+
+    private static String[] toStrings(IndexedOutlineDetector.Rect[] rects)
+    {
+        final String[] result = new String[rects.length];
+
+        for (int i = 0; i < rects.length; i++)
+            result[i] = rects[i].toString();
+
+        return result;
+    }
+}